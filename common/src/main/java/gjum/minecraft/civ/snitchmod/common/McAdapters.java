@@ -0,0 +1,122 @@
+package gjum.minecraft.civ.snitchmod.common;
+
+import gjum.minecraft.civ.snitchmod.core.model.*;
+import gjum.minecraft.civ.snitchmod.core.replay.PacketRecording;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.HoverEvent;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.minecraft.world.item.component.ItemLore;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Converts between Minecraft types and the Minecraft-free core model.
+ */
+public class McAdapters {
+	public static @NotNull BlockPos toBlockPos(@NotNull WorldPos pos) {
+		return new BlockPos(pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	public static @NotNull Vec3 getCenter(@NotNull WorldPos pos) {
+		return new Vec3(pos.getX() + .5, pos.getY() + .5, pos.getZ() + .5);
+	}
+
+	public static @NotNull AABB getBlockAABB(@NotNull WorldPos pos) {
+		return new AABB(toBlockPos(pos));
+	}
+
+	public static @NotNull AABB getRangeAABB(@NotNull Snitch snitch) {
+		return getBlockAABB(snitch.pos).inflate(Snitch.RANGE);
+	}
+
+	/**
+	 * Text of the first sibling's hover tooltip, or null if it has none.
+	 */
+	public static @Nullable String getHoverText(@NotNull Component message) {
+		if (message.getSiblings().isEmpty()) return null;
+		final HoverEvent hoverEvent = message.getSiblings().get(0).getStyle().getHoverEvent();
+		if (hoverEvent == null || hoverEvent.action() != HoverEvent.Action.SHOW_TEXT) return null;
+		@SuppressWarnings("ConstantConditions")
+		String hoverText = ((HoverEvent.ShowText)hoverEvent).value().getString();
+		return hoverText;
+	}
+
+	public static @Nullable SnitchAlert alertFromChat(
+		@NotNull Component message,
+		@NotNull String server,
+		@NotNull String world
+	) {
+		return SnitchAlert.fromText(message.getString(), () -> getHoverText(message), server, world);
+	}
+
+	public static @Nullable SnitchRename renameFromChat(
+		@NotNull Component message,
+		@NotNull String server,
+		@NotNull String world,
+		@NotNull UUID clientUuid
+	) {
+		return SnitchRename.fromText(message.getString(), () -> getHoverText(message), server, world, clientUuid);
+	}
+
+	public static @Nullable Snitch createdFromChat(
+		@NotNull Component message,
+		@NotNull String server,
+		@NotNull String world,
+		@NotNull UUID clientUuid
+	) {
+		return SnitchCreatedChatParser.fromText(message.getString(), server, world, clientUuid);
+	}
+
+	public static @Nullable SnitchBroken brokenFromChat(
+		@NotNull Component message,
+		@NotNull BlockPos lastBrokenBlockPos,
+		@NotNull String server,
+		@NotNull String world
+	) {
+		return SnitchBroken.fromText(
+			message.getString(),
+			lastBrokenBlockPos.getX(), lastBrokenBlockPos.getY(), lastBrokenBlockPos.getZ(),
+			server, world);
+	}
+
+	public static @Nullable JalistEntry jalistEntryFromStack(@NotNull ItemStack stack, @NotNull String server) {
+		PacketRecording.JalistItem item = toJalistItem(stack);
+		if (item == null) return null;
+		return JalistEntry.fromLore(item.type(), item.name(), item.lore(), server);
+	}
+
+	/**
+	 * The parts of a stack that {@link JalistEntry#fromLore} looks at,
+	 * or null if the stack can't be a `/jalist` entry.
+	 */
+	public static @Nullable PacketRecording.JalistItem toJalistItem(@NotNull ItemStack stack) {
+		Snitch.Type type;
+		if (stack.getItem() == Items.NOTE_BLOCK) {
+			type = Snitch.Type.NOTEBLOCK;
+		} else if (stack.getItem() == Items.JUKEBOX) {
+			type = Snitch.Type.JUKEBOX;
+		} else {
+			return null;
+		}
+
+		Component customName = stack.get(DataComponents.CUSTOM_NAME);
+		if (customName == null) return null;
+		ItemLore lore = stack.get(DataComponents.LORE);
+		if (lore == null) return null;
+
+		List<String> lores = new ArrayList<>(lore.lines().size());
+		for (Component line : lore.lines()) {
+			lores.add(line.getString());
+		}
+		return new PacketRecording.JalistItem(type, customName.getString(), lores);
+	}
+}
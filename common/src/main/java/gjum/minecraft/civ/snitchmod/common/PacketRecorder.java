@@ -0,0 +1,80 @@
+package gjum.minecraft.civ.snitchmod.common;
+
+import gjum.minecraft.civ.snitchmod.core.SnitchSqliteDb;
+import gjum.minecraft.civ.snitchmod.core.replay.PacketRecording;
+import net.minecraft.network.chat.Component;
+import net.minecraft.world.item.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes received chat and container packets to a {@link PacketRecording},
+ * so alert floods and `/jalist` scans can be replayed offline.
+ * Enabled with `debug.recordPackets=true` in the config.
+ */
+public class PacketRecorder {
+	private final PacketRecording.Writer writer;
+	private final File file;
+
+	private PacketRecorder(PacketRecording.Writer writer, File file) {
+		this.writer = writer;
+		this.file = file;
+	}
+
+	/**
+	 * @return null if the recording file could not be created
+	 */
+	public static @Nullable PacketRecorder start(@NotNull String server, @Nullable UUID clientUuid) {
+		File dir = new File(SnitchSqliteDb.getDbFile(server).getParentFile(), "recordings");
+		String fileName = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date()) + ".smrec";
+		File file = new File(dir, fileName);
+		try {
+			PacketRecording.Writer writer = new PacketRecording.Writer(
+				file, server, clientUuid != null ? clientUuid.toString() : null);
+			System.out.println("[SnitchMod] Recording packets to " + file);
+			return new PacketRecorder(writer, file);
+		} catch (IOException e) {
+			System.err.println("Failed creating packet recording " + file);
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	public void recordChat(@NotNull Component message, @Nullable String world) {
+		try {
+			writer.writeChat(world, message.getString(), McAdapters.getHoverText(message));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void recordWindowItems(@NotNull List<ItemStack> stacks, @Nullable String world) {
+		List<PacketRecording.JalistItem> items = new ArrayList<>();
+		for (ItemStack stack : stacks) {
+			PacketRecording.JalistItem item = McAdapters.toJalistItem(stack);
+			if (item != null) items.add(item);
+		}
+		try {
+			writer.writeWindowItems(world, stacks.size(), items);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void close() {
+		try {
+			writer.close();
+			System.out.println("[SnitchMod] Saved packet recording " + file);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -3,8 +3,9 @@ package gjum.minecraft.civ.snitchmod.common;
 import com.mojang.blaze3d.systems.RenderSystem;
 import com.mojang.blaze3d.vertex.*;
 import gjum.minecraft.civ.snitchmod.common.Utils.Color;
-import gjum.minecraft.civ.snitchmod.common.model.Snitch;
 import gjum.minecraft.civ.snitchmod.common.model.SnitchFieldPreview;
+import gjum.minecraft.civ.snitchmod.core.SnitchColumns;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.Font;
 //import net.minecraft.client.renderer.CoreShaders;
@@ -168,18 +169,14 @@ public class Renderer {
 
 		if (getMod().rangeOverlayVisible) {
 			int fieldDist = 260;
-			getMod().streamNearbySnitches(mc.player.position(), fieldDist)
-				// but still show culled/gone snitches
-				.filter(s -> !s.wasBroken())
-				.limit(100)
+			// but still show culled/gone snitches
+			getMod().getNearbySnitches(mc.player.position(), fieldDist, 100, SnitchColumns.Filter.NOT_BROKEN, getMod().overlayTag)
 				.forEach(Renderer::renderSnitch);
 		}
 
 		if (getMod().placementHelperVisible) {
 			int placeHelperDist = 50;
-			getMod().streamNearbySnitches(mc.player.position(), placeHelperDist)
-				.filter(Snitch::isAlive)
-				.limit(10)
+			getMod().getNearbySnitches(mc.player.position(), placeHelperDist, 10, SnitchColumns.Filter.ALIVE)
 				.forEach(Renderer::renderPlacementHelper);
 		}
 
@@ -201,7 +198,7 @@ public class Renderer {
         final float lineAlpha = 1;
         final float lineWidth = 2;
         final int blockHlDist = 64;
-		final AABB range = preview.field().getRangeAABB();
+		final AABB range = McAdapters.getRangeAABB(preview.field());
 		// inflate/deflate so the box face isn't obscured by adjacent blocks
 		final boolean playerInRange = range.contains(mc.player.position());
 		AABB rangeBox = playerInRange ? range.inflate(-.01) : range.inflate(.01);
@@ -212,17 +209,17 @@ public class Renderer {
             renderBoxGuides(rangeBox, color, lineAlpha, lineWidth);
         }
 
-		if (preview.field().pos.distSqr(mc.player.blockPosition()) < blockHlDist * blockHlDist) {
+		if (McAdapters.toBlockPos(preview.field().pos).distSqr(mc.player.blockPosition()) < blockHlDist * blockHlDist) {
             try (RenderBufferGuard ignored = RenderBufferGuard.open(false, false, false)) {
                 // inflate so it isn't obstructed by the snitch block
-                final AABB blockBox = new AABB(preview.field().pos).inflate(.01);
+                final AABB blockBox = McAdapters.getBlockAABB(preview.field().pos).inflate(.01);
                 renderBoxOutline(blockBox, color, lineAlpha, lineWidth);
             }
 		}
 	}
 
 	private static void renderSnitch(Snitch snitch) {
-		final AABB range = snitch.getRangeAABB();
+		final AABB range = McAdapters.getRangeAABB(snitch);
 		// inflate/deflate so the box face isn't obscured by adjacent blocks
 		final boolean playerInRange = range.contains(mc.player.position());
 		AABB rangeBox = playerInRange ? range.inflate(-.01) : range.inflate(.01);
@@ -317,10 +314,10 @@ public class Renderer {
 		 * Render the snitch box.
 		 */
 		final int blockHlDist = 64;
-		if (snitch.pos.distSqr(mc.player.blockPosition()) < blockHlDist * blockHlDist) {
+		if (McAdapters.toBlockPos(snitch.pos).distSqr(mc.player.blockPosition()) < blockHlDist * blockHlDist) {
 			// inflate so it isn't obstructed by the snitch block
             try (RenderBufferGuard ignored = RenderBufferGuard.open(false, false, false)) {
-                final AABB blockBox = new AABB(snitch.pos).inflate(.01);
+                final AABB blockBox = McAdapters.getBlockAABB(snitch.pos).inflate(.01);
                 Color boxOutlineColor = snitchLiveliness.color;
                 if (
                         getMod().snitchFieldToPreview != null
@@ -353,7 +350,7 @@ public class Renderer {
 			// Text of close by snitches at our eye level obscures our vision.
 			&& (
 				eyePosition.y != snitch.pos.getY()
-				|| eyePosition.distanceTo(snitch.pos.getCenter()) > 3
+				|| eyePosition.distanceTo(McAdapters.getCenter(snitch.pos)) > 3
 			)
 		) {
 			String name = snitch.getName();
@@ -454,7 +451,7 @@ public class Renderer {
 			}
 		}
 
-		Vec3 center = snitch.pos.getCenter();
+		Vec3 center = McAdapters.getCenter(snitch.pos);
 		int offset = -1;
 		for (ColoredComponent line : linesToRender) {
 			renderTextFacingCamera(line.text, center, offset, 1f, line.color.hex);
@@ -463,9 +460,9 @@ public class Renderer {
 	}
 
 	private static void renderPlacementHelper(Snitch snitch) {
-		final boolean playerInRange = snitch.getRangeAABB().contains(mc.player.position());
+		final boolean playerInRange = McAdapters.getRangeAABB(snitch).contains(mc.player.position());
 		if (playerInRange) return; // only render helper for snitches the player isn't inside of
-		final AABB helperBox = new AABB(snitch.pos).inflate(22.3);
+		final AABB helperBox = McAdapters.getBlockAABB(snitch.pos).inflate(22.3);
 
         try (RenderBufferGuard ignored = RenderBufferGuard.open(true, true, false)) {
             renderFilledBox(helperBox, BLUE, 0.2f);
@@ -3,28 +3,32 @@ package gjum.minecraft.civ.snitchmod.common;
 import com.mojang.blaze3d.platform.InputConstants;
 import com.mojang.blaze3d.vertex.PoseStack;
 import gjum.minecraft.civ.snitchmod.common.model.Direction;
-import gjum.minecraft.civ.snitchmod.common.model.JalistEntry;
-import gjum.minecraft.civ.snitchmod.common.model.Snitch;
-import gjum.minecraft.civ.snitchmod.common.model.SnitchAlert;
-import gjum.minecraft.civ.snitchmod.common.model.SnitchCreatedChatParser;
 import gjum.minecraft.civ.snitchmod.common.model.SnitchFieldPreview;
-import gjum.minecraft.civ.snitchmod.common.model.SnitchRename;
+import gjum.minecraft.civ.snitchmod.core.NearbySnitchesCache;
+import gjum.minecraft.civ.snitchmod.core.SnitchColumns;
+import gjum.minecraft.civ.snitchmod.core.SnitchModConfig;
+import gjum.minecraft.civ.snitchmod.core.SnitchesStore;
+import gjum.minecraft.civ.snitchmod.core.model.JalistEntry;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import gjum.minecraft.civ.snitchmod.core.model.SnitchAlert;
+import gjum.minecraft.civ.snitchmod.core.model.SnitchRename;
+import gjum.minecraft.civ.snitchmod.core.model.WorldPos;
 import net.minecraft.client.KeyMapping;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.multiplayer.ServerData;
 import net.minecraft.network.chat.Component;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.phys.Vec3;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.joml.Matrix4f;
 import org.lwjgl.glfw.GLFW;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.stream.Stream;
 
 public abstract class SnitchMod {
 	private final static Minecraft mc = Minecraft.getInstance();
@@ -78,6 +82,12 @@ public abstract class SnitchMod {
 		"category.snitchmod"
 	);
 
+	private static final String SEARCH_COMMAND = "snitchsearch";
+	private static final int SEARCH_PAGE_SIZE = 10;
+	private static final String TAG_COMMAND = "snitchtag";
+	private static final int TAG_DEFAULT_RADIUS = 50;
+	private static final int TAG_MAX_RADIUS = 260;
+
 	private static SnitchMod INSTANCE;
 
 	public boolean rangeOverlayVisible = false;
@@ -86,10 +96,23 @@ public abstract class SnitchMod {
 	public SnitchFieldPreview snitchFieldToPreview = null;
 	@Nullable
 	public Snitch lastBrokenSnitch = null;
+	/**
+	 * If set, the range overlay only shows snitches with this tag.
+	 */
+	@Nullable
+	public String overlayTag = null;
 
 	@Nullable
 	private SnitchesStore store;
 
+	private final NearbySnitchesCache nearbySnitches = new NearbySnitchesCache();
+
+	/**
+	 * Only set while `debug.recordPackets` is enabled.
+	 */
+	@Nullable
+	private PacketRecorder recorder;
+
 	public static SnitchMod getMod() {
 		return INSTANCE;
 	}
@@ -125,31 +148,53 @@ public abstract class SnitchMod {
 	public @Nullable SnitchesStore getStore() {
 		String server = getCurrentServer();
 		if (store != null && !store.server.equals(server)) {
-			store.close();
-			store = null;
+			closeStore();
 		}
 		if (store == null && server != null) {
-			store = new SnitchesStore(server);
+			store = SnitchesStore.open(server, getLoadCenter(server));
+			if (SnitchModConfig.getInstance().recordPackets) {
+				recorder = PacketRecorder.start(server, getClientUuid());
+			}
 		}
 		return store;
 	}
 
+	/**
+	 * Snitches around the player are loaded first, so they render before the rest of the DB is read.
+	 */
+	private @Nullable WorldPos getLoadCenter(@NotNull String server) {
+		String world = getCurrentWorld();
+		if (mc.player == null || world == null) return null;
+		return new WorldPos(server, world, mc.player.getBlockX(), mc.player.getBlockY(), mc.player.getBlockZ());
+	}
+
+	private void closeStore() {
+		if (store != null) store.close();
+		store = null;
+		nearbySnitches.invalidate();
+		if (recorder != null) recorder.close();
+		recorder = null;
+	}
+
 	public void handleConnectedToServer() {
 		getStore();
 	}
 
 	public void handleDisconnectedFromServer() {
-		if (store != null) store.close();
-		store = null;
+		closeStore();
 	}
 
 	public void handleTick() {
+		if (store != null && mc.player != null && getCurrentWorld() != null) {
+			store.touchRegionsAround(getCurrentWorld(), mc.player.getBlockX(), mc.player.getBlockZ());
+		}
+
 		while (openGuiKey.consumeClick()) {
 			// TODO open gui, and rename keybind
-			store.close();
-			store = null;
+			String writeStats = store.getWriteQueue().formatStats();
+			closeStore();
 			getStore();
-			logToChat(Component.literal("Reloaded the database"));
+			logToChat(Component.literal("Reloaded the database. Previous writes: " + writeStats));
 		}
 
 		while (jalistAutoKey.consumeClick()) {
@@ -163,9 +208,8 @@ public abstract class SnitchMod {
 				break;
 			}
 
-			Optional<Snitch> optSnitch = getMod().streamNearbySnitches(mc.player.position(), 260)
-				.filter(s -> !s.wasBroken())
-				.limit(100)
+			Optional<Snitch> optSnitch = getMod().getNearbySnitches(mc.player.position(), 260, 100, SnitchColumns.Filter.NOT_BROKEN)
+				.stream()
 				.filter(s -> Utils.playerIsLookingAtSnitch(mc.player, s))
 				.findFirst();
 			if (optSnitch.isEmpty()) {
@@ -211,8 +255,8 @@ public abstract class SnitchMod {
 		}
 
 		while (previewSnitchFieldKey.consumeClick()) {
-			Optional<Snitch> optNearestSnitch = streamNearbySnitches(mc.player.position(), 2*23)
-				.filter(Snitch::isAlive)
+			Optional<Snitch> optNearestSnitch = getNearbySnitches(mc.player.position(), 2*23, 1, SnitchColumns.Filter.ALIVE)
+				.stream()
 				.findFirst();
 			if (optNearestSnitch.isEmpty()) {
 				snitchFieldToPreview = null;
@@ -248,20 +292,21 @@ public abstract class SnitchMod {
 	public boolean handleChat(Component message) {
 		getStore();
 		if (store == null) return false;
+		if (recorder != null) recorder.recordChat(message, getCurrentWorld());
 
-		SnitchAlert snitchAlert = SnitchAlert.fromChat(message, store.server, getCurrentWorld());
+		SnitchAlert snitchAlert = McAdapters.alertFromChat(message, store.server, getCurrentWorld());
 		if (snitchAlert != null) {
 			store.updateSnitchFromAlert(snitchAlert);
 			return false;
 		}
 
-		SnitchRename snitchRename = SnitchRename.fromChat(message, store.server, getCurrentWorld(), getClientUuid());
+		SnitchRename snitchRename = McAdapters.renameFromChat(message, store.server, getCurrentWorld(), getClientUuid());
 		if (snitchRename != null) {
 			store.updateSnitchFromRename(snitchRename);
 			return false;
 		}
 
-		Snitch snitchCreated = SnitchCreatedChatParser.fromChat(message, store.server, getCurrentWorld(), getClientUuid());
+		Snitch snitchCreated = McAdapters.createdFromChat(message, store.server, getCurrentWorld(), getClientUuid());
 		if (snitchCreated != null) {
 			Snitch alreadyExistingSnitch = store.getSnitch(snitchCreated.pos);
 			store.updateSnitchFromCreation(snitchCreated);
@@ -304,14 +349,177 @@ public abstract class SnitchMod {
 		return false;
 	}
 
+	/**
+	 * Handles SnitchMod's own client-side commands, see {@link #handleSearchCommand} and {@link #handleTagCommand}.
+	 *
+	 * @return true if the command was SnitchMod's and must not be sent to the server
+	 */
+	public boolean handleCommand(String command) {
+		String[] parts = command.split(" ", 2);
+		boolean isSearch = parts[0].equalsIgnoreCase(SEARCH_COMMAND);
+		boolean isTag = parts[0].equalsIgnoreCase(TAG_COMMAND);
+		if (!isSearch && !isTag) return false;
+		getStore();
+		String world = getCurrentWorld();
+		if (store == null || world == null || mc.player == null) return true;
+		String args = parts.length > 1 ? parts[1].strip() : "";
+		if (isSearch) handleSearchCommand(args, world);
+		else handleTagCommand(args, world);
+		return true;
+	}
+
+	/**
+	 * `/snitchsearch [#page] <words>` lists the snitches whose name, group, or notes match, nearest first.
+	 */
+	private void handleSearchCommand(String args, String world) {
+		String text = args;
+		int page = 1;
+		if (text.startsWith("#")) {
+			String[] pageAndText = text.split(" ", 2);
+			try {
+				page = Math.max(1, Integer.parseInt(pageAndText[0].substring(1)));
+			} catch (NumberFormatException ignored) {
+			}
+			text = pageAndText.length > 1 ? pageAndText[1].strip() : "";
+		}
+		if (text.isEmpty()) {
+			logToChat(Component.literal("Usage: /" + SEARCH_COMMAND + " [#page] <words in snitch name, group, or notes>"));
+			return;
+		}
+
+		final String query = text;
+		final int pageNr = page;
+		final int playerX = mc.player.getBlockX();
+		final int playerZ = mc.player.getBlockZ();
+		// one extra result tells whether there is a next page
+		store.searchSnitches(query, world, playerX, playerZ, (page - 1) * SEARCH_PAGE_SIZE, SEARCH_PAGE_SIZE + 1,
+			results -> mc.execute(() -> showSearchResults(query, pageNr, results, world, playerX, playerZ)));
+	}
+
+	/**
+	 * `/snitchtag add|remove <tag> [radius]` tags or untags all snitches within `radius` blocks of the player,
+	 * `addgroup|removegroup <group> <tag>` all snitches on a group,
+	 * `show [tag]` limits the range overlay to snitches with that tag, or shows all again,
+	 * `find <tag>` lists the nearest snitches with that tag, and `list` counts the snitches per tag.
+	 */
+	private void handleTagCommand(String args, String world) {
+		String[] words = args.isEmpty() ? new String[0] : args.split("\\s+");
+		String action = words.length > 0 ? words[0].toLowerCase() : "";
+		int x = mc.player.getBlockX();
+		int y = mc.player.getBlockY();
+		int z = mc.player.getBlockZ();
+		switch (action) {
+			case "add", "remove" -> {
+				if (words.length < 2 || words.length > 3) break;
+				String tag = words[1];
+				int radius = TAG_DEFAULT_RADIUS;
+				if (words.length == 3) {
+					try {
+						radius = Integer.parseInt(words[2]);
+					} catch (NumberFormatException e) {
+						break;
+					}
+				}
+				radius = Math.max(0, Math.min(TAG_MAX_RADIUS, radius));
+				int changed = action.equals("add")
+					? store.tagSnitchesInBox(world, x - radius, y - radius, z - radius, x + radius, y + radius, z + radius, tag)
+					: store.untagSnitchesInBox(world, x - radius, y - radius, z - radius, x + radius, y + radius, z + radius, tag);
+				logToChat(Component.literal(String.format("%s tag \"%s\" %s %d snitches within %d blocks",
+					action.equals("add") ? "Added" : "Removed", tag, action.equals("add") ? "to" : "from", changed, radius)));
+				return;
+			}
+			case "addgroup", "removegroup" -> {
+				if (words.length != 3) break;
+				String group = words[1];
+				String tag = words[2];
+				int changed = action.equals("addgroup")
+					? store.tagSnitchesInGroup(group, tag)
+					: store.untagSnitchesInGroup(group, tag);
+				logToChat(Component.literal(String.format("%s tag \"%s\" %s %d snitches on [%s]",
+					action.equals("addgroup") ? "Added" : "Removed", tag, action.equals("addgroup") ? "to" : "from", changed, group)));
+				return;
+			}
+			case "show" -> {
+				if (words.length > 2) break;
+				overlayTag = words.length == 2 ? words[1] : null;
+				logToChat(Component.literal(overlayTag == null
+					? "Range overlay shows all snitches"
+					: String.format("Range overlay only shows snitches tagged \"%s\"", overlayTag)));
+				return;
+			}
+			case "find" -> {
+				if (words.length != 2) break;
+				String tag = words[1];
+				store.findSnitchesWithTag(world, tag, x, z, SEARCH_PAGE_SIZE,
+					results -> mc.execute(() -> showTaggedSnitches(tag, results, world, x, z)));
+				return;
+			}
+			case "list" -> {
+				if (words.length != 1) break;
+				store.countTags(counts -> mc.execute(() -> {
+					if (counts.isEmpty()) {
+						logToChat(Component.literal("No snitches are tagged"));
+						return;
+					}
+					List<String> entries = new ArrayList<>(counts.size());
+					counts.forEach((tag, count) -> entries.add(tag + " (" + count + ")"));
+					logToChat(Component.literal("Snitch tags: " + String.join(", ", entries)));
+				}));
+				return;
+			}
+		}
+		logToChat(Component.literal("Usage: /" + TAG_COMMAND + " add|remove <tag> [radius], addgroup|removegroup <group> <tag>, show [tag], find <tag>, list"));
+	}
+
+	private void showTaggedSnitches(String tag, List<Snitch> results, String world, int x, int z) {
+		if (results.isEmpty()) {
+			logToChat(Component.literal(String.format("No snitches in this world are tagged \"%s\"", tag)));
+			return;
+		}
+		logToChat(Component.literal(String.format("Nearest snitches tagged \"%s\":", tag)));
+		for (Snitch snitch : results) logToChat(Component.literal(formatSnitchWithDistance(snitch, world, x, z)));
+	}
+
+	private void showSearchResults(String query, int page, List<Snitch> results, String world, int x, int z) {
+		if (results.isEmpty()) {
+			logToChat(Component.literal(page == 1
+				? String.format("No snitches match \"%s\"", query)
+				: String.format("No more snitches match \"%s\"", query)));
+			return;
+		}
+		logToChat(Component.literal(String.format("Snitches matching \"%s\", page %d:", query, page)));
+		for (Snitch snitch : results.subList(0, Math.min(results.size(), SEARCH_PAGE_SIZE))) {
+			logToChat(Component.literal(formatSnitchWithDistance(snitch, world, x, z)));
+		}
+		if (results.size() > SEARCH_PAGE_SIZE) {
+			logToChat(Component.literal(String.format("More: /%s #%d %s", SEARCH_COMMAND, page + 1, query)));
+		}
+	}
+
+	private static String formatSnitchWithDistance(Snitch snitch, String world, int x, int z) {
+		String where = world.equals(snitch.pos.getWorld())
+			? String.format("%dm away", Math.round(Math.hypot(snitch.pos.getX() - x, snitch.pos.getZ() - z)))
+			: "in " + snitch.pos.getWorld();
+		return String.format(
+			"\"%s\" on [%s] at %d %d %d, %s",
+			snitch.getName() != null ? snitch.getName() : "",
+			snitch.getGroup(),
+			snitch.pos.getX(),
+			snitch.pos.getY(),
+			snitch.pos.getZ(),
+			where
+		);
+	}
+
 	public void handleWindowItems(List<ItemStack> stacks) {
 		getStore();
 		if (store == null) return;
+		if (recorder != null) recorder.recordWindowItems(stacks, getCurrentWorld());
 		List<JalistEntry> jalistEntries = new ArrayList<JalistEntry>(stacks.size());
 		for (int i = 0; i < stacks.size(); i++) {
 			ItemStack stack = stacks.get(i);
 			try {
-				JalistEntry jalistEntry = JalistEntry.fromStack(stack, store.server);
+				JalistEntry jalistEntry = McAdapters.jalistEntryFromStack(stack, store.server);
 				if (jalistEntry != null) {
 					jalistEntries.add(jalistEntry);
 					// Notify auto-paginator with actual timestamp data
@@ -340,14 +548,25 @@ public abstract class SnitchMod {
 		Renderer.renderOverlays(poseStack);
 	}
 
-	public Stream<Snitch> streamNearbySnitches(Vec3 playerPos, int distance) {
+	/**
+	 * Snitches in the current world closer than `distance` to `playerPos`, nearest first.
+	 * At most `limit` snitches matching `filter` are returned.
+	 * Served from {@link NearbySnitchesCache}, so calling this every frame is cheap.
+	 */
+	public List<Snitch> getNearbySnitches(Vec3 playerPos, int distance, int limit, SnitchColumns.Filter filter) {
+		return getNearbySnitches(playerPos, distance, limit, filter, null);
+	}
+
+	/**
+	 * Like {@link #getNearbySnitches(Vec3, int, int, SnitchColumns.Filter)}, but only snitches with `tag`, if not null.
+	 */
+	public List<Snitch> getNearbySnitches(Vec3 playerPos, int distance, int limit, SnitchColumns.Filter filter, @Nullable String tag) {
 		getStore();
-		if (store == null) return Stream.empty();
+		if (store == null) return Collections.emptyList();
 		String currentWorld = getCurrentWorld();
-		return store.getAllSnitches().stream()
-			.filter(s -> s.getPos().getCenter().distanceTo(playerPos) < distance)
-			.filter(s -> currentWorld != null && currentWorld.equals(s.getPos().getWorld()))
-			.sorted(Comparator.comparing(s -> s.getPos().getCenter().distanceTo(playerPos)));
+		if (currentWorld == null) return Collections.emptyList();
+		return nearbySnitches.getNearby(
+			store, currentWorld, playerPos.x, playerPos.y, playerPos.z, distance, limit, filter, tag);
 	}
 
 	private void logToChat(Component msg) {
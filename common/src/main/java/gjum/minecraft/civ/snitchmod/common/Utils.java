@@ -1,24 +1,15 @@
 package gjum.minecraft.civ.snitchmod.common;
 
-import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
-
-import gjum.minecraft.civ.snitchmod.common.model.Snitch;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
 import net.minecraft.client.player.LocalPlayer;
 import net.minecraft.world.phys.AABB;
 import net.minecraft.world.phys.Vec3;
 
 public class Utils {
-	public static @NotNull String nonEmptyOrDefault(@Nullable String s, @NotNull String default_) {
-		if (s == null) return default_;
-		if (s.isEmpty()) return default_;
-		return s;
-	}
-
 	public static boolean playerIsLookingAtSnitch(LocalPlayer player, Snitch snitch) {
 		Vec3 playerLookAngle = player.getLookAngle();
 		Vec3 playerPos = player.getEyePosition();
-		AABB snitchBox = new AABB(snitch.pos);
+		AABB snitchBox = McAdapters.getBlockAABB(snitch.pos);
 
 		double invertedLookAngleX = 1 / playerLookAngle.x;
 		double tx1 = (snitchBox.minX - playerPos.x) * invertedLookAngleX;
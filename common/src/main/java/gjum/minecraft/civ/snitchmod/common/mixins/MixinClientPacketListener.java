@@ -39,6 +39,16 @@ public abstract class MixinClientPacketListener {
 		}
 	}
 
+	@Inject(method = "sendCommand", at = @At("HEAD"), cancellable = true)
+	protected void onSendCommand(String command, CallbackInfo ci) {
+		try {
+			boolean handled = getMod().handleCommand(command);
+			if (handled) ci.cancel();
+		} catch (Throwable e) {
+			e.printStackTrace();
+		}
+	}
+
 	@Inject(method = "handleLogin", at = @At("HEAD"))
 	protected void onHandleLogin(ClientboundLoginPacket packet, CallbackInfo ci) {
 		if (!Minecraft.getInstance().isSameThread()) {
@@ -1,5 +1,8 @@
 package gjum.minecraft.civ.snitchmod.common.model;
 
+import gjum.minecraft.civ.snitchmod.common.McAdapters;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import gjum.minecraft.civ.snitchmod.core.model.WorldPos;
 import net.minecraft.core.BlockPos;
 import org.jetbrains.annotations.NotNull;
 
@@ -15,7 +18,8 @@ public class SnitchFieldPreview {
 		this.source = source;
 		this.direction = direction;
 
-		BlockPos previewPos = transposeSnitchFieldPositionByDirection(source.getPos(), direction);
+		BlockPos previewPos = transposeSnitchFieldPositionByDirection(
+			McAdapters.toBlockPos(source.getPos()), direction);
 		this.field = new Snitch(
 			new WorldPos(
 				source.getPos().getServer(),
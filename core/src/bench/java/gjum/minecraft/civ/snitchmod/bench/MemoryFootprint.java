@@ -0,0 +1,130 @@
+package gjum.minecraft.civ.snitchmod.bench;
+
+import gjum.minecraft.civ.snitchmod.core.SnitchModConfig;
+import gjum.minecraft.civ.snitchmod.core.SnitchRegionPager;
+import gjum.minecraft.civ.snitchmod.core.SnitchSqliteDb;
+import gjum.minecraft.civ.snitchmod.core.SnitchesStore;
+import gjum.minecraft.civ.snitchmod.core.model.Interner;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+
+import java.io.File;
+import java.lang.ref.Reference;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Loads a `snitches.sqlite` and reports how much heap the loaded snitches retain.
+ * <p>
+ * With `paged`, walks a paged store across every region instead, so it keeps loading and evicting,
+ * and reports the heap retained at the end; that must stay around the budget, not grow with the DB.
+ * <p>
+ * Usage: `./gradlew :core:memoryFootprint -Pdb=path/to/snitches.sqlite [-PmaxResident=50000]`
+ */
+public class MemoryFootprint {
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: MemoryFootprint <snitches.sqlite> [paged <maxResidentSnitches>]");
+			System.exit(1);
+		}
+		File dbFile = new File(args[0]);
+		if (!dbFile.isFile()) {
+			System.err.println("No such file: " + dbFile);
+			System.exit(1);
+		}
+
+		SnitchSqliteDb db = new SnitchSqliteDb("bench", dbFile);
+		if (args.length >= 3 && args[1].equals("paged")) {
+			measurePaged(db, Integer.parseInt(args[2]));
+			return;
+		}
+
+		long before = usedHeap();
+		long startTime = System.nanoTime();
+		Collection<Snitch> snitches = db.selectAllSnitches();
+		long loadMs = (System.nanoTime() - startTime) / 1_000_000;
+		long after = usedHeap();
+
+		db.close();
+
+		int count = snitches.size();
+		long retained = after - before;
+		System.out.printf("Loaded %d snitches in %dms%n", count, loadMs);
+		System.out.printf("Heap before load: %,d bytes%n", before);
+		System.out.printf("Heap after load:  %,d bytes%n", after);
+		if (count > 0) {
+			System.out.printf("Retained: %,d bytes = %d bytes per snitch%n", retained, retained / count);
+		}
+		System.out.printf(
+			"Distinct values: %d worlds, %d groups%n",
+			Interner.WORLDS.size(), Interner.GROUPS.size());
+
+		// keep the snitches reachable until after the measurement
+		Reference.reachabilityFence(snitches);
+	}
+
+	private static void measurePaged(SnitchSqliteDb db, int maxResident) throws Exception {
+		// before anything was read, so whatever reading leaves behind counts too
+		long before = usedHeap();
+		// bounds per world, streamed so they are not all in memory at once
+		HashMap<String, int[]> boundsByWorld = new HashMap<>();
+		int[] total = {0};
+		db.selectSnitchesNearestFirst(null, 0, 0, 10_000, chunk -> {
+			for (Snitch snitch : chunk) {
+				int[] b = boundsByWorld.computeIfAbsent(snitch.pos.getWorld(),
+					w -> new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE});
+				b[0] = Math.min(b[0], snitch.pos.getX());
+				b[1] = Math.min(b[1], snitch.pos.getZ());
+				b[2] = Math.max(b[2], snitch.pos.getX());
+				b[3] = Math.max(b[3], snitch.pos.getZ());
+			}
+			total[0] += chunk.size();
+			return true;
+		});
+
+		SnitchModConfig.getInstance().storeMaxResidentSnitches = maxResident;
+		SnitchesStore store = SnitchesStore.openPaged("bench", db);
+		long startTime = System.nanoTime();
+		int steps = 0;
+		int step = SnitchRegionPager.REGION_SIZE;
+		for (var entry : boundsByWorld.entrySet()) {
+			int[] b = entry.getValue();
+			for (int x = b[0]; x <= b[2] + step; x += step) {
+				for (int z = b[1]; z <= b[3] + step; z += step) {
+					store.touchRegionsAround(entry.getKey(), x, z);
+					while (!store.isLoaded()) Thread.sleep(1);
+					steps++;
+				}
+			}
+		}
+		long walkMs = (System.nanoTime() - startTime) / 1_000_000;
+		long after = usedHeap();
+
+		int resident = store.getSnitchCount();
+		long retained = after - before;
+		System.out.printf("Walked %d positions over %d snitches in %dms, budget %d%n", steps, total[0], walkMs, maxResident);
+		System.out.printf("Heap before:      %,d bytes%n", before);
+		System.out.printf("Heap after walk:  %,d bytes%n", after);
+		System.out.printf("Retained: %,d bytes for %d resident snitches%n", retained, resident);
+		if (resident > 0) {
+			System.out.printf("= %d bytes per resident snitch%n", retained / resident);
+		}
+		System.out.printf(
+			"Distinct values: %d worlds, %d groups%n",
+			Interner.WORLDS.size(), Interner.GROUPS.size());
+
+		Reference.reachabilityFence(store);
+		store.close();
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		// gc is only a hint; repeat until the number settles
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(100);
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+}
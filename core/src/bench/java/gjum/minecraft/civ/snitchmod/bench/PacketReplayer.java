@@ -0,0 +1,244 @@
+package gjum.minecraft.civ.snitchmod.bench;
+
+import gjum.minecraft.civ.snitchmod.core.SnitchJournalStorage;
+import gjum.minecraft.civ.snitchmod.core.SnitchMemoryStorage;
+import gjum.minecraft.civ.snitchmod.core.SnitchSqliteDb;
+import gjum.minecraft.civ.snitchmod.core.SnitchStorage;
+import gjum.minecraft.civ.snitchmod.core.SnitchesStore;
+import gjum.minecraft.civ.snitchmod.core.model.*;
+import gjum.minecraft.civ.snitchmod.core.replay.PacketRecording;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds a {@link PacketRecording} through the parsers and a fresh store, the same way
+ * SnitchMod.handleChat and SnitchMod.handleWindowItems do in game,
+ * and reports throughput, per-packet latency, and the resulting store state.
+ * <p>
+ * Usage: `./gradlew :core:replay -Precording=path/to/recording.smrec [-PreplayArgs="--original-speed --db tmp.sqlite"]`
+ * <p>
+ * Options:
+ * `--original-speed` waits between packets as long as they were apart when recorded, instead of going flat out.
+ * `--db FILE` writes to a SQLite file (deleted first) instead of keeping snitches in memory only.
+ * `--backend sqlite|journal|memory` writes to that {@link SnitchStorage} instead; the first two need `--db`.
+ * `--dump-state FILE` writes one line per resulting snitch, for diffing two runs.
+ * `--expect-digest HEX` exits with status 2 if the resulting state differs, for use as a regression test.
+ */
+public class PacketReplayer {
+	private static final String USAGE = "Usage: PacketReplayer <recording.smrec> [--original-speed] [--db FILE] [--backend sqlite|journal|memory] [--dump-state FILE] [--expect-digest HEX]";
+
+	private int alerts = 0;
+	private int renames = 0;
+	private int creations = 0;
+	private int jalistEntries = 0;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+		File recordingFile = new File(args[0]);
+		boolean originalSpeed = false;
+		File dbFile = null;
+		SnitchStorage.Backend backend = SnitchStorage.Backend.SQLITE;
+		File dumpFile = null;
+		String expectedDigest = null;
+		for (int i = 1; i < args.length; i++) {
+			switch (args[i]) {
+				case "--original-speed" -> originalSpeed = true;
+				case "--db" -> dbFile = new File(args[++i]);
+				case "--backend" -> backend = SnitchStorage.Backend.valueOf(args[++i].toUpperCase(Locale.ROOT));
+				case "--dump-state" -> dumpFile = new File(args[++i]);
+				case "--expect-digest" -> expectedDigest = args[++i];
+				default -> {
+					System.err.println("Unknown option " + args[i]);
+					System.err.println(USAGE);
+					System.exit(1);
+				}
+			}
+		}
+
+		PacketRecording recording = PacketRecording.read(recordingFile);
+		System.out.printf("Read %d packets from %s (server %s)%n", recording.entries.size(), recordingFile, recording.server);
+
+		SnitchStorage db = null;
+		if (backend == SnitchStorage.Backend.MEMORY) {
+			db = new SnitchMemoryStorage(recording.server);
+		} else if (dbFile != null) {
+			if (dbFile.exists() && !dbFile.delete()) throw new IllegalStateException("Could not delete " + dbFile);
+			db = backend == SnitchStorage.Backend.JOURNAL
+				? new SnitchJournalStorage(recording.server, dbFile)
+				: new SnitchSqliteDb(recording.server, dbFile);
+		}
+		SnitchesStore store = new SnitchesStore(recording.server, db);
+
+		PacketReplayer replayer = new PacketReplayer();
+		int exitCode = replayer.replay(recording, store, originalSpeed, db, dumpFile, expectedDigest);
+		System.exit(exitCode);
+	}
+
+	private int replay(
+		PacketRecording recording,
+		SnitchesStore store,
+		boolean originalSpeed,
+		SnitchStorage db,
+		File dumpFile,
+		String expectedDigest
+	) throws Exception {
+		UUID clientUuid = recording.clientUuid != null ? UUID.fromString(recording.clientUuid) : new UUID(0, 0);
+		List<PacketRecording.Entry> entries = recording.entries;
+		long[] latencies = new long[entries.size()];
+		long busyNanos = 0;
+
+		long startNanos = System.nanoTime();
+		for (int i = 0; i < entries.size(); i++) {
+			PacketRecording.Entry entry = entries.get(i);
+			if (originalSpeed) {
+				long waitNanos = startNanos + entry.nanos() - System.nanoTime();
+				if (waitNanos > 0) TimeUnit.NANOSECONDS.sleep(waitNanos);
+			}
+			long before = System.nanoTime();
+			if (entry instanceof PacketRecording.ChatEntry chat) {
+				handleChat(store, chat, clientUuid);
+			} else if (entry instanceof PacketRecording.WindowItemsEntry windowItems) {
+				handleWindowItems(store, windowItems);
+			}
+			latencies[i] = System.nanoTime() - before;
+			busyNanos += latencies[i];
+		}
+		long wallNanos = System.nanoTime() - startNanos;
+
+		if (db != null) {
+			long flushStart = System.nanoTime();
+			store.getWriteQueue().finishDeletions(db.deleteSnitches(store.getWriteQueue().drainDeletions()));
+			while (true) {
+				List<Snitch> snitches = store.getWriteQueue().drain(1000);
+				if (snitches.isEmpty()) break;
+				boolean ok = db.writeSnitches(snitches);
+				store.getWriteQueue().finishWrite(ok);
+				if (!ok) break;
+			}
+			System.out.printf("Flushed remaining writes in %dms%n", (System.nanoTime() - flushStart) / 1_000_000);
+		}
+
+		System.out.printf("Parsed %d alerts, %d renames, %d creations, %d jalist entries%n", alerts, renames, creations, jalistEntries);
+		System.out.printf("Replayed in %dms wall time, %dms handling packets%n", wallNanos / 1_000_000, busyNanos / 1_000_000);
+		if (busyNanos > 0) {
+			System.out.printf("Throughput: %.0f packets/s while handling%n", entries.size() * 1e9 / busyNanos);
+		}
+		Arrays.sort(latencies);
+		System.out.printf(
+			"Latency per packet: p50 %s, p90 %s, p99 %s, p99.9 %s, max %s%n",
+			formatMicros(percentile(latencies, 50)),
+			formatMicros(percentile(latencies, 90)),
+			formatMicros(percentile(latencies, 99)),
+			formatMicros(percentile(latencies, 99.9)),
+			formatMicros(latencies.length > 0 ? latencies[latencies.length - 1] : 0));
+		System.out.println("Writes: " + store.getWriteQueue().formatStats());
+
+		List<String> stateLines = describeState(store);
+		Map<String, Integer> perWorld = new TreeMap<>();
+		for (Snitch snitch : store.getAllSnitches()) perWorld.merge(snitch.pos.getWorld(), 1, Integer::sum);
+		String digest = digest(stateLines);
+		System.out.printf("Final state: %d snitches %s, digest %s%n", store.getSnitchCount(), perWorld, digest);
+
+		if (dumpFile != null) {
+			try (PrintWriter out = new PrintWriter(dumpFile, StandardCharsets.UTF_8)) {
+				for (String line : stateLines) out.println(line);
+			}
+			System.out.println("Wrote final state to " + dumpFile);
+		}
+
+		store.close();
+
+		if (expectedDigest != null && !expectedDigest.equalsIgnoreCase(digest)) {
+			System.err.println("Final state digest " + digest + " does not match expected " + expectedDigest);
+			return 2;
+		}
+		return 0;
+	}
+
+	/**
+	 * Same order and store calls as SnitchMod.handleChat.
+	 */
+	private void handleChat(SnitchesStore store, PacketRecording.ChatEntry chat, UUID clientUuid) {
+		String world = chat.world() != null ? chat.world() : "world";
+		SnitchAlert snitchAlert = SnitchAlert.fromText(chat.text(), chat::hoverText, store.server, world);
+		if (snitchAlert != null) {
+			store.updateSnitchFromAlert(snitchAlert);
+			alerts++;
+			return;
+		}
+
+		SnitchRename snitchRename = SnitchRename.fromText(chat.text(), chat::hoverText, store.server, world, clientUuid);
+		if (snitchRename != null) {
+			store.updateSnitchFromRename(snitchRename);
+			renames++;
+			return;
+		}
+
+		Snitch snitchCreated = SnitchCreatedChatParser.fromText(chat.text(), store.server, world, clientUuid);
+		if (snitchCreated != null) {
+			store.updateSnitchFromCreation(snitchCreated);
+			creations++;
+		}
+	}
+
+	/**
+	 * Same as SnitchMod.handleWindowItems.
+	 */
+	private void handleWindowItems(SnitchesStore store, PacketRecording.WindowItemsEntry windowItems) {
+		List<JalistEntry> entries = new ArrayList<>(windowItems.items().size());
+		for (PacketRecording.JalistItem item : windowItems.items()) {
+			try {
+				JalistEntry entry = JalistEntry.fromLore(item.type(), item.name(), item.lore(), store.server);
+				if (entry != null) entries.add(entry);
+			} catch (Throwable e) {
+				System.err.println("Failed parsing jalist item " + item);
+				e.printStackTrace();
+			}
+		}
+		store.updateSnitchesFromJalist(entries);
+		jalistEntries += entries.size();
+	}
+
+	/**
+	 * Sorted, and without timestamps or anything else that depends on when the replay ran.
+	 */
+	private static List<String> describeState(SnitchesStore store) {
+		List<String> lines = new ArrayList<>();
+		for (Snitch snitch : store.getAllSnitches()) {
+			lines.add(String.format(
+				"%s %d %d %d type=%s group=%s name=%s broken=%b gone=%b",
+				snitch.pos.getWorld(), snitch.pos.getX(), snitch.pos.getY(), snitch.pos.getZ(),
+				snitch.getType(), snitch.getGroup(), snitch.getName(),
+				snitch.wasBroken(), snitch.isGone()));
+		}
+		Collections.sort(lines);
+		return lines;
+	}
+
+	private static String digest(List<String> lines) throws Exception {
+		MessageDigest sha = MessageDigest.getInstance("SHA-256");
+		for (String line : lines) {
+			sha.update(line.getBytes(StandardCharsets.UTF_8));
+			sha.update((byte) '\n');
+		}
+		return HexFormat.of().formatHex(sha.digest(), 0, 8);
+	}
+
+	private static long percentile(long[] sorted, double percent) {
+		if (sorted.length == 0) return 0;
+		int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	private static String formatMicros(long nanos) {
+		return String.format("%.1fus", nanos / 1000.0);
+	}
+}
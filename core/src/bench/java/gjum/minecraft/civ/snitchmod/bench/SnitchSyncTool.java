@@ -0,0 +1,65 @@
+package gjum.minecraft.civ.snitchmod.bench;
+
+import gjum.minecraft.civ.snitchmod.core.SnitchSqliteDb;
+import gjum.minecraft.civ.snitchmod.core.SnitchSync;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Syncs a `snitches.sqlite` with other players' DBs, see {@link SnitchSync}:
+ * through a shared directory, or directly with another instance of this tool.
+ * Close Minecraft first, or it will not see the merged snitches until the next start.
+ * <p>
+ * Usage: `./gradlew :core:syncSnitches -Pdb=path/to/snitches.sqlite -Pmode=dir -Ptarget=path/to/shared/dir`,
+ * or `-Pmode=serve -Ptarget=25599` on one side and `-Pmode=connect -Ptarget=localhost:25599` on the other,
+ * e.g. through an SSH tunnel: the server only listens on loopback.
+ */
+public class SnitchSyncTool {
+	private static final String USAGE = "Usage: SnitchSyncTool dir <snitches.sqlite> <shared dir> | serve <snitches.sqlite> <port> | connect <snitches.sqlite> <host:port>";
+	private static final int SOCKET_TIMEOUT_MS = 60_000;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+		File dbFile = new File(args[1]);
+		if (!dbFile.isFile()) {
+			System.err.println("No such file: " + dbFile);
+			System.exit(1);
+		}
+
+		SnitchSqliteDb db = new SnitchSqliteDb("sync", dbFile);
+		try {
+			switch (args[0]) {
+				case "dir" -> System.out.println("Synced: " + SnitchSync.syncDirectory(db, new File(args[2])));
+				case "serve" -> {
+					// loopback only by default: the protocol has no authentication
+					try (ServerSocket server = new ServerSocket(Integer.parseInt(args[2]), 1, InetAddress.getLoopbackAddress())) {
+						System.out.println("Waiting for a peer on " + server.getLocalSocketAddress());
+						try (Socket socket = server.accept()) {
+							socket.setSoTimeout(SOCKET_TIMEOUT_MS);
+							System.out.println("Synced with " + socket.getRemoteSocketAddress() + ": " + SnitchSync.exchange(db, socket, false));
+						}
+					}
+				}
+				case "connect" -> {
+					int colon = args[2].lastIndexOf(':');
+					try (Socket socket = new Socket(args[2].substring(0, colon), Integer.parseInt(args[2].substring(colon + 1)))) {
+						socket.setSoTimeout(SOCKET_TIMEOUT_MS);
+						System.out.println("Synced with " + socket.getRemoteSocketAddress() + ": " + SnitchSync.exchange(db, socket, true));
+					}
+				}
+				default -> {
+					System.err.println(USAGE);
+					System.exit(1);
+				}
+			}
+		} finally {
+			db.close();
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package gjum.minecraft.civ.snitchmod.bench;
+
+import gjum.minecraft.civ.snitchmod.core.SnitchSqliteDb;
+import gjum.minecraft.civ.snitchmod.core.SnitchTransfer;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Exports a `snitches.sqlite` to a file others can import, or imports one, see {@link SnitchTransfer}.
+ * The format follows the file extension: `.jsonl`, `.csv`, anything else is the compact binary format.
+ * Close Minecraft first when importing into the DB it uses, or it will not see the imported snitches.
+ * <p>
+ * Usage: `./gradlew :core:exportSnitches -Pdb=path/to/snitches.sqlite -Pfile=snitches.jsonl`
+ * and `./gradlew :core:importSnitches -Pdb=path/to/snitches.sqlite -Pfile=snitches.jsonl -Ppolicy=newest`
+ */
+public class SnitchTransferTool {
+	private static final String USAGE = "Usage: SnitchTransferTool export <snitches.sqlite> <file> | import <snitches.sqlite> <file> [newest|keep_local|overwrite]";
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+		File dbFile = new File(args[1]);
+		File file = new File(args[2]);
+		SnitchTransfer.Format format = SnitchTransfer.Format.of(file);
+
+		SnitchTransfer.Result result;
+		switch (args[0]) {
+			case "export" -> {
+				if (!dbFile.isFile()) {
+					System.err.println("No such file: " + dbFile);
+					System.exit(1);
+				}
+				SnitchSqliteDb db = new SnitchSqliteDb("transfer", dbFile);
+				try {
+					result = SnitchTransfer.exportTo(db, file, format);
+				} finally {
+					db.close();
+				}
+			}
+			case "import" -> {
+				if (!file.isFile()) {
+					System.err.println("No such file: " + file);
+					System.exit(1);
+				}
+				SnitchSqliteDb.MergePolicy policy = SnitchSqliteDb.MergePolicy.NEWEST;
+				if (args.length > 3) policy = SnitchSqliteDb.MergePolicy.valueOf(args[3].toUpperCase(Locale.ROOT));
+				SnitchSqliteDb db = new SnitchSqliteDb("transfer", dbFile);
+				try {
+					result = SnitchTransfer.importFrom(db, file, format, policy);
+				} finally {
+					db.close();
+				}
+			}
+			default -> {
+				System.err.println(USAGE);
+				System.exit(1);
+				return;
+			}
+		}
+		System.out.printf("%sed %d snitches (%s) in %dms, %d rows/s%n",
+			args[0].equals("export") ? "Export" : "Import", result.rows(), format, result.tookMs(), result.rowsPerSecond());
+		if (result.failedRows() > 0) {
+			System.err.printf("%d snitches failed to import%n", result.failedRows());
+			System.exit(2);
+		}
+	}
+}
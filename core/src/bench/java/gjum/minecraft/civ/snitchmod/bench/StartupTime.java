@@ -0,0 +1,62 @@
+package gjum.minecraft.civ.snitchmod.bench;
+
+import gjum.minecraft.civ.snitchmod.core.SnitchSnapshot;
+import gjum.minecraft.civ.snitchmod.core.SnitchSqliteDb;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Measures one cold start: opening a `snitches.sqlite` and getting all its snitches into memory,
+ * either from SQL or from a snapshot next to it. Run each mode a few times in fresh JVMs;
+ * drop the OS page cache in between to include reading the file from disk.
+ * <p>
+ * Usage: `./gradlew :core:startupTime -Pdb=path/to/snitches.sqlite -Pmode=snapshot`
+ * <p>
+ * The snapshot is written to `<db>.snapshot` on the first run, and whenever it no longer matches the DB.
+ */
+public class StartupTime {
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2 || !(args[1].equals("sql") || args[1].equals("snapshot"))) {
+			System.err.println("Usage: StartupTime <snitches.sqlite> sql|snapshot");
+			System.exit(1);
+		}
+		File dbFile = new File(args[0]);
+		if (!dbFile.isFile()) {
+			System.err.println("No such file: " + dbFile);
+			System.exit(1);
+		}
+		File snapshotFile = new File(dbFile.getPath() + ".snapshot");
+		long jvmStartMs = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+		long startTime = System.nanoTime();
+		SnitchSqliteDb db = new SnitchSqliteDb("bench", dbFile);
+		long openMs = (System.nanoTime() - startTime) / 1_000_000;
+
+		startTime = System.nanoTime();
+		Collection<Snitch> snitches = null;
+		if (args[1].equals("snapshot")) {
+			snitches = SnitchSnapshot.read(snapshotFile, "bench", db.getChangeCounter());
+			if (snitches == null) {
+				System.out.println("No current snapshot, writing " + snapshotFile + "; run again to measure it");
+				List<Snitch> all = new ArrayList<>(db.selectAllSnitches());
+				long writeStart = System.nanoTime();
+				SnitchSnapshot.write(snapshotFile, all, db.getChangeCounter());
+				System.out.printf("Wrote %d snitches in %dms%n", all.size(), (System.nanoTime() - writeStart) / 1_000_000);
+				db.close();
+				return;
+			}
+		} else {
+			snitches = db.selectAllSnitches();
+		}
+		long loadMs = (System.nanoTime() - startTime) / 1_000_000;
+		db.close();
+
+		System.out.printf("Loaded %d snitches from %s: opening DB %dms, loading %dms, %dms since JVM start%n",
+			snitches.size(), args[1], openMs, loadMs, System.currentTimeMillis() - jvmStartMs);
+	}
+}
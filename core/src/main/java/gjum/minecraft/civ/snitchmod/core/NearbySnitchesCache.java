@@ -0,0 +1,175 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Snitches around the player, sorted by distance, shared by the renderer and key handlers.
+ * <p>
+ * The candidate list is only fetched from the store again when snitches were added/removed,
+ * or when the player moved farther than {@link #MARGIN} from where it was last fetched.
+ * Smaller moves only re-sort the candidates, and only when the player's block position changed,
+ * so standing still costs nothing beyond reading the list.
+ */
+public class NearbySnitchesCache {
+	/**
+	 * Largest distance that can be answered from the cache; larger queries go to the store directly.
+	 */
+	public static final int MAX_DISTANCE = 260;
+	/**
+	 * How far the player can move before the candidates need to be fetched again.
+	 */
+	private static final int MARGIN = 16;
+
+	private @Nullable SnitchesStore store;
+	private int storeVersion;
+	private @Nullable String world;
+	private double anchorX, anchorY, anchorZ;
+	private int blockX, blockY, blockZ;
+
+	/**
+	 * Slots in the store's {@link SnitchColumns}, nearest first.
+	 */
+	private int[] slots = new int[0];
+	private double[] distSqs = new double[0];
+	private int size = 0;
+
+	public void invalidate() {
+		store = null;
+		world = null;
+		size = 0;
+		slots = new int[0];
+		distSqs = new double[0];
+	}
+
+	/**
+	 * Snitches closer than `distance` to the player, nearest first,
+	 * at most `limit` of those that match `filter`.
+	 */
+	public @NotNull List<Snitch> getNearby(
+		@NotNull SnitchesStore store,
+		@NotNull String world,
+		double x, double y, double z,
+		int distance,
+		int limit,
+		@NotNull SnitchColumns.Filter filter
+	) {
+		return getNearby(store, world, x, y, z, distance, limit, filter, null);
+	}
+
+	/**
+	 * Like {@link #getNearby}, but only snitches with `tag`, if not null; checked against the columns' tag index.
+	 */
+	public @NotNull List<Snitch> getNearby(
+		@NotNull SnitchesStore store,
+		@NotNull String world,
+		double x, double y, double z,
+		int distance,
+		int limit,
+		@NotNull SnitchColumns.Filter filter,
+		@Nullable String tag
+	) {
+		if (distance > MAX_DISTANCE) {
+			List<Snitch> result = store.getNearbySnitches(world, x, y, z, distance, tag == null ? limit : Integer.MAX_VALUE, filter);
+			if (tag == null) return result;
+			result.removeIf(snitch -> !snitch.getTags().contains(tag));
+			return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+		}
+		if (limit <= 0) return Collections.emptyList();
+
+		final Lock readLock = store.readLock();
+		readLock.lock();
+		try {
+			update(store, world, x, y, z);
+
+			final SnitchColumns columns = store.getColumns();
+			final BitSet tagged = tag == null ? null : columns.getSlotsWithTag(tag);
+			if (tag != null && tagged == null) return Collections.emptyList();
+			final long now = System.currentTimeMillis();
+			final double maxDistSq = (double) distance * distance;
+			List<Snitch> result = new ArrayList<>(Math.min(limit, size));
+			for (int i = 0; i < size && result.size() < limit; i++) {
+				if (distSqs[i] >= maxDistSq) break; // sorted, so all following are farther away
+				int slot = slots[i];
+				if (!filter.test(columns, slot, now)) continue;
+				if (tagged != null && !tagged.get(slot)) continue;
+				result.add(columns.getSnitch(slot));
+			}
+			return result;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Must hold the store's read lock.
+	 */
+	private void update(@NotNull SnitchesStore store, @NotNull String world, double x, double y, double z) {
+		final double ax = x - anchorX;
+		final double ay = y - anchorY;
+		final double az = z - anchorZ;
+		if (
+			store != this.store
+			|| store.getVersion() != storeVersion
+			|| !world.equals(this.world)
+			|| ax * ax + ay * ay + az * az > MARGIN * MARGIN
+		) {
+			refetch(store, world, x, y, z);
+			return;
+		}
+
+		int bx = (int) Math.floor(x);
+		int by = (int) Math.floor(y);
+		int bz = (int) Math.floor(z);
+		if (bx == blockX && by == blockY && bz == blockZ) return;
+		blockX = bx;
+		blockY = by;
+		blockZ = bz;
+
+		final SnitchColumns columns = store.getColumns();
+		for (int i = 0; i < size; i++) {
+			distSqs[i] = columns.distSq(slots[i], x, y, z);
+		}
+		// insertion sort: the order barely changes when moving by a block, so this is close to linear
+		for (int i = 1; i < size; i++) {
+			double d = distSqs[i];
+			int slot = slots[i];
+			int j = i - 1;
+			while (j >= 0 && distSqs[j] > d) {
+				distSqs[j + 1] = distSqs[j];
+				slots[j + 1] = slots[j];
+				j--;
+			}
+			distSqs[j + 1] = d;
+			slots[j + 1] = slot;
+		}
+	}
+
+	private void refetch(@NotNull SnitchesStore store, @NotNull String world, double x, double y, double z) {
+		this.store = store;
+		this.storeVersion = store.getVersion();
+		this.world = world;
+		anchorX = x;
+		anchorY = y;
+		anchorZ = z;
+		blockX = (int) Math.floor(x);
+		blockY = (int) Math.floor(y);
+		blockZ = (int) Math.floor(z);
+
+		final SnitchColumns columns = store.getColumns();
+		slots = store.findNearbySlots(
+			world, x, y, z, MAX_DISTANCE + MARGIN, Integer.MAX_VALUE, SnitchColumns.Filter.ALL);
+		size = slots.length;
+		if (distSqs.length < size) distSqs = new double[size];
+		for (int i = 0; i < size; i++) {
+			distSqs[i] = columns.distSq(slots[i], x, y, z);
+		}
+	}
+}
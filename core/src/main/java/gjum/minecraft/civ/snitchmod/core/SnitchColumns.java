@@ -0,0 +1,281 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Struct-of-arrays copy of the fields that are read every frame, indexed by slot.
+ * <p>
+ * Range checks and liveliness filters run over these primitive arrays,
+ * and only the final visible snitches are looked up as {@link Snitch} objects.
+ * Slots stay the same for as long as a snitch is in the store; freed slots are reused.
+ * Callers must call {@link #refresh} after updating a snitch so the columns stay in sync.
+ */
+public class SnitchColumns {
+	public static final byte TYPE_UNKNOWN = 0;
+	public static final byte TYPE_JUKEBOX = 1;
+	public static final byte TYPE_NOTEBLOCK = 2;
+
+	private static final int FREE = -1;
+
+	private final HashMap<String, Integer> worldIds = new HashMap<>();
+
+	private int capacity = 0;
+	private int highWater = 0;
+	private int[] freeSlots = new int[16];
+	private int freeCount = 0;
+
+	private Snitch[] snitches = new Snitch[0];
+	private int[] worldId = new int[0];
+	private int[] x = new int[0];
+	private int[] y = new int[0];
+	private int[] z = new int[0];
+	private byte[] type = new byte[0];
+	private long[] dormantTs = new long[0];
+	private long[] cullTs = new long[0];
+	private long[] lastSeenTs = new long[0];
+	private long[] brokenTs = new long[0];
+	private long[] goneTs = new long[0];
+	private static final String[] NO_TAGS = new String[0];
+	/**
+	 * The tags each slot is indexed under in {@link #slotsByTag}, to tell what changed on refresh.
+	 */
+	private String[][] tagsAt = new String[0][];
+	/**
+	 * Inverted index: the slots of all snitches with a tag. Tags are rare, so most slots are in no set.
+	 */
+	private final HashMap<String, BitSet> slotsByTag = new HashMap<>();
+
+	/**
+	 * Filters that only read the columns, so they don't have to touch the {@link Snitch} objects.
+	 */
+	public enum Filter {
+		ALL,
+		NOT_BROKEN,
+		ALIVE;
+
+		public boolean test(@NotNull SnitchColumns columns, int slot, long now) {
+			return switch (this) {
+				case ALL -> true;
+				case NOT_BROKEN -> !columns.wasBroken(slot);
+				case ALIVE -> columns.isAlive(slot, now);
+			};
+		}
+	}
+
+	public int getWorldId(@NotNull String world) {
+		return worldIds.computeIfAbsent(world, w -> worldIds.size());
+	}
+
+	/**
+	 * @return -1 if no snitch was ever added in that world
+	 */
+	public int findWorldId(@NotNull String world) {
+		Integer id = worldIds.get(world);
+		return id == null ? FREE : id;
+	}
+
+	public int add(@NotNull Snitch snitch) {
+		int slot;
+		if (freeCount > 0) {
+			slot = freeSlots[--freeCount];
+		} else {
+			if (highWater == capacity) grow();
+			slot = highWater++;
+		}
+		snitches[slot] = snitch;
+		worldId[slot] = getWorldId(snitch.pos.getWorld());
+		x[slot] = snitch.pos.getX();
+		y[slot] = snitch.pos.getY();
+		z[slot] = snitch.pos.getZ();
+		refresh(slot);
+		return slot;
+	}
+
+	/**
+	 * Points an occupied slot at a new snitch for the same position.
+	 */
+	public void replace(int slot, @NotNull Snitch snitch) {
+		snitches[slot] = snitch;
+		refresh(slot);
+	}
+
+	public void remove(int slot) {
+		unindexTags(slot);
+		snitches[slot] = null;
+		worldId[slot] = FREE;
+		if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+		freeSlots[freeCount++] = slot;
+	}
+
+	public void clear() {
+		Arrays.fill(snitches, 0, highWater, null);
+		Arrays.fill(worldId, 0, highWater, FREE);
+		Arrays.fill(tagsAt, 0, highWater, NO_TAGS);
+		slotsByTag.clear();
+		highWater = 0;
+		freeCount = 0;
+	}
+
+	/**
+	 * Copies the snitch's current timestamps, type, and tags into the columns.
+	 */
+	public void refresh(int slot) {
+		Snitch snitch = snitches[slot];
+		Snitch.Type snitchType = snitch.getType();
+		type[slot] = snitchType == null ? TYPE_UNKNOWN
+			: snitchType == Snitch.Type.JUKEBOX ? TYPE_JUKEBOX : TYPE_NOTEBLOCK;
+		dormantTs[slot] = snitch.getDormantTs();
+		cullTs[slot] = snitch.getCullTs();
+		lastSeenTs[slot] = snitch.getLastSeenTs();
+		brokenTs[slot] = snitch.getBrokenTs();
+		goneTs[slot] = snitch.getGoneTs();
+		refreshTags(slot, snitch.getTags());
+	}
+
+	private void refreshTags(int slot, @NotNull Set<String> tags) {
+		String[] indexed = tagsAt[slot];
+		if (indexed.length == tags.size()) {
+			boolean same = true;
+			for (String tag : indexed) {
+				if (!tags.contains(tag)) {
+					same = false;
+					break;
+				}
+			}
+			if (same) return;
+		}
+		unindexTags(slot);
+		if (tags.isEmpty()) return;
+		for (String tag : tags) {
+			slotsByTag.computeIfAbsent(tag, t -> new BitSet()).set(slot);
+		}
+		tagsAt[slot] = tags.toArray(NO_TAGS);
+	}
+
+	private void unindexTags(int slot) {
+		for (String tag : tagsAt[slot]) {
+			BitSet slots = slotsByTag.get(tag);
+			if (slots == null) continue;
+			slots.clear(slot);
+			if (slots.isEmpty()) slotsByTag.remove(tag);
+		}
+		tagsAt[slot] = NO_TAGS;
+	}
+
+	private void grow() {
+		int newCapacity = Math.max(1024, capacity * 2);
+		snitches = Arrays.copyOf(snitches, newCapacity);
+		worldId = Arrays.copyOf(worldId, newCapacity);
+		Arrays.fill(worldId, capacity, newCapacity, FREE);
+		x = Arrays.copyOf(x, newCapacity);
+		y = Arrays.copyOf(y, newCapacity);
+		z = Arrays.copyOf(z, newCapacity);
+		type = Arrays.copyOf(type, newCapacity);
+		dormantTs = Arrays.copyOf(dormantTs, newCapacity);
+		cullTs = Arrays.copyOf(cullTs, newCapacity);
+		lastSeenTs = Arrays.copyOf(lastSeenTs, newCapacity);
+		brokenTs = Arrays.copyOf(brokenTs, newCapacity);
+		goneTs = Arrays.copyOf(goneTs, newCapacity);
+		tagsAt = Arrays.copyOf(tagsAt, newCapacity);
+		Arrays.fill(tagsAt, capacity, newCapacity, NO_TAGS);
+		capacity = newCapacity;
+	}
+
+	/**
+	 * One past the highest slot that was ever used; iterate `0 until` this and skip {@link #isFree} slots.
+	 */
+	public int getHighWater() {
+		return highWater;
+	}
+
+	public boolean isFree(int slot) {
+		return worldId[slot] == FREE;
+	}
+
+	public @Nullable Snitch getSnitch(int slot) {
+		return snitches[slot];
+	}
+
+	/**
+	 * Slots of the snitches with `tag`, in any world; null if none. Read-only, and only valid until the next change.
+	 */
+	public @Nullable BitSet getSlotsWithTag(@NotNull String tag) {
+		return slotsByTag.get(tag);
+	}
+
+	/**
+	 * Tags of at least one snitch.
+	 */
+	public Set<String> getTagNames() {
+		return Collections.unmodifiableSet(slotsByTag.keySet());
+	}
+
+	public int getWorldIdAt(int slot) {
+		return worldId[slot];
+	}
+
+	public int getX(int slot) {
+		return x[slot];
+	}
+
+	public int getY(int slot) {
+		return y[slot];
+	}
+
+	public int getZ(int slot) {
+		return z[slot];
+	}
+
+	public byte getType(int slot) {
+		return type[slot];
+	}
+
+	public long getLastSeenTs(int slot) {
+		return lastSeenTs[slot];
+	}
+
+	public boolean wasBroken(int slot) {
+		return brokenTs[slot] != 0;
+	}
+
+	public boolean isGone(int slot) {
+		return goneTs[slot] != 0;
+	}
+
+	/**
+	 * Same as {@link Snitch#isAlive}, from the columns.
+	 */
+	public boolean isAlive(int slot, long now) {
+		if (brokenTs[slot] != 0 || goneTs[slot] != 0) return false;
+		long dormant = dormantTs[slot];
+		long cull = cullTs[slot];
+		return (dormant == 0 || now < dormant) && (cull == 0 || now < cull);
+	}
+
+	/**
+	 * Squared distance from the snitch's block center to the given point.
+	 */
+	public double distSq(int slot, double px, double py, double pz) {
+		double dx = x[slot] + .5 - px;
+		double dy = y[slot] + .5 - py;
+		double dz = z[slot] + .5 - pz;
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	/**
+	 * Whether the point is inside the snitch's 23x23x23 detection range.
+	 */
+	public boolean isInRange(int slot, double px, double py, double pz) {
+		return px >= x[slot] - Snitch.RANGE && px < x[slot] + 1 + Snitch.RANGE
+			&& py >= y[slot] - Snitch.RANGE && py < y[slot] + 1 + Snitch.RANGE
+			&& pz >= z[slot] - Snitch.RANGE && pz < z[slot] + 1 + Snitch.RANGE;
+	}
+}
@@ -0,0 +1,250 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import gjum.minecraft.civ.snitchmod.core.model.SnitchAlert;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Owns the one thread that talks to a store's DB: opening and loading it,
+ * periodically flushing the {@link SnitchWriteQueue} and the alert journal, and a final flush on {@link #close}.
+ * The thread is a daemon and ends when the writer is closed.
+ */
+public class SnitchDbWriter {
+	public final @NotNull String server;
+
+	private final SnitchWriteQueue writeQueue;
+	private final ScheduledExecutorService executor;
+	/**
+	 * Null until opened, or if opening failed. Only used on the executor thread after that.
+	 */
+	private volatile @Nullable SnitchStorage db;
+
+	/**
+	 * Alerts not yet appended to the journal, oldest first. Guarded by itself.
+	 */
+	private final ArrayDeque<SnitchAlert> pendingAlerts = new ArrayDeque<>();
+	/**
+	 * Beyond this many pending alerts (e.g. the DB is stuck), the oldest are dropped instead of growing without bound.
+	 */
+	private static final int MAX_PENDING_ALERTS = 100_000;
+	private static final int ALERT_BATCH_SIZE = 10_000;
+
+	private long flushedCount = 0;
+	private long failedCount = 0;
+	/**
+	 * Drained from the queue but not yet written or failed, e.g. when {@link #close} times out.
+	 */
+	private long inFlightCount = 0;
+	private long alertsWrittenCount = 0;
+	private long alertsLostCount = 0;
+
+	/**
+	 * Creates a writer and starts its periodic flushes.
+	 */
+	public static @NotNull SnitchDbWriter start(@NotNull String server, @NotNull SnitchWriteQueue writeQueue) {
+		SnitchDbWriter writer = new SnitchDbWriter(server, writeQueue);
+		long intervalMs = SnitchModConfig.getInstance().dbFlushIntervalMs;
+		writer.executor.scheduleWithFixedDelay(writer::flushCatching, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+		return writer;
+	}
+
+	private SnitchDbWriter(@NotNull String server, @NotNull SnitchWriteQueue writeQueue) {
+		this.server = server;
+		this.writeQueue = writeQueue;
+		executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "SnitchMod DB " + server);
+			thread.setDaemon(true);
+			return thread;
+		}) {
+			/**
+			 * Runs once the last task has ended, even one interrupted by {@link #close} timing out,
+			 * so the DB is never closed while a task is still using it.
+			 */
+			@Override
+			protected void terminated() {
+				SnitchStorage db = SnitchDbWriter.this.db;
+				if (db != null) db.close();
+			}
+		};
+	}
+
+	/**
+	 * Runs `task` on the DB thread, after everything submitted before it.
+	 * Does nothing once the writer is closed.
+	 */
+	public void execute(@NotNull Runnable task) {
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException ignored) {
+			// closed
+		}
+	}
+
+	/**
+	 * Flushes start going to `db` once this is set; until then, updates stay queued.
+	 */
+	public void setDb(@Nullable SnitchStorage db) {
+		this.db = db;
+		if (db != null) execute(this::dropExpiredAlerts);
+	}
+
+	public @Nullable SnitchStorage getDb() {
+		return db;
+	}
+
+	/**
+	 * Queues `alert` for the journal. Never blocks on the DB; safe to call from the client thread.
+	 */
+	public void appendAlert(@NotNull SnitchAlert alert) {
+		synchronized (pendingAlerts) {
+			if (pendingAlerts.size() >= MAX_PENDING_ALERTS) {
+				pendingAlerts.removeFirst();
+				synchronized (this) {
+					alertsLostCount++;
+				}
+			}
+			pendingAlerts.addLast(alert);
+		}
+	}
+
+	private void dropExpiredAlerts() {
+		SnitchStorage db = this.db;
+		int months = SnitchModConfig.getInstance().alertRetentionMonths;
+		if (db == null || months <= 0) return;
+		long keepFromTs = YearMonth.now(ZoneOffset.UTC).minusMonths(months)
+			.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+		int dropped = db.dropAlertPartitionsBefore(keepFromTs);
+		if (dropped > 0) {
+			System.out.println("[SnitchMod] Dropped " + dropped + " months of alerts older than " + months + " months for " + server);
+		}
+	}
+
+	private void flushCatching() {
+		try {
+			flush();
+		} catch (Throwable e) {
+			// an exception would cancel all future flushes
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes everything queued so far, in batches. Must run on the DB thread.
+	 *
+	 * @return false if there is no DB or some snitches failed to write or delete
+	 */
+	boolean flush() {
+		SnitchStorage db = this.db;
+		if (db == null) return false;
+		boolean allOk = true;
+		final SnitchModConfig config = SnitchModConfig.getInstance();
+		// before the updates, see SnitchWriteQueue
+		List<SnitchStorage.Tombstone> deletions = writeQueue.drainDeletions();
+		if (!deletions.isEmpty()) {
+			boolean ok = db.deleteSnitches(deletions);
+			writeQueue.finishDeletions(ok);
+			allOk &= ok;
+			synchronized (this) {
+				if (ok) flushedCount += deletions.size();
+				else failedCount += deletions.size();
+			}
+		}
+		while (true) {
+			// close timed out; what is still queued is reported as lost
+			if (Thread.currentThread().isInterrupted()) return false;
+			int depth = writeQueue.getDepth();
+			int batchSize = depth >= config.dbBulkThreshold ? depth : config.dbFlushBatchSize;
+			List<Snitch> snitches = writeQueue.drain(batchSize);
+			if (snitches.isEmpty()) break;
+			synchronized (this) {
+				inFlightCount = snitches.size();
+			}
+			boolean ok = db.writeSnitches(snitches);
+			// failed snitches go back into the queue, with the fields they changed
+			writeQueue.finishWrite(ok);
+			allOk &= ok;
+			synchronized (this) {
+				inFlightCount = 0;
+				if (ok) flushedCount += snitches.size();
+				else failedCount += snitches.size();
+			}
+			// retried with the next periodic flush, not in a tight loop here
+			if (!ok) break;
+		}
+		while (true) {
+			List<SnitchAlert> alerts;
+			synchronized (pendingAlerts) {
+				if (pendingAlerts.isEmpty()) break;
+				alerts = new ArrayList<>(Math.min(pendingAlerts.size(), ALERT_BATCH_SIZE));
+				while (!pendingAlerts.isEmpty() && alerts.size() < ALERT_BATCH_SIZE) {
+					alerts.add(pendingAlerts.removeFirst());
+				}
+			}
+			boolean ok = db.insertAlerts(alerts);
+			synchronized (this) {
+				if (ok) alertsWrittenCount += alerts.size();
+				else alertsLostCount += alerts.size();
+			}
+		}
+		return allOk;
+	}
+
+	/**
+	 * Stops the periodic flushes, writes everything still queued, and closes the DB.
+	 * Waits at most `timeoutMs` for that; then interrupts the DB thread, which stops between batches,
+	 * and whatever is not written by then is reported as lost. The DB is closed once the thread is done.
+	 * Tasks submitted before this (e.g. a running load) finish first.
+	 */
+	public void close(long timeoutMs) {
+		long startNanos = System.nanoTime();
+		long flushedBefore;
+		synchronized (this) {
+			flushedBefore = flushedCount;
+		}
+		execute(this::flushCatching);
+		// cancels the periodic flush; the final flush above still runs
+		executor.shutdown();
+		boolean finished;
+		try {
+			finished = executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			finished = false;
+		}
+		if (!finished) executor.shutdownNow();
+		long tookMs = (System.nanoTime() - startNanos) / 1_000_000;
+		long flushed;
+		long lost;
+		long inFlight;
+		long failed;
+		long alertsWritten;
+		long alertsLost;
+		int alertsPending;
+		synchronized (pendingAlerts) {
+			alertsPending = pendingAlerts.size();
+		}
+		// the DB thread may still be writing if we timed out, so only read what it has published
+		synchronized (this) {
+			flushed = flushedCount - flushedBefore;
+			// failed writes are back in the queue, so this also counts those that failed during close
+			lost = writeQueue.getDepth() + writeQueue.getDeletionDepth();
+			inFlight = inFlightCount;
+			failed = failedCount;
+			alertsWritten = alertsWrittenCount;
+			alertsLost = alertsLostCount + alertsPending;
+		}
+		if (!finished) {
+			System.err.println("[SnitchMod] DB writer for " + server + " did not finish within " + timeoutMs + "ms");
+		}
+		System.out.printf("[SnitchMod] Closed DB writer for %s in %dms: flushed %d on close, %d lost, %d still being written, %d failed writes retried; %s; %d alerts journaled, %d lost%n",
+			server, tookMs, flushed, lost, inFlight, failed, writeQueue.formatStats(), alertsWritten, alertsLost);
+	}
+}
@@ -0,0 +1,277 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import gjum.minecraft.civ.snitchmod.core.model.WorldPos;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps all snitches in memory like {@link SnitchMemoryStorage}, and appends every change to a file,
+ * which is replayed on open. Each batch of changes is one append and one fsync, never rewriting earlier data.
+ * <p>
+ * Once the file holds more than {@link #COMPACT_RATIO} records per live snitch, it is rewritten with one record each.
+ * <p>
+ * Layout: header (magic, version), then records of length, CRC32 of the payload, payload.
+ * A payload is {@link #OP_PUT} and the snitch's values in {@link SnitchTransfer#COLUMNS} order,
+ * or {@link #OP_DELETE} and the position. A record torn by a crash fails its checksum and is cut off on open.
+ */
+public class SnitchJournalStorage extends SnitchMemoryStorage {
+	private static final int MAGIC = 0x534d4a4c; // "SMJL"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final byte OP_PUT = 1;
+	private static final byte OP_DELETE = 2;
+	private static final byte VALUE_NULL = 0;
+	private static final byte VALUE_LONG = 1;
+	private static final byte VALUE_STRING = 2;
+	/**
+	 * Not compacted below this many records, so a small journal is never rewritten over and over.
+	 */
+	private static final long COMPACT_MIN_RECORDS = 10_000;
+	private static final long COMPACT_RATIO = 4;
+
+	private final @NotNull File file;
+	private @Nullable FileChannel channel;
+	private long recordCount = 0;
+
+	public SnitchJournalStorage(@NotNull String server, @NotNull File file) throws IOException {
+		super(server);
+		this.file = file;
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null) dir.mkdirs();
+		if (!file.exists()) {
+			writeJournal(file);
+		} else {
+			replay();
+		}
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	private void replay() throws IOException {
+		long startMs = System.currentTimeMillis();
+		long validLength = HEADER_SIZE;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			if (in.readInt() != MAGIC) throw new IOException("Not a SnitchMod journal: " + file);
+			int version = in.readInt();
+			if (version != VERSION) throw new IOException("Unsupported journal version " + version + ": " + file);
+			CRC32 crc = new CRC32();
+			while (true) {
+				byte[] payload;
+				try {
+					int length = in.readInt();
+					int checksum = in.readInt();
+					if (length <= 0 || length > 1 << 24) break;
+					payload = in.readNBytes(length);
+					if (payload.length != length) break;
+					crc.reset();
+					crc.update(payload);
+					if ((int) crc.getValue() != checksum) break;
+				} catch (EOFException e) {
+					break;
+				}
+				apply(payload);
+				recordCount++;
+				validLength += 8 + payload.length;
+			}
+		}
+		if (validLength < file.length()) {
+			System.err.println("Cutting off " + (file.length() - validLength) + " bytes of torn records at the end of " + file);
+			try (FileChannel truncate = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				truncate.truncate(validLength);
+			}
+		}
+		System.out.println("[SnitchMod] Replayed " + recordCount + " journal records into " + snitches.size()
+			+ " snitches in " + (System.currentTimeMillis() - startMs) + "ms");
+	}
+
+	private void apply(byte[] payload) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		byte op = in.readByte();
+		if (op == OP_PUT) {
+			Object[] values = new Object[SnitchTransfer.COLUMNS.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = switch (in.readByte()) {
+					case VALUE_NULL -> null;
+					case VALUE_LONG -> in.readLong();
+					case VALUE_STRING -> new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+					default -> throw new IOException("Bad value type in " + file);
+				};
+			}
+			snitches.put(new WorldPos(server, (String) values[0],
+				((Number) values[1]).intValue(), ((Number) values[2]).intValue(), ((Number) values[3]).intValue()), values);
+		} else if (op == OP_DELETE) {
+			snitches.remove(new WorldPos(server, in.readUTF(), in.readInt(), in.readInt(), in.readInt()));
+		} else {
+			throw new IOException("Bad record type " + op + " in " + file);
+		}
+	}
+
+	@Override
+	synchronized
+	public boolean writeSnitches(List<Snitch> snitches) {
+		if (snitches.isEmpty()) return true;
+		try {
+			ByteArrayOutputStream batch = new ByteArrayOutputStream(snitches.size() * 256);
+			for (Snitch snitch : snitches) appendPut(batch, SnitchTransfer.valuesOf(snitch));
+			append(batch, snitches.size());
+		} catch (IOException e) {
+			System.err.println("Failed journaling " + snitches.size() + " snitches");
+			e.printStackTrace();
+			return false;
+		}
+		super.writeSnitches(snitches);
+		compactIfBloated();
+		return true;
+	}
+
+	@Override
+	synchronized
+	public boolean deleteSnitches(List<Tombstone> deletions) {
+		if (deletions.isEmpty()) return true;
+		try {
+			ByteArrayOutputStream batch = new ByteArrayOutputStream(deletions.size() * 32);
+			for (Tombstone deletion : deletions) {
+				ByteArrayOutputStream payload = new ByteArrayOutputStream(32);
+				DataOutputStream out = new DataOutputStream(payload);
+				out.writeByte(OP_DELETE);
+				out.writeUTF(deletion.world());
+				out.writeInt(deletion.x());
+				out.writeInt(deletion.y());
+				out.writeInt(deletion.z());
+				appendRecord(batch, payload.toByteArray());
+			}
+			append(batch, deletions.size());
+		} catch (IOException e) {
+			System.err.println("Failed journaling " + deletions.size() + " deletions");
+			e.printStackTrace();
+			return false;
+		}
+		super.deleteSnitches(deletions);
+		compactIfBloated();
+		return true;
+	}
+
+	private static void appendPut(@NotNull OutputStream batch, @NotNull Object[] values) throws IOException {
+		ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(payload);
+		out.writeByte(OP_PUT);
+		for (Object value : values) {
+			if (value == null) {
+				out.writeByte(VALUE_NULL);
+			} else if (value instanceof Number number) {
+				out.writeByte(VALUE_LONG);
+				out.writeLong(number.longValue());
+			} else {
+				byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+				out.writeByte(VALUE_STRING);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+		}
+		appendRecord(batch, payload.toByteArray());
+	}
+
+	private static void appendRecord(@NotNull OutputStream batch, byte[] payload) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		DataOutputStream out = new DataOutputStream(batch);
+		out.writeInt(payload.length);
+		out.writeInt((int) crc.getValue());
+		out.write(payload);
+	}
+
+	/**
+	 * Durable once this returns, like a committed transaction.
+	 */
+	private void append(@NotNull ByteArrayOutputStream batch, int records) throws IOException {
+		if (channel == null) throw new IOException("Journal is closed: " + file);
+		long size = channel.size();
+		try {
+			ByteBuffer buf = ByteBuffer.wrap(batch.toByteArray());
+			while (buf.hasRemaining()) channel.write(buf);
+			channel.force(false);
+		} catch (IOException e) {
+			// a torn record would hide all records appended after it on replay
+			try {
+				channel.truncate(size);
+			} catch (IOException ignored) {
+			}
+			throw e;
+		}
+		recordCount += records;
+	}
+
+	private void compactIfBloated() {
+		if (recordCount < COMPACT_MIN_RECORDS || recordCount <= COMPACT_RATIO * snitches.size()) return;
+		long startMs = System.currentTimeMillis();
+		long before = recordCount;
+		try {
+			compact();
+		} catch (IOException e) {
+			// the old journal is still complete; try again after the next batch
+			System.err.println("Failed compacting " + file);
+			e.printStackTrace();
+			return;
+		}
+		System.out.println("[SnitchMod] Compacted " + before + " journal records into " + recordCount
+			+ " in " + (System.currentTimeMillis() - startMs) + "ms");
+	}
+
+	/**
+	 * Writes a new journal with one record per snitch next to the old one, then swaps them.
+	 * If the swap fails, appends continue on the old journal.
+	 */
+	synchronized
+	public void compact() throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		writeJournal(tmp);
+		// some platforms can't replace a file that is still open
+		if (channel != null) channel.close();
+		channel = null;
+		boolean moved = false;
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			moved = true;
+		} finally {
+			if (!moved) tmp.delete();
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		}
+		recordCount = snitches.size();
+	}
+
+	private void writeJournal(@NotNull File target) throws IOException {
+		try (FileOutputStream fileOut = new FileOutputStream(target)) {
+			BufferedOutputStream buffered = new BufferedOutputStream(fileOut, 1 << 16);
+			DataOutputStream out = new DataOutputStream(buffered);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			for (Object[] values : snitches.values()) appendPut(out, values);
+			out.flush();
+			fileOut.getChannel().force(true);
+		}
+	}
+
+	@Override
+	synchronized
+	public void close() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			channel = null;
+		}
+		super.close();
+	}
+}
@@ -0,0 +1,95 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import gjum.minecraft.civ.snitchmod.core.model.WorldPos;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Keeps snitches in a map and nothing on disk; a baseline for comparing the other backends.
+ * <p>
+ * Stores each snitch's values rather than the snitch, so callers never share an object with it.
+ */
+public class SnitchMemoryStorage implements SnitchStorage {
+	public final @NotNull String server;
+	protected final HashMap<WorldPos, Object[]> snitches = new HashMap<>();
+
+	public SnitchMemoryStorage(@NotNull String server) {
+		this.server = server;
+	}
+
+	synchronized
+	public int size() {
+		return snitches.size();
+	}
+
+	@Override
+	synchronized
+	public boolean selectSnitchesNearestFirst(@Nullable String world, int x, int z, int chunkSize, Predicate<List<Snitch>> consumer) {
+		List<Object[]> all = new ArrayList<>(snitches.values());
+		if (world != null) {
+			all.sort(Comparator
+				.comparing((Object[] values) -> !world.equals(values[0]))
+				.thenComparingLong(values -> {
+					long dx = ((Number) values[1]).longValue() - x;
+					long dz = ((Number) values[3]).longValue() - z;
+					return dx * dx + dz * dz;
+				}));
+		}
+		for (int from = 0; from < all.size(); from += chunkSize) {
+			List<Object[]> part = all.subList(from, Math.min(all.size(), from + chunkSize));
+			List<Snitch> chunk = new ArrayList<>(part.size());
+			for (Object[] values : part) chunk.add(SnitchTransfer.snitchOf(server, values));
+			if (!consumer.test(chunk)) break;
+		}
+		return true;
+	}
+
+	@Override
+	synchronized
+	public List<Snitch> selectSnitchesInRegion(String world, int minX, int minZ, int maxX, int maxZ) {
+		List<Snitch> result = new ArrayList<>();
+		for (Object[] values : snitches.values()) {
+			int x = ((Number) values[1]).intValue();
+			int z = ((Number) values[3]).intValue();
+			if (world.equals(values[0]) && minX <= x && x <= maxX && minZ <= z && z <= maxZ) {
+				result.add(SnitchTransfer.snitchOf(server, values));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	synchronized
+	public @Nullable Snitch selectSnitch(WorldPos pos) {
+		Object[] values = snitches.get(pos);
+		return values == null ? null : SnitchTransfer.snitchOf(server, values);
+	}
+
+	@Override
+	synchronized
+	public boolean writeSnitches(List<Snitch> snitches) {
+		for (Snitch snitch : snitches) this.snitches.put(snitch.pos, SnitchTransfer.valuesOf(snitch));
+		return true;
+	}
+
+	@Override
+	synchronized
+	public boolean deleteSnitches(List<Tombstone> deletions) {
+		for (Tombstone deletion : deletions) snitches.remove(posOf(deletion));
+		return true;
+	}
+
+	protected @NotNull WorldPos posOf(@NotNull Tombstone deletion) {
+		return new WorldPos(server, deletion.world(), deletion.x(), deletion.y(), deletion.z());
+	}
+
+	@Override
+	synchronized
+	public void close() {
+		snitches.clear();
+	}
+}
@@ -0,0 +1,157 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Properties;
+
+/**
+ * Settings read from `SnitchMod/config.properties`. Missing or malformed entries use the defaults.
+ */
+public class SnitchModConfig {
+	public static final String CONFIG_PATH = "SnitchMod/config.properties";
+
+	/**
+	 * How long the DB writer waits between flushes of updated snitches.
+	 */
+	public long dbFlushIntervalMs = 1000;
+	/**
+	 * Most snitches written in one transaction, unless a backlog of {@link #dbBulkThreshold} has built up.
+	 */
+	public int dbFlushBatchSize = 1000;
+	/**
+	 * `tuned` or `default` SQLite settings, see {@link SnitchSqliteDb.Profile}.
+	 */
+	public SnitchSqliteDb.Profile dbProfile = SnitchSqliteDb.Profile.TUNED;
+	/**
+	 * `sqlite`, `journal`, or `memory`, see {@link SnitchStorage.Backend}.
+	 */
+	public SnitchStorage.Backend storeBackend = SnitchStorage.Backend.SQLITE;
+	/**
+	 * A backlog of at least this many snitches, e.g. from a long `/jalist` scan, is written in a single transaction.
+	 */
+	public int dbBulkThreshold = 5000;
+	/**
+	 * How long leaving a server may wait for pending writes; anything not written by then is lost.
+	 */
+	public long dbCloseTimeoutMs = 5000;
+	/**
+	 * Alerts are journaled per month; months that ended more than this many months ago are dropped. 0 keeps all.
+	 */
+	public int alertRetentionMonths = 0;
+	/**
+	 * Keep only the 512x512 block regions around the player in memory, loading others from the DB when needed.
+	 * For databases too large to hold entirely.
+	 */
+	public boolean storePaged = false;
+	/**
+	 * In paged mode, evict least recently used regions once more than this many snitches are in memory.
+	 * Roughly 450 bytes of heap each, including the store's index, see the `memoryFootprint` task with `-PmaxResident`.
+	 */
+	public int storeMaxResidentSnitches = 200_000;
+	/**
+	 * On leaving a server, save all snitches to `snitches.snapshot` next to the DB, and start from that next time
+	 * if the DB has not changed since, which is much faster than loading from SQL. Not used in paged mode.
+	 */
+	public boolean storeSnapshot = true;
+	/**
+	 * A directory shared with other players, e.g. through a file sync service: changes are exported there
+	 * when leaving a server and the others' changes imported when joining, see {@link SnitchSync}. Empty disables it.
+	 */
+	public @NotNull String syncDir = "";
+	/**
+	 * Record received chat and container packets to `SnitchMod/SERVER/recordings/`, for replaying them offline.
+	 */
+	public boolean recordPackets = false;
+
+	private static SnitchModConfig instance;
+
+	public static @NotNull SnitchModConfig getInstance() {
+		if (instance == null) {
+			instance = load(new File(CONFIG_PATH));
+		}
+		return instance;
+	}
+
+	public static @NotNull SnitchModConfig load(@NotNull File file) {
+		SnitchModConfig config = new SnitchModConfig();
+		if (!file.exists()) return config;
+		Properties props = new Properties();
+		try (Reader reader = new FileReader(file)) {
+			props.load(reader);
+		} catch (IOException e) {
+			System.err.println("Failed reading " + file + ", using defaults");
+			e.printStackTrace();
+			return config;
+		}
+		config.dbFlushIntervalMs = getPositiveLong(props, "db.flushIntervalMs", config.dbFlushIntervalMs);
+		config.dbFlushBatchSize = (int) getPositiveLong(props, "db.flushBatchSize", config.dbFlushBatchSize);
+		String profile = props.getProperty("db.profile");
+		if (profile != null) {
+			try {
+				config.dbProfile = SnitchSqliteDb.Profile.valueOf(profile.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				System.err.println("Ignoring malformed config value db.profile=" + profile);
+			}
+		}
+		String backend = props.getProperty("store.backend");
+		if (backend != null) {
+			try {
+				config.storeBackend = SnitchStorage.Backend.valueOf(backend.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				System.err.println("Ignoring malformed config value store.backend=" + backend);
+			}
+		}
+		config.dbBulkThreshold = (int) getPositiveLong(props, "db.bulkThreshold", config.dbBulkThreshold);
+		config.dbCloseTimeoutMs = getPositiveLong(props, "db.closeTimeoutMs", config.dbCloseTimeoutMs);
+		config.alertRetentionMonths = getNonNegativeInt(props, "alerts.retentionMonths", config.alertRetentionMonths);
+		config.storePaged = getBoolean(props, "store.paged", config.storePaged);
+		config.storeMaxResidentSnitches = (int) getPositiveLong(props, "store.maxResidentSnitches", config.storeMaxResidentSnitches);
+		config.storeSnapshot = getBoolean(props, "store.snapshot", config.storeSnapshot);
+		config.syncDir = props.getProperty("sync.dir", config.syncDir).trim();
+		config.recordPackets = getBoolean(props, "debug.recordPackets", config.recordPackets);
+		return config;
+	}
+
+	private static long getLong(Properties props, String key, long default_) {
+		String value = props.getProperty(key);
+		if (value == null) return default_;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Ignoring malformed config value " + key + "=" + value);
+			return default_;
+		}
+	}
+
+	/**
+	 * For values where 0 or less would break things, e.g. a flush interval the executor rejects,
+	 * or a resident snitch budget that evicts every region as soon as it loads.
+	 * At most {@link Integer#MAX_VALUE}, so counts can be cast to int.
+	 */
+	private static long getPositiveLong(Properties props, String key, long default_) {
+		long value = getLong(props, key, default_);
+		if (value > 0 && value <= Integer.MAX_VALUE) return value;
+		System.err.println("Ignoring malformed config value " + key + "=" + props.getProperty(key));
+		return default_;
+	}
+
+	/**
+	 * For counts where 0 disables a limit, e.g. alert retention.
+	 */
+	private static int getNonNegativeInt(Properties props, String key, int default_) {
+		long value = getLong(props, key, default_);
+		if (value >= 0 && value <= Integer.MAX_VALUE) return (int) value;
+		System.err.println("Ignoring malformed config value " + key + "=" + props.getProperty(key));
+		return default_;
+	}
+
+	private static boolean getBoolean(Properties props, String key, boolean default_) {
+		String value = props.getProperty(key);
+		if (value == null) return default_;
+		return Boolean.parseBoolean(value.trim());
+	}
+}
@@ -0,0 +1,131 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import gjum.minecraft.civ.snitchmod.core.model.WorldPos;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Which regions of a paged {@link SnitchesStore} are resident, least recently used first.
+ * Only bookkeeping; the store does the loading and evicting.
+ */
+public class SnitchRegionPager {
+	public static final int REGION_SHIFT = 9;
+	public static final int REGION_SIZE = 1 << REGION_SHIFT;
+	/**
+	 * Regions within this many blocks of the player are kept resident; covers the render distance plus a margin.
+	 */
+	public static final int KEEP_DISTANCE = 320;
+
+	public record Region(@NotNull String world, int regionX, int regionZ) {
+		public static @NotNull Region of(@NotNull String world, int x, int z) {
+			return new Region(world, x >> REGION_SHIFT, z >> REGION_SHIFT);
+		}
+
+		public static @NotNull Region of(@NotNull WorldPos pos) {
+			return of(pos.getWorld(), pos.getX(), pos.getZ());
+		}
+
+		public int minX() {
+			return regionX << REGION_SHIFT;
+		}
+
+		public int minZ() {
+			return regionZ << REGION_SHIFT;
+		}
+
+		public int maxX() {
+			return minX() + REGION_SIZE - 1;
+		}
+
+		public int maxZ() {
+			return minZ() + REGION_SIZE - 1;
+		}
+
+		public boolean contains(@NotNull WorldPos pos) {
+			return world.equals(pos.getWorld())
+				&& pos.getX() >> REGION_SHIFT == regionX
+				&& pos.getZ() >> REGION_SHIFT == regionZ;
+		}
+	}
+
+	/**
+	 * In access order: iteration starts at the least recently used region.
+	 */
+	private final LinkedHashMap<Region, Boolean> resident = new LinkedHashMap<>(16, .75f, true);
+	private final HashSet<Region> loading = new HashSet<>();
+	private Set<Region> wanted = Collections.emptySet();
+
+	synchronized
+	public boolean isResident(@NotNull WorldPos pos) {
+		return resident.containsKey(Region.of(pos));
+	}
+
+	/**
+	 * Marks the regions around the player as wanted and recently used.
+	 *
+	 * @return regions that need loading; they count as loading until {@link #markResident}
+	 */
+	synchronized
+	public @NotNull List<Region> touch(@NotNull String world, int x, int z) {
+		Set<Region> nowWanted = new HashSet<>();
+		for (int rx = (x - KEEP_DISTANCE) >> REGION_SHIFT; rx <= (x + KEEP_DISTANCE) >> REGION_SHIFT; rx++) {
+			for (int rz = (z - KEEP_DISTANCE) >> REGION_SHIFT; rz <= (z + KEEP_DISTANCE) >> REGION_SHIFT; rz++) {
+				nowWanted.add(new Region(world, rx, rz));
+			}
+		}
+		wanted = nowWanted;
+		List<Region> toLoad = new ArrayList<>();
+		for (Region region : nowWanted) {
+			if (resident.get(region) != null) continue; // get() refreshes the access order
+			if (loading.add(region)) toLoad.add(region);
+		}
+		return toLoad;
+	}
+
+	/**
+	 * For a single position, e.g. an alert far from the player.
+	 *
+	 * @return null if the region is resident or already loading
+	 */
+	synchronized
+	public Region requestLoad(@NotNull WorldPos pos) {
+		Region region = Region.of(pos);
+		if (resident.containsKey(region)) return null;
+		if (!loading.add(region)) return null;
+		return region;
+	}
+
+	synchronized
+	public void markResident(@NotNull Region region) {
+		loading.remove(region);
+		resident.put(region, Boolean.TRUE);
+	}
+
+	/**
+	 * Resident regions that are not around the player, least recently used first.
+	 */
+	synchronized
+	public @NotNull List<Region> getEvictionCandidates() {
+		List<Region> candidates = new ArrayList<>();
+		for (Region region : resident.keySet()) {
+			if (!wanted.contains(region)) candidates.add(region);
+		}
+		return candidates;
+	}
+
+	synchronized
+	public void evict(@NotNull Region region) {
+		resident.remove(region);
+	}
+
+	synchronized
+	public int getResidentCount() {
+		return resident.size();
+	}
+
+	synchronized
+	public int getLoadingCount() {
+		return loading.size();
+	}
+}
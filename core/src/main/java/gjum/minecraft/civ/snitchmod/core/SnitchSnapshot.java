@@ -0,0 +1,211 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * All snitches of a store in a compact binary file next to the DB, read in one sequential pass,
+ * which is much faster than building them from SQL rows.
+ * It is not memory-mapped: on Windows, a mapped file can't be replaced until the mapping is garbage collected,
+ * so writing the next snapshot on leaving the server would fail.
+ * <p>
+ * Only valid while the DB's change counter (see {@link SnitchSqliteDb#getChangeCounter})
+ * is still what it was when the snapshot was written.
+ * <p>
+ * Layout: header (magic, version, change counter, string count, record count),
+ * string dictionary (length-prefixed UTF-8), then one fixed-width record per snitch
+ * referring to strings by dictionary index, -1 for null.
+ */
+public class SnitchSnapshot {
+	private static final int MAGIC = 0x534d5353; // "SMSS"
+	private static final int VERSION = 1;
+	private static final int RECORD_SIZE = 10 * 4 + 1 + 9 * 8;
+	private static final int READ_CHUNK_SIZE = 1 << 16;
+
+	private static final byte TYPE_NONE = 0;
+	private static final byte TYPE_JUKEBOX = 1;
+	private static final byte TYPE_NOTEBLOCK = 2;
+
+	public static @NotNull File getSnapshotFile(@NotNull String server) {
+		return new File(SnitchSqliteDb.getDbFile(server).getParentFile(), "snitches.snapshot");
+	}
+
+	/**
+	 * Writes to a temporary file first, so a crash never leaves a half-written snapshot behind.
+	 */
+	public static void write(@NotNull File file, @NotNull Collection<Snitch> snitches, long changeCounter) throws IOException {
+		HashMap<String, Integer> stringIds = new HashMap<>();
+		List<String> strings = new ArrayList<>();
+		for (Snitch snitch : snitches) {
+			for (String string : stringsOf(snitch)) {
+				if (string != null && !stringIds.containsKey(string)) {
+					stringIds.put(string, strings.size());
+					strings.add(string);
+				}
+			}
+		}
+
+		File tmp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(changeCounter);
+			out.writeInt(strings.size());
+			out.writeInt(snitches.size());
+			for (String string : strings) {
+				byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			for (Snitch snitch : snitches) {
+				String[] s = stringsOf(snitch);
+				out.writeInt(idOf(stringIds, s[0]));
+				out.writeInt(snitch.pos.getX());
+				out.writeInt(snitch.pos.getY());
+				out.writeInt(snitch.pos.getZ());
+				out.writeInt(idOf(stringIds, s[1]));
+				out.writeByte(snitch.getType() == Snitch.Type.JUKEBOX ? TYPE_JUKEBOX
+					: snitch.getType() == Snitch.Type.NOTEBLOCK ? TYPE_NOTEBLOCK : TYPE_NONE);
+				out.writeInt(idOf(stringIds, s[2]));
+				out.writeLong(snitch.getDormantTs());
+				out.writeLong(snitch.getCullTs());
+				out.writeLong(snitch.getFirstSeenTs());
+				out.writeLong(snitch.getLastSeenTs());
+				out.writeLong(snitch.getCreatedTs());
+				out.writeInt(idOf(stringIds, s[3]));
+				out.writeLong(snitch.getRenamedTs());
+				out.writeInt(idOf(stringIds, s[4]));
+				out.writeLong(snitch.getLostJalistAccessTs());
+				out.writeLong(snitch.getBrokenTs());
+				out.writeLong(snitch.getGoneTs());
+				out.writeInt(idOf(stringIds, s[5]));
+				out.writeInt(idOf(stringIds, s[6]));
+			}
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * world, group, name, created by, renamed by, tags, notes
+	 */
+	private static String[] stringsOf(Snitch snitch) {
+		return new String[]{
+			snitch.pos.getWorld(),
+			snitch.getGroup(),
+			snitch.getName(),
+			snitch.getCreatedByUuid() != null ? snitch.getCreatedByUuid().toString() : null,
+			snitch.getRenamedByUuid() != null ? snitch.getRenamedByUuid().toString() : null,
+			snitch.getTags().isEmpty() ? null : String.join("\n", snitch.getTags()),
+			snitch.getNotes(),
+		};
+	}
+
+	private static int idOf(HashMap<String, Integer> stringIds, @Nullable String string) {
+		if (string == null) return -1;
+		return stringIds.get(string);
+	}
+
+	/**
+	 * @return null if there is no snapshot, or it was written for a different change counter
+	 */
+	public static @Nullable List<Snitch> read(@NotNull File file, @NotNull String server, long changeCounter) throws IOException {
+		if (!file.exists()) return null;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer buf = ByteBuffer.allocate(READ_CHUNK_SIZE).limit(0);
+			if (size < 24 || !fill(channel, buf, 24) || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+				System.err.println("Ignoring malformed snapshot " + file);
+				return null;
+			}
+			if (buf.getLong() != changeCounter) return null;
+			int stringCount = buf.getInt();
+			int recordCount = buf.getInt();
+			long remaining = size - 24;
+
+			String[] strings = new String[stringCount];
+			for (int i = 0; i < stringCount; i++) {
+				int length = fill(channel, buf, 4) ? buf.getInt() : -1;
+				remaining -= 4L + length;
+				if (length < 0 || remaining < 0) {
+					System.err.println("Ignoring malformed snapshot " + file);
+					return null;
+				}
+				if (length > buf.capacity()) {
+					buf = ByteBuffer.allocate(length).put(buf).flip();
+				}
+				fill(channel, buf, length); // remaining >= 0 means the file is long enough
+				strings[i] = new String(buf.array(), buf.position(), length, StandardCharsets.UTF_8);
+				buf.position(buf.position() + length);
+			}
+			if (remaining != (long) recordCount * RECORD_SIZE) {
+				System.err.println("Ignoring truncated snapshot " + file);
+				return null;
+			}
+
+			List<Snitch> snitches = new ArrayList<>(recordCount);
+			for (int r = 0; r < recordCount; r++) {
+				if (!fill(channel, buf, RECORD_SIZE)) {
+					System.err.println("Ignoring truncated snapshot " + file);
+					return null;
+				}
+				String world = strings[buf.getInt()];
+				int x = buf.getInt();
+				int y = buf.getInt();
+				int z = buf.getInt();
+				String group = stringOrNull(strings, buf.getInt());
+				byte type = buf.get();
+				String name = stringOrNull(strings, buf.getInt());
+				long dormantTs = buf.getLong();
+				long cullTs = buf.getLong();
+				long firstSeenTs = buf.getLong();
+				long lastSeenTs = buf.getLong();
+				long createdTs = buf.getLong();
+				String createdBy = stringOrNull(strings, buf.getInt());
+				long renamedTs = buf.getLong();
+				String renamedBy = stringOrNull(strings, buf.getInt());
+				long lostJalistAccessTs = buf.getLong();
+				long brokenTs = buf.getLong();
+				long goneTs = buf.getLong();
+				String tags = stringOrNull(strings, buf.getInt());
+				String notes = stringOrNull(strings, buf.getInt());
+				snitches.add(new Snitch(server, world, x, y, z, group,
+					type == TYPE_JUKEBOX ? Snitch.Type.JUKEBOX.dbRepresentation
+						: type == TYPE_NOTEBLOCK ? Snitch.Type.NOTEBLOCK.dbRepresentation : null,
+					name, dormantTs, cullTs, firstSeenTs, lastSeenTs, createdTs, createdBy,
+					renamedTs, renamedBy, lostJalistAccessTs, brokenTs, goneTs, tags, notes));
+			}
+			return snitches;
+		}
+	}
+
+	/**
+	 * Reads from the channel until at least {@code count} bytes are left in the buffer.
+	 * @return false if the file ended before that
+	 */
+	private static boolean fill(FileChannel channel, ByteBuffer buf, int count) throws IOException {
+		if (buf.remaining() >= count) return true;
+		buf.compact();
+		while (buf.position() < count) {
+			if (channel.read(buf) < 0) {
+				buf.flip();
+				return false;
+			}
+		}
+		buf.flip();
+		return true;
+	}
+
+	private static @Nullable String stringOrNull(String[] strings, int id) {
+		return id < 0 ? null : strings[id];
+	}
+}
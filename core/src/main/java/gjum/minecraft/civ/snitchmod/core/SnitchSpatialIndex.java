@@ -0,0 +1,218 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Snitch slots (see {@link SnitchColumns}) bucketed by world and chunk,
+ * so nearby queries only look at the few chunks around the player instead of every known snitch.
+ */
+public class SnitchSpatialIndex {
+	private static final int CHUNK_SHIFT = 4;
+	private static final int[] NO_SLOTS = new int[0];
+
+	private final SnitchColumns columns;
+	/**
+	 * indexed by world id
+	 */
+	private final ArrayList<Long2ObjectOpenHashMap<IntArrayList>> worlds = new ArrayList<>();
+
+	public SnitchSpatialIndex(@NotNull SnitchColumns columns) {
+		this.columns = columns;
+	}
+
+	public static long chunkKey(int chunkX, int chunkZ) {
+		return (long) chunkX & 0xFFFFFFFFL | ((long) chunkZ & 0xFFFFFFFFL) << 32;
+	}
+
+	/**
+	 * Must be called after the slot was filled in {@link SnitchColumns}.
+	 */
+	public void add(int slot) {
+		int worldId = columns.getWorldIdAt(slot);
+		while (worlds.size() <= worldId) worlds.add(new Long2ObjectOpenHashMap<>());
+		worlds.get(worldId)
+			.computeIfAbsent(
+				chunkKey(columns.getX(slot) >> CHUNK_SHIFT, columns.getZ(slot) >> CHUNK_SHIFT),
+				k -> new IntArrayList(4))
+			.add(slot);
+	}
+
+	/**
+	 * Must be called before the slot is freed in {@link SnitchColumns}.
+	 */
+	public void remove(int slot) {
+		int worldId = columns.getWorldIdAt(slot);
+		if (worldId < 0 || worldId >= worlds.size()) return;
+		var chunks = worlds.get(worldId);
+		long key = chunkKey(columns.getX(slot) >> CHUNK_SHIFT, columns.getZ(slot) >> CHUNK_SHIFT);
+		IntArrayList bucket = chunks.get(key);
+		if (bucket == null) return;
+		int i = bucket.indexOf(slot);
+		if (i >= 0) bucket.removeInt(i);
+		if (bucket.isEmpty()) chunks.remove(key);
+	}
+
+	public void clear() {
+		worlds.clear();
+	}
+
+	/**
+	 * Slots of snitches whose block center is closer than `distance` to the given point,
+	 * nearest first, at most `limit` of them.
+	 * Only snitches matching `filter` count towards the limit.
+	 */
+	public int[] findNearby(
+		int worldId,
+		double x, double y, double z,
+		double distance,
+		int limit,
+		@NotNull SnitchColumns.Filter filter,
+		long now
+	) {
+		if (worldId < 0 || worldId >= worlds.size() || limit <= 0) return NO_SLOTS;
+		var chunks = worlds.get(worldId);
+
+		final double maxDistSq = distance * distance;
+		// snitch center is at block + .5
+		final int minChunkX = (int) Math.floor(x - .5 - distance) >> CHUNK_SHIFT;
+		final int maxChunkX = (int) Math.floor(x - .5 + distance) >> CHUNK_SHIFT;
+		final int minChunkZ = (int) Math.floor(z - .5 - distance) >> CHUNK_SHIFT;
+		final int maxChunkZ = (int) Math.floor(z - .5 + distance) >> CHUNK_SHIFT;
+
+		final NearestHeap heap = new NearestHeap(limit);
+		for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+			for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
+				IntArrayList bucket = chunks.get(chunkKey(cx, cz));
+				if (bucket == null) continue;
+				final int[] slots = bucket.elements();
+				for (int i = 0, n = bucket.size(); i < n; i++) {
+					int slot = slots[i];
+					double distSq = columns.distSq(slot, x, y, z);
+					if (distSq >= maxDistSq) continue;
+					if (!heap.wouldAccept(distSq)) continue;
+					if (!filter.test(columns, slot, now)) continue;
+					heap.offer(distSq, slot);
+				}
+			}
+		}
+		return heap.toSortedArray();
+	}
+
+	/**
+	 * Slots of snitches whose block lies inside the given box, bounds inclusive, in no particular order.
+	 */
+	public @NotNull IntArrayList findInBox(
+		int worldId,
+		int minX, int minY, int minZ,
+		int maxX, int maxY, int maxZ
+	) {
+		IntArrayList result = new IntArrayList();
+		if (worldId < 0 || worldId >= worlds.size()) return result;
+		var chunks = worlds.get(worldId);
+		for (int cx = minX >> CHUNK_SHIFT; cx <= maxX >> CHUNK_SHIFT; cx++) {
+			for (int cz = minZ >> CHUNK_SHIFT; cz <= maxZ >> CHUNK_SHIFT; cz++) {
+				IntArrayList bucket = chunks.get(chunkKey(cx, cz));
+				if (bucket == null) continue;
+				final int[] slots = bucket.elements();
+				for (int i = 0, n = bucket.size(); i < n; i++) {
+					int slot = slots[i];
+					int sx = columns.getX(slot);
+					int sy = columns.getY(slot);
+					int sz = columns.getZ(slot);
+					if (sx < minX || sx > maxX) continue;
+					if (sy < minY || sy > maxY) continue;
+					if (sz < minZ || sz > maxZ) continue;
+					result.add(slot);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Bounded max-heap on distance: keeps the `limit` nearest slots offered so far.
+	 */
+	private static class NearestHeap {
+		private final int limit;
+		private double[] dists = new double[16];
+		private int[] slots = new int[16];
+		private int size = 0;
+
+		NearestHeap(int limit) {
+			this.limit = limit;
+		}
+
+		boolean wouldAccept(double distSq) {
+			return size < limit || distSq < dists[0];
+		}
+
+		void offer(double distSq, int slot) {
+			if (size < limit) {
+				if (size == dists.length) {
+					int newLength = (int) Math.min((long) limit, (long) size * 2);
+					dists = Arrays.copyOf(dists, newLength);
+					slots = Arrays.copyOf(slots, newLength);
+				}
+				int i = size++;
+				dists[i] = distSq;
+				slots[i] = slot;
+				siftUp(i);
+			} else {
+				dists[0] = distSq;
+				slots[0] = slot;
+				siftDown(0);
+			}
+		}
+
+		private void siftUp(int i) {
+			while (i > 0) {
+				int parent = (i - 1) >> 1;
+				if (dists[parent] >= dists[i]) break;
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int i) {
+			while (true) {
+				int left = 2 * i + 1;
+				if (left >= size) break;
+				int largest = left;
+				int right = left + 1;
+				if (right < size && dists[right] > dists[left]) largest = right;
+				if (dists[i] >= dists[largest]) break;
+				swap(i, largest);
+				i = largest;
+			}
+		}
+
+		private void swap(int a, int b) {
+			double d = dists[a];
+			dists[a] = dists[b];
+			dists[b] = d;
+			int s = slots[a];
+			slots[a] = slots[b];
+			slots[b] = s;
+		}
+
+		int[] toSortedArray() {
+			// pop the max repeatedly, filling the result back to front
+			int[] sorted = new int[size];
+			while (size > 0) {
+				sorted[size - 1] = slots[0];
+				size--;
+				if (size > 0) {
+					dists[0] = dists[size];
+					slots[0] = slots[size];
+					siftDown(0);
+				}
+			}
+			return sorted;
+		}
+	}
+}
@@ -0,0 +1,1726 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch.Type;
+import gjum.minecraft.civ.snitchmod.core.model.SnitchAlert;
+import gjum.minecraft.civ.snitchmod.core.model.WorldPos;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.sql.*;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Predicate;
+
+public class SnitchSqliteDb implements SnitchStorage {
+	public enum Profile {
+		/**
+		 * SQLite's defaults: rollback journal, fsync on every commit.
+		 */
+		DEFAULT,
+		/**
+		 * WAL journal, fsync only at checkpoints, larger page cache, memory-mapped reads.
+		 * A crash can lose the last few commits, but never corrupts the file;
+		 * lost updates are re-learned from the next alerts and `/jalist`.
+		 */
+		TUNED,
+	}
+
+	/**
+	 * How {@link #importSnitches} treats snitches that already exist locally.
+	 */
+	public enum MergePolicy {
+		/**
+		 * Per field, keep whichever side is more recent: what was observed about the snitch (group, name, timers)
+		 * comes from the side that saw it last, and each timestamp from whichever is newer.
+		 * Local tags and notes are kept unless empty.
+		 */
+		NEWEST,
+		/**
+		 * Only add snitches that don't exist locally.
+		 */
+		KEEP_LOCAL,
+		/**
+		 * Replace local snitches with the imported ones.
+		 */
+		OVERWRITE,
+	}
+
+	public final String server;
+
+	private Connection conn;
+	/**
+	 * SQL -> statement prepared on {@link #conn}, reused across calls. Closed in {@link #close}.
+	 */
+	private final HashMap<String, PreparedStatement> statements = new HashMap<>();
+	/**
+	 * Names of the existing alert partition tables, see {@link #getAlertPartition}.
+	 */
+	private final TreeSet<String> alertPartitions = new TreeSet<>();
+	/**
+	 * False if this SQLite build lacks the R*Tree module; region queries then scan the table.
+	 */
+	private boolean hasSpatialIndex = false;
+	/**
+	 * False if this SQLite build lacks the FTS5 module; searches then scan the table.
+	 */
+	private boolean hasSearchIndex = false;
+
+	public SnitchSqliteDb(String server) throws ClassNotFoundException, SQLException {
+		this(server, getDbFile(server));
+	}
+
+	public SnitchSqliteDb(String server, File dbFile) throws ClassNotFoundException, SQLException {
+		this(server, dbFile, SnitchModConfig.getInstance().dbProfile);
+	}
+
+	public SnitchSqliteDb(String server, File dbFile, Profile profile) throws ClassNotFoundException, SQLException {
+		this.server = server;
+		File dir = dbFile.getAbsoluteFile().getParentFile();
+		if (dir != null) dir.mkdirs();
+		Class.forName("org.sqlite.JDBC"); // load driver
+		conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getPath());
+		if (profile == Profile.TUNED) applyTunedPragmas();
+		migrate();
+		createSpatialIndex();
+		createSearchIndex();
+		loadAlertPartitions();
+		refreshTags();
+	}
+
+	private void applyTunedPragmas() throws SQLException {
+		try (Statement stmt = conn.createStatement()) {
+			stmt.execute("PRAGMA journal_mode = WAL");
+			stmt.execute("PRAGMA synchronous = NORMAL");
+			stmt.execute("PRAGMA temp_store = MEMORY");
+			// negative means KiB instead of pages
+			stmt.execute("PRAGMA cache_size = -16384");
+			stmt.execute("PRAGMA mmap_size = 268435456");
+		}
+	}
+
+	public static File getDbFile(String server) {
+		String serverDir = server.replaceAll(":", "~");
+		return new File("SnitchMod/" + serverDir + "/snitches.sqlite");
+	}
+
+	synchronized
+	public void close() {
+		for (PreparedStatement pstmt : statements.values()) {
+			try {
+				pstmt.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+		statements.clear();
+		if (conn != null) {
+			try {
+				conn.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Prepares each distinct SQL only once per connection.
+	 */
+	private PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement pstmt = statements.get(sql);
+		if (pstmt == null) {
+			pstmt = conn.prepareStatement(sql);
+			statements.put(sql, pstmt);
+		}
+		return pstmt;
+	}
+
+	/**
+	 * Small key/value table for bookkeeping, e.g. the change counter.
+	 */
+	public static final String tableMeta = "snitchmod_meta";
+	private static final String metaChangeCounter = "change_counter";
+	private static final String sqlBumpChangeCounter = "UPDATE " + tableMeta + " SET value = value + 1 WHERE key = '" + metaChangeCounter + "'";
+	private static final String sqlSelectChangeCounter = "SELECT value FROM " + tableMeta + " WHERE key = '" + metaChangeCounter + "'";
+	private static final String sqlSelectMeta = "SELECT value FROM " + tableMeta + " WHERE key = ?";
+	private static final String sqlUpsertMeta = "INSERT INTO " + tableMeta + " VALUES (?, ?) ON CONFLICT (key) DO UPDATE SET value = excluded.value";
+
+	public static final String tableSnitches = "snitches_v3";
+	private static final String pkeySnitches = "world,x,y,z";
+	private static final String columnsSnitches = "world,x,y,z,group_name,type,name,dormant_ts,cull_ts,first_seen_ts,last_seen_ts,created_ts,created_by_uuid,renamed_ts,renamed_by_uuid,lost_jalist_access_ts,broken_ts,gone_ts,tags,notes";
+	private static final String upsertSetSnitches = "ON CONFLICT (" + pkeySnitches + ") DO UPDATE SET " +
+		"group_name = excluded.group_name," +
+		"type = excluded.type," +
+		"name = excluded.name," +
+		"dormant_ts = excluded.dormant_ts," +
+		"cull_ts = excluded.cull_ts," +
+		"first_seen_ts = excluded.first_seen_ts," +
+		"last_seen_ts = excluded.last_seen_ts," +
+		"created_ts = excluded.created_ts," +
+		"created_by_uuid = excluded.created_by_uuid," +
+		"renamed_ts = excluded.renamed_ts," +
+		"renamed_by_uuid = excluded.renamed_by_uuid," +
+		"lost_jalist_access_ts = excluded.lost_jalist_access_ts," +
+		"broken_ts = excluded.broken_ts," +
+		"gone_ts = excluded.gone_ts," +
+		"tags = excluded.tags," +
+		"notes = excluded.notes," +
+		"change_seq = excluded.change_seq";
+	/**
+	 * The change counter of the current transaction, for `change_seq`; see {@link #bumpChangeCounter}.
+	 */
+	private static final String sqlCurrentSeq = "(SELECT value FROM " + tableMeta + " WHERE key = '" + metaChangeCounter + "')";
+	private static final String sqlInsertSnitch = "INSERT INTO " + tableSnitches + " (" + columnsSnitches + ",change_seq)" +
+		" VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?," + sqlCurrentSeq + ") ";
+	private static final String sqlUpsertSnitch = sqlInsertSnitch + upsertSetSnitches;
+	private static final String sqlImportKeepLocal = sqlInsertSnitch + "ON CONFLICT (" + pkeySnitches + ") DO NOTHING";
+	/**
+	 * Column names on the right refer to the local row as it was before the statement, see {@link MergePolicy#NEWEST}.
+	 */
+	private static final String sqlImportNewest = sqlInsertSnitch + "ON CONFLICT (" + pkeySnitches + ") DO UPDATE SET " +
+		"group_name = " + ifSeenLater("group_name") + "," +
+		"type = " + ifSeenLater("type") + "," +
+		"name = " + ifSeenLater("name") + "," +
+		"dormant_ts = " + ifSeenLater("dormant_ts") + "," +
+		"cull_ts = " + ifSeenLater("cull_ts") + "," +
+		"lost_jalist_access_ts = " + ifSeenLater("lost_jalist_access_ts") + "," +
+		"first_seen_ts = CASE WHEN first_seen_ts = 0 OR (excluded.first_seen_ts <> 0 AND excluded.first_seen_ts < first_seen_ts)" +
+		" THEN excluded.first_seen_ts ELSE first_seen_ts END," +
+		"last_seen_ts = max(last_seen_ts, excluded.last_seen_ts)," +
+		"created_ts = max(created_ts, excluded.created_ts)," +
+		"created_by_uuid = CASE WHEN excluded.created_ts > created_ts THEN excluded.created_by_uuid ELSE created_by_uuid END," +
+		"renamed_ts = max(renamed_ts, excluded.renamed_ts)," +
+		"renamed_by_uuid = CASE WHEN excluded.renamed_ts > renamed_ts THEN excluded.renamed_by_uuid ELSE renamed_by_uuid END," +
+		"broken_ts = max(broken_ts, excluded.broken_ts)," +
+		// still gone only if nobody saw it after it was gone
+		"gone_ts = CASE WHEN max(gone_ts, excluded.gone_ts) >= max(last_seen_ts, excluded.last_seen_ts)" +
+		" THEN max(gone_ts, excluded.gone_ts) ELSE 0 END," +
+		"tags = coalesce(nullif(tags, ''), excluded.tags)," +
+		"notes = coalesce(nullif(notes, ''), excluded.notes)," +
+		"change_seq = excluded.change_seq" +
+		// leave rows the import would not change alone, so syncing them back and forth settles
+		" WHERE excluded.last_seen_ts > last_seen_ts" +
+		" OR excluded.created_ts > created_ts OR excluded.renamed_ts > renamed_ts" +
+		" OR excluded.broken_ts > broken_ts OR excluded.gone_ts > gone_ts" +
+		" OR (excluded.first_seen_ts <> 0 AND (first_seen_ts = 0 OR excluded.first_seen_ts < first_seen_ts))" +
+		" OR (coalesce(tags, '') = '' AND coalesce(excluded.tags, '') <> '')" +
+		" OR (coalesce(notes, '') = '' AND coalesce(excluded.notes, '') <> '')";
+	private static final String whereSnitchPos = " WHERE world = ? AND x = ? AND y = ? AND z = ?";
+	private static final String sqlDeleteSnitch = "DELETE FROM " + tableSnitches + whereSnitchPos;
+	/**
+	 * Deletions, so they reach other clients on sync instead of the snitch being synced back.
+	 */
+	public static final String tableTombstones = "snitch_tombstones";
+	private static final String sqlUpsertTombstone = "INSERT INTO " + tableTombstones + " (world,x,y,z,deleted_ts,change_seq)" +
+		" VALUES (?,?,?,?,?," + sqlCurrentSeq + ") ON CONFLICT (" + pkeySnitches + ") DO UPDATE SET" +
+		" deleted_ts = excluded.deleted_ts, change_seq = excluded.change_seq WHERE excluded.deleted_ts > deleted_ts";
+	/**
+	 * A snitch seen again after it was deleted is kept.
+	 */
+	private static final String sqlDeleteTombstoned = "DELETE FROM " + tableSnitches + " WHERE id IN (SELECT s.id FROM " + tableTombstones + " t" +
+		" JOIN " + tableSnitches + " s ON s.world = t.world AND s.x = t.x AND s.y = t.y AND s.z = t.z" +
+		" WHERE s.last_seen_ts <= t.deleted_ts)";
+	/**
+	 * Not indexed: a scan is only a few ms per 100k snitches, and an index on a column every write touches is not free.
+	 */
+	private static final String sqlSelectRowsChangedBetween = "SELECT " + columnsSnitches + " FROM " + tableSnitches + " WHERE change_seq > ? AND change_seq <= ?";
+	private static final String sqlSelectTombstonesChangedBetween = "SELECT world,x,y,z,deleted_ts FROM " + tableTombstones + " WHERE change_seq > ? AND change_seq <= ?";
+	private static final String tableSyncPeers = "sync_peers";
+	/**
+	 * Each snitch's tags split into rows, see {@link #migrateAddTags}.
+	 */
+	public static final String tableTags = "snitch_tags";
+	private static final String tableTagsStale = "snitch_tags_stale";
+	private static final String sqlDeleteStaleTags = "DELETE FROM " + tableTags +
+		" WHERE snitch_id IN (SELECT snitch_id FROM " + tableTagsStale + ")";
+	/**
+	 * Peels one tag off the front of the remaining list per step. CROSS JOIN keeps SQLite from scanning all snitches
+	 * when few are stale, which is almost always.
+	 */
+	private static final String sqlInsertStaleTags = "INSERT OR IGNORE INTO " + tableTags + " (tag, snitch_id)" +
+		" WITH RECURSIVE split(id, tag, rest) AS (" +
+		" SELECT s.id, '', s.tags || char(10) FROM " + tableTagsStale + " d" +
+		" CROSS JOIN " + tableSnitches + " s ON s.id = d.snitch_id WHERE s.tags <> ''" +
+		" UNION ALL SELECT id, substr(rest, 1, instr(rest, char(10)) - 1), substr(rest, instr(rest, char(10)) + 1)" +
+		" FROM split WHERE rest <> '')" +
+		" SELECT tag, id FROM split WHERE tag <> ''";
+	private static final String sqlClearStaleTags = "DELETE FROM " + tableTagsStale;
+	private static final String sqlSelectSnitchesWithTag = "SELECT s.* FROM " + tableTags + " t" +
+		" JOIN " + tableSnitches + " s ON s.id = t.snitch_id WHERE t.tag = ? AND s.world = ?";
+	private static final String sqlSelectTagCounts = "SELECT tag, count(*) FROM " + tableTags + " GROUP BY tag";
+	private static final String sqlSelectAllSnitches = "SELECT * FROM " + tableSnitches;
+	private static final String sqlSelectAllRows = "SELECT " + columnsSnitches + " FROM " + tableSnitches;
+	/**
+	 * Alerts are partitioned into one table per month (UTC), e.g. `snitch_alerts_2024_05`,
+	 * so old months can be dropped without rewriting the rest.
+	 */
+	public static final String tableAlertsPrefix = "snitch_alerts_";
+	private static final String columnsAlerts = "ts,world,x,y,z,account,action,snitch_name,group_name";
+	/**
+	 * R*Tree of each snitch's field bounds, in inclusive block coordinates.
+	 * `id` is the rowid in {@link #tableSnitches}; kept in sync by triggers.
+	 */
+	public static final String tableSnitchesSpatial = tableSnitches + "_rtree";
+	/**
+	 * CROSS JOIN makes SQLite search the R*Tree first; otherwise it may walk all of `world` via the primary key.
+	 */
+	private static final String sqlSelectSnitchesInBox = "SELECT s.* FROM " + tableSnitchesSpatial + " r" +
+		" CROSS JOIN " + tableSnitches + " s ON s.rowid = r.id" +
+		" WHERE r.max_x >= ? AND r.min_x <= ? AND r.max_y >= ? AND r.min_y <= ? AND r.max_z >= ? AND r.min_z <= ?" +
+		" AND s.world = ?";
+	private static final String sqlSelectSnitchesInBoxScan = "SELECT * FROM " + tableSnitches +
+		" WHERE x + " + Snitch.RANGE + " >= ? AND x - " + Snitch.RANGE + " <= ?" +
+		" AND y + " + Snitch.RANGE + " >= ? AND y - " + Snitch.RANGE + " <= ?" +
+		" AND z + " + Snitch.RANGE + " >= ? AND z - " + Snitch.RANGE + " <= ?" +
+		" AND world = ?";
+	private static final String sqlSelectSnitch = "SELECT * FROM " + tableSnitches + whereSnitchPos;
+	private static final String sqlSelectSnitchesInRegion = "SELECT * FROM " + tableSnitches +
+		" WHERE world = ? AND x BETWEEN ? AND ? AND z BETWEEN ? AND ?";
+	/**
+	 * FTS5 index of each snitch's name, group, and notes. `rowid` is the id in {@link #tableSnitches};
+	 * the text is not stored twice, and triggers keep the index in sync.
+	 */
+	public static final String tableSnitchesSearch = tableSnitches + "_fts";
+	private static final String columnsSearch = "name, group_name, notes";
+	/**
+	 * Nearest-first queries go through rings around the player instead of sorting all snitches by distance:
+	 * the first ring has this radius, and each next one doubles it.
+	 */
+	private static final int FIRST_RING_RADIUS = 256;
+	/**
+	 * Twice the world border and then some, so a ring this large reaches every snitch in the world.
+	 */
+	private static final int MAX_RING_RADIUS = 1 << 27;
+	private static final String distanceSqr = "(s.x - ?) * (s.x - ?) + (s.z - ?) * (s.z - ?)";
+	private static final String whereInRing = " s.world = ? AND s.x BETWEEN ? AND ? AND s.z BETWEEN ? AND ?" +
+		" AND " + distanceSqr + " BETWEEN ? AND ?";
+	/**
+	 * The R*Tree holds field bounds, which contain the blocks, so it finds a superset and {@link #whereInRing} decides.
+	 */
+	private static final String sqlSelectSnitchesInRing = "SELECT s.* FROM " + tableSnitchesSpatial + " r" +
+		" CROSS JOIN " + tableSnitches + " s ON s.rowid = r.id" +
+		" WHERE r.max_x >= ? AND r.min_x <= ? AND r.max_z >= ? AND r.min_z <= ? AND" + whereInRing;
+	/**
+	 * Scans the x range in the (world,x,y,z) index.
+	 */
+	private static final String sqlSelectSnitchesInRingScan = "SELECT s.* FROM " + tableSnitches + " s WHERE" + whereInRing;
+	private static final String sqlCountSnitchesInWorld = "SELECT count(*) FROM " + tableSnitches + " WHERE world = ?";
+	private static final String sqlSelectSnitchesNotInWorld = "SELECT * FROM " + tableSnitches + " WHERE world <> ?";
+	/**
+	 * CROSS JOIN makes SQLite look up the matches first, instead of testing every snitch in the ring against the index.
+	 */
+	private static final String fromSearchMatches = " FROM " + tableSnitchesSearch +
+		" CROSS JOIN " + tableSnitches + " s ON s.id = " + tableSnitchesSearch + ".rowid WHERE";
+	private static final String filterSearch = " AND " + tableSnitchesSearch + " MATCH ?";
+	private static final String filterSearchScan = " AND (s.name LIKE ? ESCAPE '\\'" +
+		" OR s.group_name LIKE ? ESCAPE '\\' OR s.notes LIKE ? ESCAPE '\\')";
+	/**
+	 * Not ordered by FTS5's `rank` at all: computing it for every match costs more than the rest of the query,
+	 * and it would only break ties in distance.
+	 */
+	private static final String orderSearch = " ORDER BY " + distanceSqr + " LIMIT ?";
+	private static final String sqlSearchSnitchesInRing = "SELECT s.*" + fromSearchMatches + whereInRing +
+		filterSearch + orderSearch;
+	private static final String sqlSearchSnitchesInRingScan = "SELECT s.* FROM " + tableSnitches + " s WHERE" + whereInRing +
+		filterSearchScan + orderSearch;
+	private static final String sqlCountSearchMatches = "SELECT count(*)" + fromSearchMatches + " s.world = ?" +
+		filterSearch;
+	private static final String sqlCountSearchMatchesScan = "SELECT count(*) FROM " + tableSnitches + " s WHERE s.world = ?" +
+		filterSearchScan;
+	private static final String sqlSearchSnitchesNotInWorld = "SELECT s.*" + fromSearchMatches + " s.world <> ?" +
+		filterSearch + orderSearch + " OFFSET ?";
+	private static final String sqlSearchSnitchesNotInWorldScan = "SELECT s.* FROM " + tableSnitches + " s WHERE s.world <> ?" +
+		filterSearchScan + orderSearch + " OFFSET ?";
+	private static final String sqlSelectSnitchesInGroup = "SELECT * FROM " + tableSnitches + " WHERE group_name = ?";
+	/**
+	 * An OR of two ranges, so SQLite can use both indexes and merge the results.
+	 */
+	private static final String sqlSelectSnitchesExpiringBetween = "SELECT * FROM " + tableSnitches +
+		" WHERE dormant_ts BETWEEN ? AND ? OR cull_ts BETWEEN ? AND ?";
+	private static final String sqlSelectSnitchesNotSeenSince = "SELECT * FROM " + tableSnitches + " WHERE last_seen_ts < ?";
+
+	private interface Migration {
+		void apply(Statement stmt) throws SQLException;
+	}
+
+	/**
+	 * The migration at index i brings the schema from version i to i + 1, see `PRAGMA user_version`.
+	 * Released migrations must never change, since DBs out there have already applied them; only append new ones.
+	 * They refer to tables by their literal names for the same reason.
+	 */
+	private static final List<Migration> migrations = List.of(
+		SnitchSqliteDb::migrateCreateV2,
+		SnitchSqliteDb::migrateToV3,
+		SnitchSqliteDb::migrateAddSecondaryIndexes,
+		SnitchSqliteDb::migrateAddSync,
+		SnitchSqliteDb::migrateAddTags
+	);
+
+	/**
+	 * Applies all migrations the DB is missing, each in its own transaction together with its version bump,
+	 * so an interrupted migration leaves the DB at the previous version.
+	 *
+	 * @throws SQLException if the DB was migrated by a newer SnitchMod, which this one must not write to
+	 */
+	private void migrate() throws SQLException {
+		int version;
+		try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+			version = rs.next() ? rs.getInt(1) : 0;
+		}
+		if (version > migrations.size()) {
+			throw new SQLException("Snitch DB for " + server + " has schema version " + version
+				+ ", newer than the " + migrations.size() + " this SnitchMod knows");
+		}
+		for (; version < migrations.size(); version++) {
+			long startMs = System.currentTimeMillis();
+			conn.setAutoCommit(false);
+			try (Statement stmt = conn.createStatement()) {
+				migrations.get(version).apply(stmt);
+				stmt.execute("PRAGMA user_version = " + (version + 1));
+				conn.commit();
+			} catch (SQLException e) {
+				conn.rollback();
+				System.err.println("Failed migrating snitch DB for " + server + " to schema version " + (version + 1));
+				throw e;
+			} finally {
+				conn.setAutoCommit(true);
+			}
+			System.out.println("[SnitchMod] Migrated DB for " + server + " to schema version " + (version + 1)
+				+ " in " + (System.currentTimeMillis() - startMs) + "ms");
+		}
+	}
+
+	/**
+	 * The schema before migrations existed; a no-op for DBs that already have it.
+	 */
+	private static void migrateCreateV2(Statement stmt) throws SQLException {
+		stmt.execute("CREATE TABLE IF NOT EXISTS snitches_v2 " +
+			"( world TEXT" +
+			", x INT" +
+			", y INT" +
+			", z INT" +
+			", group_name TEXT" +
+			", type TEXT" +
+			", name TEXT" +
+			", dormant_ts BIGINT" +
+			", cull_ts BIGINT" +
+			", first_seen_ts BIGINT" +
+			", last_seen_ts BIGINT" +
+			", created_ts BIGINT" +
+			", created_by_uuid TEXT" +
+			", renamed_ts BIGINT" +
+			", renamed_by_uuid TEXT" +
+			", lost_jalist_access_ts BIGINT" +
+			", broken_ts BIGINT" +
+			", gone_ts BIGINT" +
+			", tags TEXT" +
+			", notes TEXT" +
+			", PRIMARY KEY (world,x,y,z)" +
+			");");
+		stmt.execute("CREATE TABLE IF NOT EXISTS snitchmod_meta (key TEXT PRIMARY KEY, value INTEGER NOT NULL)");
+		stmt.execute("INSERT OR IGNORE INTO snitchmod_meta VALUES ('change_counter', 0)");
+	}
+
+	/**
+	 * An explicit `id` keeps rowids stable across VACUUM, which the R*Tree relies on,
+	 * and copying in position order puts neighbouring snitches on the same pages for region queries.
+	 * The old R*Tree is dropped because the ids change; {@link #createSpatialIndex} rebuilds it.
+	 */
+	private static void migrateToV3(Statement stmt) throws SQLException {
+		stmt.execute("CREATE TABLE snitches_v3 " +
+			"( id INTEGER PRIMARY KEY" +
+			", world TEXT NOT NULL" +
+			", x INTEGER NOT NULL" +
+			", y INTEGER NOT NULL" +
+			", z INTEGER NOT NULL" +
+			", group_name TEXT" +
+			", type TEXT" +
+			", name TEXT" +
+			", dormant_ts INTEGER" +
+			", cull_ts INTEGER" +
+			", first_seen_ts INTEGER" +
+			", last_seen_ts INTEGER" +
+			", created_ts INTEGER" +
+			", created_by_uuid TEXT" +
+			", renamed_ts INTEGER" +
+			", renamed_by_uuid TEXT" +
+			", lost_jalist_access_ts INTEGER" +
+			", broken_ts INTEGER" +
+			", gone_ts INTEGER" +
+			", tags TEXT" +
+			", notes TEXT" +
+			", UNIQUE (world,x,y,z)" +
+			");");
+		String columns = "world,x,y,z,group_name,type,name,dormant_ts,cull_ts,first_seen_ts,last_seen_ts,created_ts,created_by_uuid,renamed_ts,renamed_by_uuid,lost_jalist_access_ts,broken_ts,gone_ts,tags,notes";
+		stmt.execute("INSERT INTO snitches_v3 (" + columns + ") SELECT " + columns + " FROM snitches_v2" +
+			" ORDER BY world, x >> 9, z >> 9, x, z, y");
+		// also drops its R*Tree triggers
+		stmt.execute("DROP TABLE snitches_v2");
+		stmt.execute("DROP TABLE IF EXISTS snitches_v2_rtree");
+		stmt.execute("UPDATE snitchmod_meta SET value = value + 1 WHERE key = 'change_counter'");
+	}
+
+	/**
+	 * For listing a group's snitches, and those about to go dormant, be culled, or not seen in a long time.
+	 */
+	private static void migrateAddSecondaryIndexes(Statement stmt) throws SQLException {
+		stmt.execute("CREATE INDEX snitches_v3_group_name ON snitches_v3 (group_name)");
+		stmt.execute("CREATE INDEX snitches_v3_dormant_ts ON snitches_v3 (dormant_ts)");
+		stmt.execute("CREATE INDEX snitches_v3_cull_ts ON snitches_v3 (cull_ts)");
+		stmt.execute("CREATE INDEX snitches_v3_last_seen_ts ON snitches_v3 (last_seen_ts)");
+	}
+
+	/**
+	 * `change_seq` is the change counter of the transaction that last changed the row, see {@link SnitchSync}.
+	 * Existing rows get a fresh counter value, so the first sync sends them all.
+	 * The peer id tells this DB apart from others it syncs with.
+	 */
+	private static void migrateAddSync(Statement stmt) throws SQLException {
+		stmt.execute("ALTER TABLE snitches_v3 ADD COLUMN change_seq INTEGER NOT NULL DEFAULT 0");
+		stmt.execute("UPDATE snitchmod_meta SET value = value + 1 WHERE key = 'change_counter'");
+		stmt.execute("UPDATE snitches_v3 SET change_seq = (SELECT value FROM snitchmod_meta WHERE key = 'change_counter')");
+		stmt.execute("CREATE TABLE snitch_tombstones " +
+			"( world TEXT NOT NULL" +
+			", x INTEGER NOT NULL" +
+			", y INTEGER NOT NULL" +
+			", z INTEGER NOT NULL" +
+			", deleted_ts INTEGER NOT NULL" +
+			", change_seq INTEGER NOT NULL" +
+			", PRIMARY KEY (world,x,y,z)" +
+			");");
+		stmt.execute("CREATE TABLE sync_peers (peer_id INTEGER PRIMARY KEY, received_seq INTEGER NOT NULL)");
+		stmt.execute("INSERT OR IGNORE INTO snitchmod_meta VALUES ('peer_id', abs(random()))");
+	}
+
+	/**
+	 * One row per tag of each snitch, for finding all snitches with a tag without scanning the `tags` column,
+	 * which stays the canonical, newline separated list.
+	 * Triggers only note which snitches' tags changed; {@link #refreshTags} splits those before each commit,
+	 * since SQLite has no table-valued split function to use in a trigger.
+	 */
+	private static void migrateAddTags(Statement stmt) throws SQLException {
+		stmt.execute("CREATE TABLE snitch_tags (tag TEXT NOT NULL, snitch_id INTEGER NOT NULL, PRIMARY KEY (tag, snitch_id)) WITHOUT ROWID");
+		stmt.execute("CREATE INDEX snitch_tags_snitch_id ON snitch_tags (snitch_id)");
+		stmt.execute("CREATE TABLE snitch_tags_stale (snitch_id INTEGER PRIMARY KEY)");
+		stmt.execute("CREATE TRIGGER snitches_v3_tags_insert AFTER INSERT ON snitches_v3 WHEN new.tags <> '' BEGIN" +
+			" INSERT OR IGNORE INTO snitch_tags_stale VALUES (new.id);" +
+			" END");
+		stmt.execute("CREATE TRIGGER snitches_v3_tags_update AFTER UPDATE OF tags ON snitches_v3 WHEN new.tags IS NOT old.tags BEGIN" +
+			" INSERT OR IGNORE INTO snitch_tags_stale VALUES (new.id);" +
+			" END");
+		stmt.execute("CREATE TRIGGER snitches_v3_tags_delete AFTER DELETE ON snitches_v3 WHEN old.tags <> '' BEGIN" +
+			" DELETE FROM snitch_tags WHERE snitch_id = old.id;" +
+			" END");
+		// split by the refresh when the DB is opened
+		stmt.execute("INSERT INTO snitch_tags_stale SELECT id FROM snitches_v3 WHERE tags <> ''");
+	}
+
+	/**
+	 * R*Tree column values for a snitch row, e.g. `new.` in a trigger.
+	 */
+	private static String fieldBoundsOf(String row) {
+		StringBuilder sql = new StringBuilder();
+		for (String axis : new String[]{"x", "y", "z"}) {
+			if (!sql.isEmpty()) sql.append(", ");
+			sql.append(row).append(axis).append(" - ").append(Snitch.RANGE).append(", ")
+				.append(row).append(axis).append(" + ").append(Snitch.RANGE);
+		}
+		return sql.toString();
+	}
+
+	/**
+	 * Increases with every transaction that changes {@link #tableSnitches}, across sessions,
+	 * so a copy of the table made elsewhere (e.g. {@link SnitchSnapshot}) can tell whether it is still current.
+	 * Bumped by this class in the same transaction as the change, rather than by a trigger,
+	 * which would cost an extra write per row; anything else writing the table must bump it too.
+	 */
+	synchronized
+	public long getChangeCounter() throws SQLException {
+		try (ResultSet rs = prepare(sqlSelectChangeCounter).executeQuery()) {
+			return rs.next() ? rs.getLong(1) : 0;
+		}
+	}
+
+	/**
+	 * Call first in a transaction, so rows written after it get the new value as their `change_seq`.
+	 */
+	private void bumpChangeCounter() throws SQLException {
+		prepare(sqlBumpChangeCounter).executeUpdate();
+	}
+
+	/**
+	 * Re-splits the tags of snitches whose `tags` changed since the last call into {@link #tableTags}.
+	 * Call last in a transaction that writes snitches, so the tag rows commit with them.
+	 */
+	private void refreshTags() throws SQLException {
+		prepare(sqlDeleteStaleTags).executeUpdate();
+		prepare(sqlInsertStaleTags).executeUpdate();
+		prepare(sqlClearStaleTags).executeUpdate();
+	}
+
+	synchronized
+	public long getMeta(String key, long default_) throws SQLException {
+		PreparedStatement pstmt = prepare(sqlSelectMeta);
+		pstmt.setString(1, key);
+		try (ResultSet rs = pstmt.executeQuery()) {
+			return rs.next() ? rs.getLong(1) : default_;
+		}
+	}
+
+	synchronized
+	public void setMeta(String key, long value) throws SQLException {
+		PreparedStatement pstmt = prepare(sqlUpsertMeta);
+		pstmt.setString(1, key);
+		pstmt.setLong(2, value);
+		pstmt.executeUpdate();
+	}
+
+	/**
+	 * Random, chosen when the DB was created; tells it apart from the others it syncs with.
+	 */
+	synchronized
+	public long getPeerId() throws SQLException {
+		return getMeta("peer_id", 0);
+	}
+
+	/**
+	 * @return the change counter of `peerId` up to which its changes have been merged here, 0 if none
+	 */
+	synchronized
+	public long getReceivedSeq(long peerId) throws SQLException {
+		PreparedStatement pstmt = prepare("SELECT received_seq FROM " + tableSyncPeers + " WHERE peer_id = ?");
+		pstmt.setLong(1, peerId);
+		try (ResultSet rs = pstmt.executeQuery()) {
+			return rs.next() ? rs.getLong(1) : 0;
+		}
+	}
+
+	synchronized
+	public void setReceivedSeq(long peerId, long seq) throws SQLException {
+		PreparedStatement pstmt = prepare("INSERT INTO " + tableSyncPeers + " VALUES (?, ?)" +
+			" ON CONFLICT (peer_id) DO UPDATE SET received_seq = max(received_seq, excluded.received_seq)");
+		pstmt.setLong(1, peerId);
+		pstmt.setLong(2, seq);
+		pstmt.executeUpdate();
+	}
+
+	/**
+	 * Streams rows last written after change counter `fromSeq`, up to and including `toSeq`,
+	 * to `consumer` in chunks of `chunkSize`, see {@link #selectAllRows}.
+	 */
+	synchronized
+	public boolean selectRowsChangedBetween(long fromSeq, long toSeq, int chunkSize, Predicate<List<Object[]>> consumer) {
+		try {
+			PreparedStatement pstmt = prepare(sqlSelectRowsChangedBetween);
+			pstmt.setLong(1, fromSeq);
+			pstmt.setLong(2, toSeq);
+			streamRows(pstmt, chunkSize, consumer);
+			return true;
+		} catch (SQLException e) {
+			System.err.println("Failed loading changed snitches");
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	synchronized
+	public List<Tombstone> selectTombstonesChangedBetween(long fromSeq, long toSeq) throws SQLException {
+		List<Tombstone> tombstones = new ArrayList<>();
+		PreparedStatement pstmt = prepare(sqlSelectTombstonesChangedBetween);
+		pstmt.setLong(1, fromSeq);
+		pstmt.setLong(2, toSeq);
+		try (ResultSet rs = pstmt.executeQuery()) {
+			while (rs.next()) {
+				tombstones.add(new Tombstone(rs.getString(1), rs.getInt(2), rs.getInt(3), rs.getInt(4), rs.getLong(5)));
+			}
+		}
+		return tombstones;
+	}
+
+	/**
+	 * Records deletions made in another DB, then deletes every snitch not seen since it was deleted,
+	 * including snitches just imported from a DB that had not learned of the deletion yet.
+	 *
+	 * @return false if nothing was written because of an error
+	 */
+	synchronized
+	public boolean applyTombstones(List<Tombstone> tombstones) {
+		if (conn == null) return false;
+		try {
+			conn.setAutoCommit(false);
+			try {
+				bumpChangeCounter();
+				PreparedStatement upsert = prepare(sqlUpsertTombstone);
+				for (Tombstone tombstone : tombstones) {
+					int i = 0;
+					upsert.setString(++i, tombstone.world());
+					upsert.setInt(++i, tombstone.x());
+					upsert.setInt(++i, tombstone.y());
+					upsert.setInt(++i, tombstone.z());
+					upsert.setLong(++i, tombstone.deletedTs());
+					upsert.addBatch();
+				}
+				upsert.executeBatch();
+				prepare(sqlDeleteTombstoned).executeUpdate();
+				conn.commit();
+			} catch (SQLException e) {
+				for (PreparedStatement pstmt : statements.values()) pstmt.clearBatch();
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(true);
+			}
+			return true;
+		} catch (SQLException e) {
+			System.err.printf("Failed applying %d deletions\n", tombstones.size());
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	private void createSpatialIndex() {
+		if (conn == null) return;
+		try (Statement stmt = conn.createStatement()) {
+			boolean exists;
+			try (ResultSet rs = stmt.executeQuery(
+				"SELECT 1 FROM sqlite_master WHERE name = '" + tableSnitchesSpatial + "'")) {
+				exists = rs.next();
+			}
+			if (!exists) {
+				conn.setAutoCommit(false);
+				try {
+					stmt.execute("CREATE VIRTUAL TABLE " + tableSnitchesSpatial +
+						" USING rtree(id, min_x, max_x, min_y, max_y, min_z, max_z)");
+					stmt.execute("INSERT INTO " + tableSnitchesSpatial +
+						" SELECT rowid, " + fieldBoundsOf("") + " FROM " + tableSnitches);
+					conn.commit();
+				} catch (SQLException e) {
+					conn.rollback();
+					throw e;
+				} finally {
+					conn.setAutoCommit(true);
+				}
+			}
+			// upserts keep the rowid and never move a snitch, so inserts and deletes are all that need mirroring
+			stmt.execute("CREATE TRIGGER IF NOT EXISTS " + tableSnitchesSpatial + "_insert" +
+				" AFTER INSERT ON " + tableSnitches + " BEGIN" +
+				" INSERT INTO " + tableSnitchesSpatial + " VALUES (new.rowid, " + fieldBoundsOf("new.") + ");" +
+				" END");
+			stmt.execute("CREATE TRIGGER IF NOT EXISTS " + tableSnitchesSpatial + "_delete" +
+				" AFTER DELETE ON " + tableSnitches + " BEGIN" +
+				" DELETE FROM " + tableSnitchesSpatial + " WHERE id = old.rowid;" +
+				" END");
+			hasSpatialIndex = true;
+		} catch (SQLException e) {
+			System.err.println("No spatial index for " + server + ", region queries will scan all snitches");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Not a migration, like the R*Tree: the DB must stay usable with SQLite builds that lack FTS5.
+	 */
+	private void createSearchIndex() {
+		if (conn == null) return;
+		try (Statement stmt = conn.createStatement()) {
+			boolean exists;
+			try (ResultSet rs = stmt.executeQuery(
+				"SELECT 1 FROM sqlite_master WHERE name = '" + tableSnitchesSearch + "'")) {
+				exists = rs.next();
+			}
+			if (exists) {
+				hasSearchIndex = true;
+				return;
+			}
+			long startMs = System.currentTimeMillis();
+			conn.setAutoCommit(false);
+			try {
+				stmt.execute("CREATE VIRTUAL TABLE " + tableSnitchesSearch +
+					" USING fts5(" + columnsSearch + ", content='" + tableSnitches + "', content_rowid='id')");
+				stmt.execute("INSERT INTO " + tableSnitchesSearch + " (" + tableSnitchesSearch + ") VALUES ('rebuild')");
+				// created together with the table: a write between the two would leave the index out of sync for good
+				stmt.execute("CREATE TRIGGER " + tableSnitchesSearch + "_insert" +
+					" AFTER INSERT ON " + tableSnitches + " BEGIN " + searchInsertOf("new.") + " END");
+				stmt.execute("CREATE TRIGGER " + tableSnitchesSearch + "_delete" +
+					" AFTER DELETE ON " + tableSnitches + " BEGIN " + searchDeleteOf("old.") + " END");
+				stmt.execute("CREATE TRIGGER " + tableSnitchesSearch + "_update" +
+					" AFTER UPDATE OF " + columnsSearch + " ON " + tableSnitches +
+					// full upserts set every column, but rarely change the text
+					" WHEN new.name IS NOT old.name OR new.group_name IS NOT old.group_name OR new.notes IS NOT old.notes" +
+					" BEGIN " + searchDeleteOf("old.") + " " + searchInsertOf("new.") + " END");
+				conn.commit();
+			} catch (SQLException e) {
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(true);
+			}
+			hasSearchIndex = true;
+			System.out.println("[SnitchMod] Built search index for " + server
+				+ " in " + (System.currentTimeMillis() - startMs) + "ms");
+		} catch (SQLException e) {
+			System.err.println("No search index for " + server + ", searches will scan all snitches");
+			e.printStackTrace();
+		}
+	}
+
+	private static String searchInsertOf(String row) {
+		return "INSERT INTO " + tableSnitchesSearch + " (rowid, " + columnsSearch + ")" +
+			" VALUES (" + row + "id, " + row + "name, " + row + "group_name, " + row + "notes);";
+	}
+
+	/**
+	 * An external content FTS5 table can only remove a row given the exact values it was indexed with.
+	 */
+	private static String searchDeleteOf(String row) {
+		return "INSERT INTO " + tableSnitchesSearch + " (" + tableSnitchesSearch + ", rowid, " + columnsSearch + ")" +
+			" VALUES ('delete', " + row + "id, " + row + "name, " + row + "group_name, " + row + "notes);";
+	}
+
+	/**
+	 * Snitches in `world` whose detection field intersects the box, given in inclusive block coordinates.
+	 */
+	synchronized
+	public List<Snitch> selectSnitchesInBox(
+		String world,
+		int minX, int minY, int minZ,
+		int maxX, int maxY, int maxZ
+	) {
+		List<Snitch> snitches = new ArrayList<>();
+		if (conn == null) return snitches;
+		try {
+			PreparedStatement pstmt = prepare(hasSpatialIndex ? sqlSelectSnitchesInBox : sqlSelectSnitchesInBoxScan);
+			int i = 0;
+			pstmt.setInt(++i, minX);
+			pstmt.setInt(++i, maxX);
+			pstmt.setInt(++i, minY);
+			pstmt.setInt(++i, maxY);
+			pstmt.setInt(++i, minZ);
+			pstmt.setInt(++i, maxZ);
+			pstmt.setString(++i, world);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					snitches.add(snitchFromRow(rs));
+				}
+			}
+		} catch (SQLException e) {
+			System.err.println("Failed loading snitches in box");
+			e.printStackTrace();
+		}
+		return snitches;
+	}
+
+	/**
+	 * Snitches in `world` whose block is at most `radius` blocks from x,y,z.
+	 */
+	synchronized
+	public List<Snitch> selectSnitchesNear(String world, int x, int y, int z, int radius) {
+		// the R*Tree holds field bounds, so widen the box by the field range to match the snitch blocks
+		int r = radius + Snitch.RANGE;
+		List<Snitch> snitches = selectSnitchesInBox(world, x - r, y - r, z - r, x + r, y + r, z + r);
+		long radiusSqr = (long) radius * radius;
+		snitches.removeIf(snitch -> snitch.pos.distSqr(x, y, z) > radiusSqr);
+		return snitches;
+	}
+
+	synchronized
+	public Collection<Snitch> selectAllSnitches() {
+		final ArrayList<Snitch> snitches = new ArrayList<>(1000);
+		try (ResultSet rs = prepare(sqlSelectAllSnitches).executeQuery()) {
+			while (rs.next()) {
+				snitches.add(snitchFromRow(rs));
+			}
+		} catch (SQLException e) {
+			System.err.println("Failed loading all snitches");
+			e.printStackTrace();
+		}
+		return snitches;
+	}
+
+	synchronized
+	public @Nullable Snitch selectSnitch(WorldPos pos) {
+		if (conn == null) return null;
+		try {
+			PreparedStatement pstmt = prepare(sqlSelectSnitch);
+			int i = 0;
+			pstmt.setString(++i, pos.getWorld());
+			pstmt.setInt(++i, pos.getX());
+			pstmt.setInt(++i, pos.getY());
+			pstmt.setInt(++i, pos.getZ());
+			try (ResultSet rs = pstmt.executeQuery()) {
+				if (rs.next()) return snitchFromRow(rs);
+			}
+		} catch (SQLException e) {
+			System.err.println("Failed loading snitch at " + pos);
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * Snitches in `world` whose block lies in the given x,z range, bounds inclusive, at any height.
+	 */
+	synchronized
+	public List<Snitch> selectSnitchesInRegion(String world, int minX, int minZ, int maxX, int maxZ) {
+		List<Snitch> snitches = new ArrayList<>();
+		if (conn == null) return snitches;
+		try {
+			PreparedStatement pstmt = prepare(sqlSelectSnitchesInRegion);
+			int i = 0;
+			pstmt.setString(++i, world);
+			pstmt.setInt(++i, minX);
+			pstmt.setInt(++i, maxX);
+			pstmt.setInt(++i, minZ);
+			pstmt.setInt(++i, maxZ);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					snitches.add(snitchFromRow(rs));
+				}
+			}
+		} catch (SQLException e) {
+			System.err.println("Failed loading snitches in region");
+			e.printStackTrace();
+		}
+		return snitches;
+	}
+
+	/**
+	 * All snitches reinforced to `group`, in any world. Uses the group_name index.
+	 */
+	synchronized
+	public List<Snitch> selectSnitchesInGroup(String group) {
+		return selectSnitchesWhere(sqlSelectSnitchesInGroup, "in group " + group, pstmt -> {
+			pstmt.setString(1, group);
+			return 1;
+		});
+	}
+
+	/**
+	 * Snitches in `world` with `tag`, via {@link #tableTags} instead of scanning all snitches' tags.
+	 */
+	synchronized
+	public List<Snitch> selectSnitchesWithTag(String world, String tag) {
+		return selectSnitchesWhere(sqlSelectSnitchesWithTag, "with tag " + tag, pstmt -> {
+			pstmt.setString(1, tag);
+			pstmt.setString(2, world);
+			return 2;
+		});
+	}
+
+	/**
+	 * Snitches whose name, group, or notes have a word starting with each word in `text`,
+	 * those in `world` first, nearest to x,z first.
+	 * Without FTS5, those with `text` anywhere in their name, group, or notes instead.
+	 *
+	 * @param offset how many results to skip, for paging
+	 */
+	synchronized
+	public List<Snitch> searchSnitches(String text, String world, int x, int z, int offset, int limit) {
+		List<Snitch> snitches = new ArrayList<>();
+		if (conn == null) return snitches;
+		String[] params;
+		if (hasSearchIndex) {
+			String match = matchQueryOf(text);
+			if (match == null) return snitches;
+			params = new String[]{match};
+		} else {
+			String pattern = "%" + text.strip().replaceAll("([\\\\%_])", "\\\\$1") + "%";
+			params = new String[]{pattern, pattern, pattern};
+		}
+		try {
+			// `found` counts the matches before the ring, including the skipped ones
+			int found = 0;
+			int wanted = offset + limit;
+			long inWorld = -1;
+			PreparedStatement pstmt = prepare(hasSearchIndex ? sqlSearchSnitchesInRing : sqlSearchSnitchesInRingScan);
+			for (long inner = 0, outer = FIRST_RING_RADIUS; found < wanted; inner = outer, outer *= 2) {
+				int i = bindRing(pstmt, 0, world, x, z, inner, outer);
+				i = bindStrings(pstmt, i, params);
+				i = bindDistance(pstmt, i, x, z);
+				pstmt.setInt(++i, wanted - found);
+				try (ResultSet rs = pstmt.executeQuery()) {
+					while (rs.next()) {
+						if (found++ >= offset) snitches.add(snitchFromRow(rs));
+					}
+				}
+				if (outer >= MAX_RING_RADIUS) break;
+				// only counted once needed, as a page close to the player usually fills up in the first rings
+				if (inWorld < 0 && found < wanted) inWorld = countSearchMatches(world, params);
+				if (found >= inWorld) break;
+			}
+			if (found < wanted) {
+				// all matches in `world` were found
+				pstmt = prepare(hasSearchIndex ? sqlSearchSnitchesNotInWorld : sqlSearchSnitchesNotInWorldScan);
+				int skip = Math.max(0, offset - found);
+				pstmt.setString(1, world);
+				int i = bindStrings(pstmt, 1, params);
+				i = bindDistance(pstmt, i, x, z);
+				pstmt.setInt(++i, wanted - found - skip);
+				pstmt.setInt(++i, skip);
+				try (ResultSet rs = pstmt.executeQuery()) {
+					while (rs.next()) {
+						snitches.add(snitchFromRow(rs));
+					}
+				}
+			}
+		} catch (SQLException e) {
+			System.err.println("Failed loading snitches matching " + text);
+			e.printStackTrace();
+		}
+		return snitches;
+	}
+
+	private long countSearchMatches(String world, String[] params) throws SQLException {
+		PreparedStatement pstmt = prepare(hasSearchIndex ? sqlCountSearchMatches : sqlCountSearchMatchesScan);
+		pstmt.setString(1, world);
+		bindStrings(pstmt, 1, params);
+		try (ResultSet rs = pstmt.executeQuery()) {
+			return rs.next() ? rs.getLong(1) : 0;
+		}
+	}
+
+	/**
+	 * Binds `world` and the snitches in it whose horizontal distance to x,z is above `inner` and at most `outer`,
+	 * or any distance from 0 for the first ring, and any distance at all up to the last ring of {@link #MAX_RING_RADIUS}.
+	 *
+	 * @return the last parameter index used
+	 */
+	private static int bindRing(PreparedStatement pstmt, int i, String world, int x, int z, long inner, long outer) throws SQLException {
+		pstmt.setString(++i, world);
+		pstmt.setLong(++i, x - outer);
+		pstmt.setLong(++i, x + outer);
+		pstmt.setLong(++i, z - outer);
+		pstmt.setLong(++i, z + outer);
+		i = bindDistance(pstmt, i, x, z);
+		pstmt.setLong(++i, inner == 0 ? 0 : inner * inner + 1);
+		pstmt.setLong(++i, outer >= MAX_RING_RADIUS ? Long.MAX_VALUE : outer * outer);
+		return i;
+	}
+
+	private static int bindDistance(PreparedStatement pstmt, int i, int x, int z) throws SQLException {
+		pstmt.setInt(++i, x);
+		pstmt.setInt(++i, x);
+		pstmt.setInt(++i, z);
+		pstmt.setInt(++i, z);
+		return i;
+	}
+
+	private static int bindStrings(PreparedStatement pstmt, int i, String[] params) throws SQLException {
+		for (String param : params) pstmt.setString(++i, param);
+		return i;
+	}
+
+	/**
+	 * Quotes each word of the user's text, so FTS5 query syntax in it is matched literally, and makes it a prefix.
+	 *
+	 * @return null if `text` has no words
+	 */
+	static @Nullable String matchQueryOf(String text) {
+		StringBuilder match = new StringBuilder();
+		for (String word : text.strip().split("\\s+")) {
+			if (word.isEmpty()) continue;
+			if (!match.isEmpty()) match.append(' ');
+			match.append('"').append(word.replace("\"", "\"\"")).append("\"*");
+		}
+		return match.isEmpty() ? null : match.toString();
+	}
+
+	/**
+	 * How many snitches have each tag, in all worlds.
+	 */
+	synchronized
+	public Map<String, Integer> selectTagCounts() {
+		Map<String, Integer> counts = new TreeMap<>();
+		if (conn == null) return counts;
+		try (ResultSet rs = prepare(sqlSelectTagCounts).executeQuery()) {
+			while (rs.next()) {
+				counts.put(rs.getString(1), rs.getInt(2));
+			}
+		} catch (SQLException e) {
+			System.err.println("Failed counting snitch tags");
+			e.printStackTrace();
+		}
+		return counts;
+	}
+
+	/**
+	 * Snitches that go dormant or get culled between the two timestamps, inclusive,
+	 * e.g. to list those needing a refresh soon. Uses the dormant_ts and cull_ts indexes.
+	 */
+	synchronized
+	public List<Snitch> selectSnitchesExpiringBetween(long fromTs, long toTs) {
+		return selectSnitchesWhere(sqlSelectSnitchesExpiringBetween, "expiring", pstmt -> {
+			int i = 0;
+			pstmt.setLong(++i, fromTs);
+			pstmt.setLong(++i, toTs);
+			pstmt.setLong(++i, fromTs);
+			pstmt.setLong(++i, toTs);
+			return i;
+		});
+	}
+
+	/**
+	 * Snitches that were last seen before `ts`, or never. Uses the last_seen_ts index.
+	 */
+	synchronized
+	public List<Snitch> selectSnitchesNotSeenSince(long ts) {
+		return selectSnitchesWhere(sqlSelectSnitchesNotSeenSince, "not seen since " + ts, pstmt -> {
+			pstmt.setLong(1, ts);
+			return 1;
+		});
+	}
+
+	private List<Snitch> selectSnitchesWhere(String sql, String description, ParamBinder binder) {
+		List<Snitch> snitches = new ArrayList<>();
+		if (conn == null) return snitches;
+		try {
+			PreparedStatement pstmt = prepare(sql);
+			binder.bind(pstmt);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					snitches.add(snitchFromRow(rs));
+				}
+			}
+		} catch (SQLException e) {
+			System.err.println("Failed loading snitches " + description);
+			e.printStackTrace();
+		}
+		return snitches;
+	}
+
+	/**
+	 * Streams all snitches to `consumer` in chunks of `chunkSize`,
+	 * those in `world` first, nearest to x,z first: ring by ring around it,
+	 * and within a ring in the order the index yields them.
+	 * Snitches in other worlds, and all of them if `world` is null, come in table order.
+	 * Stops early when `consumer` returns false.
+	 *
+	 * @return false if loading failed part way; chunks passed before that stay valid
+	 */
+	synchronized
+	public boolean selectSnitchesNearestFirst(
+		@Nullable String world, int x, int z,
+		int chunkSize,
+		Predicate<List<Snitch>> consumer
+	) {
+		try {
+			if (world == null) {
+				streamSnitches(prepare(sqlSelectAllSnitches), chunkSize, consumer);
+				return true;
+			}
+			PreparedStatement pstmt = prepare(sqlCountSnitchesInWorld);
+			pstmt.setString(1, world);
+			long inWorld;
+			try (ResultSet rs = pstmt.executeQuery()) {
+				inWorld = rs.next() ? rs.getLong(1) : 0;
+			}
+			long[] loaded = {0};
+			Predicate<List<Snitch>> counting = chunk -> {
+				loaded[0] += chunk.size();
+				return consumer.test(chunk);
+			};
+			pstmt = prepare(hasSpatialIndex ? sqlSelectSnitchesInRing : sqlSelectSnitchesInRingScan);
+			for (long inner = 0, outer = FIRST_RING_RADIUS; loaded[0] < inWorld; inner = outer, outer *= 2) {
+				int i = 0;
+				if (hasSpatialIndex) {
+					pstmt.setLong(++i, x - outer);
+					pstmt.setLong(++i, x + outer);
+					pstmt.setLong(++i, z - outer);
+					pstmt.setLong(++i, z + outer);
+				}
+				bindRing(pstmt, i, world, x, z, inner, outer);
+				if (!streamSnitches(pstmt, chunkSize, counting)) return true;
+				if (outer >= MAX_RING_RADIUS) break;
+			}
+			pstmt = prepare(sqlSelectSnitchesNotInWorld);
+			pstmt.setString(1, world);
+			streamSnitches(pstmt, chunkSize, consumer);
+			return true;
+		} catch (SQLException e) {
+			System.err.println("Failed loading snitches");
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * @return false if `consumer` stopped it early
+	 */
+	private boolean streamSnitches(PreparedStatement pstmt, int chunkSize, Predicate<List<Snitch>> consumer) throws SQLException {
+		try (ResultSet rs = pstmt.executeQuery()) {
+			List<Snitch> chunk = new ArrayList<>(chunkSize);
+			while (rs.next()) {
+				chunk.add(snitchFromRow(rs));
+				if (chunk.size() >= chunkSize) {
+					if (!consumer.test(chunk)) return false;
+					chunk = new ArrayList<>(chunkSize);
+				}
+			}
+			return chunk.isEmpty() || consumer.test(chunk);
+		}
+	}
+
+	/**
+	 * Streams all rows in table order to `consumer` in chunks of `chunkSize`, as they are stored,
+	 * in {@link SnitchTransfer#COLUMNS} order. Builds no {@link Snitch}es, for exporting.
+	 * Stops early when `consumer` returns false.
+	 *
+	 * @return false if loading failed part way; chunks passed before that stay valid
+	 */
+	synchronized
+	public boolean selectAllRows(int chunkSize, Predicate<List<Object[]>> consumer) {
+		try {
+			streamRows(prepare(sqlSelectAllRows), chunkSize, consumer);
+			return true;
+		} catch (SQLException e) {
+			System.err.println("Failed loading snitches");
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	private void streamRows(PreparedStatement pstmt, int chunkSize, Predicate<List<Object[]>> consumer) throws SQLException {
+		try (ResultSet rs = pstmt.executeQuery()) {
+			int columns = rs.getMetaData().getColumnCount();
+			List<Object[]> chunk = new ArrayList<>(chunkSize);
+			while (rs.next()) {
+				Object[] values = new Object[columns];
+				for (int i = 0; i < columns; i++) values[i] = rs.getObject(i + 1);
+				chunk.add(values);
+				if (chunk.size() >= chunkSize) {
+					if (!consumer.test(chunk)) return;
+					chunk = new ArrayList<>(chunkSize);
+				}
+			}
+			if (!chunk.isEmpty()) consumer.test(chunk);
+		}
+	}
+
+	private Snitch snitchFromRow(ResultSet rs) throws SQLException {
+		return new Snitch(
+			server,
+			rs.getString("world"),
+			rs.getInt("x"),
+			rs.getInt("y"),
+			rs.getInt("z"),
+			rs.getString("group_name"),
+			rs.getString("type"),
+			rs.getString("name"),
+			rs.getLong("dormant_ts"),
+			rs.getLong("cull_ts"),
+			rs.getLong("first_seen_ts"),
+			rs.getLong("last_seen_ts"),
+			rs.getLong("created_ts"),
+			rs.getString("created_by_uuid"),
+			rs.getLong("renamed_ts"),
+			rs.getString("renamed_by_uuid"),
+			rs.getLong("lost_jalist_access_ts"),
+			rs.getLong("broken_ts"),
+			rs.getLong("gone_ts"),
+			rs.getString("tags"),
+			rs.getString("notes")
+		);
+	}
+
+	synchronized
+	public void upsertSnitch(Snitch snitch) {
+		upsertSnitches(Collections.singletonList(snitch));
+	}
+
+	/**
+	 * @return false if nothing was written because of an error
+	 */
+	synchronized
+	public boolean upsertSnitches(List<Snitch> snitches) {
+		return upsertSnitches(sqlUpsertSnitch, snitches);
+	}
+
+	/**
+	 * Writes snitches from another DB, e.g. one shared by a friend, in one transaction.
+	 * Takes rows in {@link SnitchTransfer#COLUMNS} order, checked by {@link SnitchTransfer#rowOf},
+	 * so importing a file never builds {@link Snitch}es.
+	 *
+	 * @return false if nothing was written because of an error
+	 */
+	synchronized
+	public boolean importRows(List<Object[]> rows, MergePolicy policy) {
+		return writeBatch(sqlImportOf(policy), rows.size(), upsert -> addRowsToBatch(upsert, rows));
+	}
+
+	private static String sqlImportOf(MergePolicy policy) {
+		return switch (policy) {
+			case NEWEST -> sqlImportNewest;
+			case KEEP_LOCAL -> sqlImportKeepLocal;
+			case OVERWRITE -> sqlUpsertSnitch;
+		};
+	}
+
+	private static String ifSeenLater(String column) {
+		return "CASE WHEN excluded.last_seen_ts > last_seen_ts THEN excluded." + column + " ELSE " + column + " END";
+	}
+
+	private interface BatchAdder {
+		void addTo(PreparedStatement pstmt) throws SQLException;
+	}
+
+	private boolean upsertSnitches(String sql, List<Snitch> snitches) {
+		return writeBatch(sql, snitches.size(), upsert -> addSnitchesToBatch(upsert, snitches));
+	}
+
+	/**
+	 * Runs the statements `adder` adds to `sql` as one batch, in one transaction.
+	 */
+	private boolean writeBatch(String sql, int count, BatchAdder adder) {
+		if (conn == null) return false;
+		if (count == 0) return true;
+
+		try {
+			// one transaction per call: each commit costs a journal sync, so fewer, larger batches are cheaper
+			PreparedStatement upsert = prepare(sql);
+			conn.setAutoCommit(false);
+			try {
+				bumpChangeCounter();
+				adder.addTo(upsert);
+				upsert.executeBatch();
+				refreshTags();
+				conn.commit();
+			} catch (SQLException e) {
+				// the statement is reused, don't leave half a batch in it
+				upsert.clearBatch();
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(true);
+			}
+			return true;
+		} catch (SQLException e) {
+			System.err.printf("Failed updating %d snitches\n", count);
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Writes only what changed since each snitch was last written, see {@link Snitch#getDirtyFields}:
+	 * snitches with the same changed fields share one batched UPDATE of just those columns.
+	 * Snitches that were never written, or whose row turns out to be missing, get a full upsert.
+	 *
+	 * @return false if nothing was written because of an error
+	 */
+	synchronized
+	public boolean writeSnitches(List<Snitch> snitches) {
+		if (conn == null) return false;
+		List<Snitch> full = new ArrayList<>();
+		HashMap<Integer, List<Snitch>> partialByFields = new HashMap<>();
+		for (Snitch snitch : snitches) {
+			int fields = snitch.getDirtyFields();
+			if (fields == 0) continue;
+			if (fields == Snitch.DIRTY_ALL) {
+				full.add(snitch);
+			} else {
+				partialByFields.computeIfAbsent(fields, f -> new ArrayList<>()).add(snitch);
+			}
+		}
+		if (full.isEmpty() && partialByFields.isEmpty()) return true;
+
+		try {
+			conn.setAutoCommit(false);
+			try {
+				bumpChangeCounter();
+				for (Map.Entry<Integer, List<Snitch>> entry : partialByFields.entrySet()) {
+					int fields = entry.getKey();
+					List<Snitch> partial = entry.getValue();
+					PreparedStatement update = prepare(sqlUpdateFields(fields));
+					for (Snitch snitch : partial) {
+						int i = bindFields(update, 0, snitch, fields);
+						update.setString(++i, snitch.pos.getWorld());
+						update.setInt(++i, snitch.pos.getX());
+						update.setInt(++i, snitch.pos.getY());
+						update.setInt(++i, snitch.pos.getZ());
+						update.addBatch();
+					}
+					int[] counts = update.executeBatch();
+					for (int i = 0; i < counts.length; i++) {
+						// e.g. the row was deleted in another client session; write it whole
+						if (counts[i] == 0) full.add(partial.get(i));
+					}
+				}
+				if (!full.isEmpty()) {
+					PreparedStatement upsert = prepare(sqlUpsertSnitch);
+					addSnitchesToBatch(upsert, full);
+					upsert.executeBatch();
+				}
+				refreshTags();
+				conn.commit();
+			} catch (SQLException e) {
+				// statements are reused, don't leave half a batch in them
+				for (PreparedStatement pstmt : statements.values()) pstmt.clearBatch();
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(true);
+			}
+			return true;
+		} catch (SQLException e) {
+			System.err.printf("Failed updating %d snitches\n", snitches.size());
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	private static String sqlUpdateFields(int fields) {
+		StringBuilder sql = new StringBuilder("UPDATE " + tableSnitches + " SET ");
+		String separator = "";
+		for (int field = 1; field <= fields; field <<= 1) {
+			if ((fields & field) == 0) continue;
+			for (String column : columnsForField(field)) {
+				sql.append(separator).append(column).append(" = ?");
+				separator = ", ";
+			}
+		}
+		return sql.append(", change_seq = ").append(sqlCurrentSeq).append(whereSnitchPos).toString();
+	}
+
+	private static String[] columnsForField(int field) {
+		return switch (field) {
+			case Snitch.DIRTY_GROUP -> new String[]{"group_name"};
+			case Snitch.DIRTY_TYPE -> new String[]{"type"};
+			case Snitch.DIRTY_NAME -> new String[]{"name"};
+			case Snitch.DIRTY_DORMANT -> new String[]{"dormant_ts"};
+			case Snitch.DIRTY_CULL -> new String[]{"cull_ts"};
+			case Snitch.DIRTY_FIRST_SEEN -> new String[]{"first_seen_ts"};
+			case Snitch.DIRTY_LAST_SEEN -> new String[]{"last_seen_ts"};
+			case Snitch.DIRTY_CREATED -> new String[]{"created_ts", "created_by_uuid"};
+			case Snitch.DIRTY_RENAMED -> new String[]{"renamed_ts", "renamed_by_uuid"};
+			case Snitch.DIRTY_LOST_JALIST_ACCESS -> new String[]{"lost_jalist_access_ts"};
+			case Snitch.DIRTY_BROKEN -> new String[]{"broken_ts"};
+			case Snitch.DIRTY_GONE -> new String[]{"gone_ts"};
+			case Snitch.DIRTY_TAGS -> new String[]{"tags"};
+			case Snitch.DIRTY_NOTES -> new String[]{"notes"};
+			default -> throw new IllegalArgumentException("Unknown snitch field " + field);
+		};
+	}
+
+	/**
+	 * Binds the columns of {@link #sqlUpdateFields}, in the same order.
+	 *
+	 * @return the last parameter index used
+	 */
+	private static int bindFields(PreparedStatement pstmt, int i, Snitch snitch, int fields) throws SQLException {
+		for (int field = 1; field <= fields; field <<= 1) {
+			if ((fields & field) == 0) continue;
+			switch (field) {
+				case Snitch.DIRTY_GROUP -> pstmt.setString(++i, snitch.getGroup());
+				case Snitch.DIRTY_TYPE -> pstmt.setString(++i, snitch.getType() != null ? snitch.getType().dbRepresentation : null);
+				case Snitch.DIRTY_NAME -> pstmt.setString(++i, snitch.getName());
+				case Snitch.DIRTY_DORMANT -> pstmt.setLong(++i, snitch.getDormantTs());
+				case Snitch.DIRTY_CULL -> pstmt.setLong(++i, snitch.getCullTs());
+				case Snitch.DIRTY_FIRST_SEEN -> pstmt.setLong(++i, snitch.getFirstSeenTs());
+				case Snitch.DIRTY_LAST_SEEN -> pstmt.setLong(++i, snitch.getLastSeenTs());
+				case Snitch.DIRTY_CREATED -> {
+					pstmt.setLong(++i, snitch.getCreatedTs());
+					pstmt.setString(++i, uuidStringOrNull(snitch.getCreatedByUuid()));
+				}
+				case Snitch.DIRTY_RENAMED -> {
+					pstmt.setLong(++i, snitch.getRenamedTs());
+					pstmt.setString(++i, uuidStringOrNull(snitch.getRenamedByUuid()));
+				}
+				case Snitch.DIRTY_LOST_JALIST_ACCESS -> pstmt.setLong(++i, snitch.getLostJalistAccessTs());
+				case Snitch.DIRTY_BROKEN -> pstmt.setLong(++i, snitch.getBrokenTs());
+				case Snitch.DIRTY_GONE -> pstmt.setLong(++i, snitch.getGoneTs());
+				case Snitch.DIRTY_TAGS -> pstmt.setString(++i, String.join("\n", snitch.getTags()));
+				case Snitch.DIRTY_NOTES -> pstmt.setString(++i, snitch.getNotes());
+			}
+		}
+		return i;
+	}
+
+	private void loadAlertPartitions() throws SQLException {
+		String sql = "SELECT name FROM sqlite_master WHERE type = 'table' AND name LIKE '" + tableAlertsPrefix + "%'";
+		try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+			while (rs.next()) alertPartitions.add(rs.getString(1));
+		}
+	}
+
+	private static String getAlertPartition(long ts) {
+		YearMonth month = YearMonth.from(Instant.ofEpochMilli(ts).atZone(ZoneOffset.UTC));
+		return String.format("%s%04d_%02d", tableAlertsPrefix, month.getYear(), month.getMonthValue());
+	}
+
+	private static String sqlInsertAlert(String table) {
+		return "INSERT INTO " + table + " (" + columnsAlerts + ") VALUES (?,?,?,?,?,?,?,?,?)";
+	}
+
+	/**
+	 * Only add `table` to {@link #alertPartitions} once the transaction creating it committed;
+	 * a rollback undoes the CREATE TABLE.
+	 */
+	private void createAlertPartition(String table) throws SQLException {
+		try (Statement stmt = conn.createStatement()) {
+			stmt.execute("CREATE TABLE IF NOT EXISTS " + table + " " +
+				"( ts BIGINT" +
+				", world TEXT" +
+				", x INT" +
+				", y INT" +
+				", z INT" +
+				", account TEXT" +
+				", action TEXT" +
+				", snitch_name TEXT" +
+				", group_name TEXT" +
+				");");
+			stmt.execute("CREATE INDEX IF NOT EXISTS " + table + "_pos ON " + table + " (world, x, y, z, ts)");
+			stmt.execute("CREATE INDEX IF NOT EXISTS " + table + "_account ON " + table + " (account, ts)");
+		}
+	}
+
+	/**
+	 * Appends alerts to the partition of their month, in one transaction.
+	 *
+	 * @return false if nothing was written because of an error
+	 */
+	synchronized
+	public boolean insertAlerts(List<SnitchAlert> alerts) {
+		if (conn == null) return false;
+		if (alerts.isEmpty()) return true;
+		try {
+			conn.setAutoCommit(false);
+			PreparedStatement insert = null;
+			List<String> created = new ArrayList<>();
+			try {
+				String table = null;
+				for (SnitchAlert alert : alerts) {
+					String alertTable = getAlertPartition(alert.ts);
+					if (!alertTable.equals(table)) {
+						// alerts arrive in time order, so this switches at most at a month boundary
+						if (insert != null) insert.executeBatch();
+						table = alertTable;
+						if (!alertPartitions.contains(table) && !created.contains(table)) {
+							createAlertPartition(table);
+							created.add(table);
+						}
+						insert = prepare(sqlInsertAlert(table));
+					}
+					int i = 0;
+					insert.setLong(++i, alert.ts);
+					insert.setString(++i, alert.pos.getWorld());
+					insert.setInt(++i, alert.pos.getX());
+					insert.setInt(++i, alert.pos.getY());
+					insert.setInt(++i, alert.pos.getZ());
+					insert.setString(++i, alert.accountName);
+					insert.setString(++i, alert.action);
+					insert.setString(++i, alert.snitchName);
+					insert.setString(++i, alert.group);
+					insert.addBatch();
+				}
+				insert.executeBatch();
+				conn.commit();
+				alertPartitions.addAll(created);
+			} catch (SQLException e) {
+				if (insert != null) insert.clearBatch();
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(true);
+			}
+			return true;
+		} catch (SQLException e) {
+			System.err.printf("Failed inserting %d alerts\n", alerts.size());
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Drops the partitions of all months that ended before `ts`.
+	 *
+	 * @return how many monthly partitions were dropped
+	 */
+	synchronized
+	public int dropAlertPartitionsBefore(long ts) {
+		if (conn == null) return 0;
+		String keepFrom = getAlertPartition(ts);
+		List<String> old = new ArrayList<>(alertPartitions.headSet(keepFrom));
+		for (String table : old) {
+			try (Statement stmt = conn.createStatement()) {
+				// statements prepared on a dropped table would fail
+				Iterator<Map.Entry<String, PreparedStatement>> it = statements.entrySet().iterator();
+				while (it.hasNext()) {
+					Map.Entry<String, PreparedStatement> entry = it.next();
+					if (!entry.getKey().contains(" " + table + " ")) continue;
+					entry.getValue().close();
+					it.remove();
+				}
+				stmt.execute("DROP TABLE IF EXISTS " + table);
+				alertPartitions.remove(table);
+			} catch (SQLException e) {
+				System.err.println("Failed dropping alert partition " + table);
+				e.printStackTrace();
+			}
+		}
+		return old.size();
+	}
+
+	/**
+	 * Most recent alerts of the snitch at `pos`, newest first.
+	 */
+	synchronized
+	public List<SnitchAlert> selectAlertsAt(WorldPos pos, int limit) {
+		return selectAlertsNewestFirst("world = ? AND x = ? AND y = ? AND z = ?", limit, pstmt -> {
+			int i = 0;
+			pstmt.setString(++i, pos.getWorld());
+			pstmt.setInt(++i, pos.getX());
+			pstmt.setInt(++i, pos.getY());
+			pstmt.setInt(++i, pos.getZ());
+			return i;
+		});
+	}
+
+	/**
+	 * Most recent alerts caused by `account`, newest first.
+	 */
+	synchronized
+	public List<SnitchAlert> selectAlertsByAccount(String account, int limit) {
+		return selectAlertsNewestFirst("account = ?", limit, pstmt -> {
+			pstmt.setString(1, account);
+			return 1;
+		});
+	}
+
+	private interface ParamBinder {
+		/**
+		 * @return the last parameter index used
+		 */
+		int bind(PreparedStatement pstmt) throws SQLException;
+	}
+
+	/**
+	 * Queries partitions from the newest month backwards until `limit` alerts are found.
+	 */
+	private List<SnitchAlert> selectAlertsNewestFirst(String where, int limit, ParamBinder binder) {
+		List<SnitchAlert> alerts = new ArrayList<>();
+		if (conn == null) return alerts;
+		for (String table : alertPartitions.descendingSet()) {
+			if (alerts.size() >= limit) break;
+			String sql = "SELECT " + columnsAlerts + " FROM " + table + " WHERE " + where + " ORDER BY ts DESC LIMIT ?";
+			try {
+				PreparedStatement pstmt = prepare(sql);
+				int i = binder.bind(pstmt);
+				pstmt.setInt(++i, limit - alerts.size());
+				try (ResultSet rs = pstmt.executeQuery()) {
+					while (rs.next()) {
+						alerts.add(new SnitchAlert(
+							rs.getLong("ts"),
+							new WorldPos(server, rs.getString("world"), rs.getInt("x"), rs.getInt("y"), rs.getInt("z")),
+							rs.getString("action"),
+							rs.getString("account"),
+							rs.getString("snitch_name"),
+							rs.getString("group_name")));
+					}
+				}
+			} catch (SQLException e) {
+				System.err.println("Failed loading alerts from " + table);
+				e.printStackTrace();
+			}
+		}
+		return alerts;
+	}
+
+	private static void addSnitchesToBatch(PreparedStatement pstmt, List<Snitch> snitches) throws SQLException {
+		for (Snitch snitch : snitches) {
+			String type = null;
+			if (snitch.getType() != null) {
+				type = snitch.getType().dbRepresentation;
+			}
+			try {
+				int i = 0;
+				pstmt.setString(++i, snitch.pos.getWorld());
+				pstmt.setInt(++i, snitch.pos.getX());
+				pstmt.setInt(++i, snitch.pos.getY());
+				pstmt.setInt(++i, snitch.pos.getZ());
+				pstmt.setString(++i, snitch.getGroup());
+				pstmt.setString(++i, type);
+				pstmt.setString(++i, snitch.getName());
+				pstmt.setLong(++i, snitch.getDormantTs());
+				pstmt.setLong(++i, snitch.getCullTs());
+				pstmt.setLong(++i, snitch.getFirstSeenTs());
+				pstmt.setLong(++i, snitch.getLastSeenTs());
+				pstmt.setLong(++i, snitch.getCreatedTs());
+				pstmt.setString(++i, uuidStringOrNull(snitch.getCreatedByUuid()));
+				pstmt.setLong(++i, snitch.getRenamedTs());
+				pstmt.setString(++i, uuidStringOrNull(snitch.getRenamedByUuid()));
+				pstmt.setLong(++i, snitch.getLostJalistAccessTs());
+				pstmt.setLong(++i, snitch.getBrokenTs());
+				pstmt.setLong(++i, snitch.getGoneTs());
+				pstmt.setString(++i, String.join("\n", snitch.getTags()));
+				pstmt.setString(++i, snitch.getNotes());
+
+				pstmt.addBatch();
+			} catch (SQLException e) {
+				System.err.println("Failed updating snitch " + snitch);
+				throw e;
+			}
+		}
+	}
+
+	private static void addRowsToBatch(PreparedStatement pstmt, List<Object[]> rows) throws SQLException {
+		for (Object[] values : rows) {
+			for (int i = 0; i < values.length; i++) pstmt.setObject(i + 1, values[i]);
+			pstmt.addBatch();
+		}
+	}
+
+	private static String uuidStringOrNull(UUID uuid) {
+		if (uuid == null) return null;
+		return uuid.toString();
+	}
+
+	/**
+	 * Deletes the snitches at the given positions and records the deletions for {@link SnitchSync}, in one transaction.
+	 *
+	 * @return false if nothing was deleted because of an error
+	 */
+	synchronized
+	public boolean deleteSnitches(List<Tombstone> deletions) {
+		if (conn == null) return false;
+		if (deletions.isEmpty()) return true;
+		try {
+			PreparedStatement delete = prepare(sqlDeleteSnitch);
+			PreparedStatement tombstone = prepare(sqlUpsertTombstone);
+			conn.setAutoCommit(false);
+			try {
+				bumpChangeCounter();
+				for (Tombstone deletion : deletions) {
+					int i = 0;
+					delete.setString(++i, deletion.world());
+					delete.setInt(++i, deletion.x());
+					delete.setInt(++i, deletion.y());
+					delete.setInt(++i, deletion.z());
+					delete.addBatch();
+					i = 0;
+					tombstone.setString(++i, deletion.world());
+					tombstone.setInt(++i, deletion.x());
+					tombstone.setInt(++i, deletion.y());
+					tombstone.setInt(++i, deletion.z());
+					tombstone.setLong(++i, deletion.deletedTs());
+					tombstone.addBatch();
+				}
+				delete.executeBatch();
+				tombstone.executeBatch();
+				conn.commit();
+			} catch (SQLException e) {
+				for (PreparedStatement pstmt : statements.values()) pstmt.clearBatch();
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(true);
+			}
+			return true;
+		} catch (SQLException e) {
+			System.err.println("Failed deleting " + deletions.size() + " snitches");
+			e.printStackTrace();
+			return false;
+		}
+	}
+}
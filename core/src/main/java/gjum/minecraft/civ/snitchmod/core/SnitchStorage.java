@@ -0,0 +1,102 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import gjum.minecraft.civ.snitchmod.core.model.SnitchAlert;
+import gjum.minecraft.civ.snitchmod.core.model.WorldPos;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Where a {@link SnitchesStore} keeps its snitches between sessions.
+ * Only used from the store's DB thread, see {@link SnitchDbWriter}, but implementations synchronize anyway.
+ * <p>
+ * Snitches returned by the select methods are new objects the caller may keep and update.
+ */
+public interface SnitchStorage {
+	enum Backend {
+		/**
+		 * {@link SnitchSqliteDb}, the default; the only one supporting snapshots, sync, and queries beyond these.
+		 */
+		SQLITE,
+		/**
+		 * {@link SnitchJournalStorage}: everything in memory, changes appended to a file.
+		 */
+		JOURNAL,
+		/**
+		 * {@link SnitchMemoryStorage}: nothing is saved, e.g. for benchmarks and replays.
+		 */
+		MEMORY,
+	}
+
+	/**
+	 * Deletion of the snitch at a position, at `deletedTs`.
+	 */
+	record Tombstone(String world, int x, int y, int z, long deletedTs) {
+	}
+
+	static @NotNull SnitchStorage open(@NotNull String server, @NotNull Backend backend) throws Exception {
+		return open(server, backend, SnitchSqliteDb.getDbFile(server).getParentFile());
+	}
+
+	/**
+	 * @param dir where the backend keeps its files
+	 */
+	static @NotNull SnitchStorage open(@NotNull String server, @NotNull Backend backend, @NotNull File dir) throws Exception {
+		return switch (backend) {
+			case SQLITE -> new SnitchSqliteDb(server, new File(dir, "snitches.sqlite"));
+			case JOURNAL -> new SnitchJournalStorage(server, new File(dir, "snitches.journal"));
+			case MEMORY -> new SnitchMemoryStorage(server);
+		};
+	}
+
+	/**
+	 * Streams all snitches to `consumer` in chunks of `chunkSize`,
+	 * those in `world` first, roughly nearest to x,z first.
+	 * If `world` is null, in any order instead.
+	 * Stops early when `consumer` returns false.
+	 *
+	 * @return false if loading failed part way; chunks passed before that stay valid
+	 */
+	boolean selectSnitchesNearestFirst(@Nullable String world, int x, int z, int chunkSize, Predicate<List<Snitch>> consumer);
+
+	/**
+	 * Snitches in `world` whose block lies in the given x,z range, bounds inclusive, at any height.
+	 */
+	List<Snitch> selectSnitchesInRegion(String world, int minX, int minZ, int maxX, int maxZ);
+
+	@Nullable Snitch selectSnitch(WorldPos pos);
+
+	/**
+	 * Writes the snitches' current state, all or nothing.
+	 *
+	 * @return false if nothing was written because of an error
+	 */
+	boolean writeSnitches(List<Snitch> snitches);
+
+	/**
+	 * @return false if nothing was deleted because of an error
+	 */
+	boolean deleteSnitches(List<Tombstone> deletions);
+
+	/**
+	 * Keeps nothing by default.
+	 *
+	 * @return false if nothing was written because of an error
+	 */
+	default boolean insertAlerts(List<SnitchAlert> alerts) {
+		return true;
+	}
+
+	/**
+	 * @return how many monthly partitions were dropped
+	 */
+	default int dropAlertPartitionsBefore(long ts) {
+		return 0;
+	}
+
+	void close();
+}
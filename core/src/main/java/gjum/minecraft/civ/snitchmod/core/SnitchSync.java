@@ -0,0 +1,377 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import gjum.minecraft.civ.snitchmod.core.SnitchSqliteDb.MergePolicy;
+import gjum.minecraft.civ.snitchmod.core.SnitchStorage.Tombstone;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the snitch DBs of several players in sync, by exchanging only what changed since they last synced.
+ * <p>
+ * Every DB has a random peer id, and stamps each row it writes with its change counter
+ * (see {@link SnitchSqliteDb#getChangeCounter}). A delta is the rows and deletions of one DB
+ * stamped after the counter its receiver has already seen from it, up to its current counter;
+ * the receiver then remembers that counter for that peer (see {@link SnitchSqliteDb#getReceivedSeq}).
+ * Rows are merged field by field, whichever side saw the snitch last winning, see {@link MergePolicy#NEWEST};
+ * this trusts the players' clocks. Deletions win over a snitch not seen since.
+ * <p>
+ * Merged rows get the receiver's next counter, so they are sent back once on the next sync with the sender,
+ * where they change nothing and go no further.
+ * <p>
+ * A delta that starts after the counter already received is rejected, as merging it would skip the changes in between.
+ * In a sync directory, the receiver then asks the sender for those changes, see {@link #RESYNC_EXTENSION}.
+ * <p>
+ * Delta layout, gzipped: header (magic, version, peer id, from counter, to counter),
+ * the snitches as in {@link SnitchTransfer.Format#BINARY}, then one 1 byte plus world, x, y, z, deletion time
+ * per deletion, and a 0 byte.
+ */
+public class SnitchSync {
+	private static final int MAGIC = 0x534d5359; // "SMSY"
+	private static final int VERSION = 1;
+	public static final String EXTENSION = ".smsync";
+	/**
+	 * `OWN_PEER_DIR/SENDER.resync` holds the counter a receiver has from that sender, when a file in between is missing,
+	 * e.g. deleted by the file sync service. The sender's next export then starts from there, for the receiver to catch up.
+	 */
+	public static final String RESYNC_EXTENSION = ".resync";
+	/**
+	 * Snitches per import transaction, and per chunk read from the DB.
+	 */
+	private static final int CHUNK_SIZE = 5000;
+	/**
+	 * Counter up to which this DB's changes have been written to its sync directory.
+	 */
+	private static final String metaExportedSeq = "sync_exported_seq";
+	/**
+	 * Per receiver: the counter of the last {@link #RESYNC_EXTENSION} request exported for, so it is only answered once.
+	 */
+	private static final String metaResyncAnsweredPrefix = "sync_resync_answered_";
+
+	/**
+	 * A delta starts after the counter received from its sender so far, so merging it would skip changes.
+	 * Nothing of it was merged.
+	 */
+	static class MissingChangesException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		MissingChangesException(String message) {
+			super(message);
+		}
+	}
+
+	public record Stats(long snitchesSent, long deletionsSent, long snitchesReceived, long deletionsReceived, long tookMs) {
+		@Override
+		public String toString() {
+			return String.format("sent %d snitches and %d deletions, received %d snitches and %d deletions in %dms",
+				snitchesSent, deletionsSent, snitchesReceived, deletionsReceived, tookMs);
+		}
+	}
+
+	/**
+	 * Syncs through a directory shared with the other players, e.g. by a file sync service or a network drive.
+	 * Each DB writes its changes to a file of their own in a subdirectory named after its peer id,
+	 * and reads the others' files it has not merged yet. Files are never rewritten, so partially synced ones
+	 * are only a problem until they are complete: they fail to read and are retried on the next sync.
+	 * <p>
+	 * Nothing else may write to `db` during this: its own changes are exported first,
+	 * and whatever the import then changes is known to the others already, so it is not exported again.
+	 */
+	public static @NotNull Stats syncDirectory(@NotNull SnitchSqliteDb db, @NotNull File dir) throws IOException, SQLException {
+		long startMs = System.currentTimeMillis();
+		long[] sent = exportToDirectory(db, dir);
+		long[] received = {0, 0};
+		long ownId = db.getPeerId();
+		File[] peerDirs = dir.listFiles(File::isDirectory);
+		if (peerDirs != null) {
+			for (File peerDir : peerDirs) {
+				long peerId;
+				try {
+					peerId = Long.parseUnsignedLong(peerDir.getName(), 16);
+				} catch (NumberFormatException e) {
+					continue;
+				}
+				if (peerId == ownId) continue;
+				long[] counts = importFromPeerDirectory(db, dir, peerDir, peerId);
+				received[0] += counts[0];
+				received[1] += counts[1];
+			}
+		}
+		db.setMeta(metaExportedSeq, db.getChangeCounter());
+		return new Stats(sent[0], sent[1], received[0], received[1], System.currentTimeMillis() - startMs);
+	}
+
+	/**
+	 * Writes this DB's changes since the last export to the shared directory, if any.
+	 *
+	 * @return snitches and deletions written
+	 */
+	public static @NotNull long[] exportToDirectory(@NotNull SnitchSqliteDb db, @NotNull File dir) throws IOException, SQLException {
+		long peerId = db.getPeerId();
+		long fromSeq = db.getMeta(metaExportedSeq, 0);
+		List<long[]> resyncs = findResyncRequests(db, dir, peerId);
+		for (long[] request : resyncs) fromSeq = Math.min(fromSeq, request[1]);
+		long toSeq = db.getChangeCounter();
+		if (toSeq <= fromSeq) return new long[]{0, 0};
+		File peerDir = new File(dir, hex(peerId));
+		if (!peerDir.isDirectory() && !peerDir.mkdirs()) throw new IOException("Could not create " + peerDir);
+		File file = new File(peerDir, hex(toSeq) + EXTENSION);
+		File tmp = new File(file.getPath() + ".tmp");
+		long[] sent;
+		try (OutputStream out = new FileOutputStream(tmp)) {
+			sent = writeDelta(db, out, peerId, fromSeq, toSeq);
+		}
+		if (sent[0] + sent[1] == 0) {
+			// the counter only moved for transactions that ended up changing nothing
+			Files.delete(tmp.toPath());
+		} else {
+			// for a resync, replaces the file of the last export, if nothing changed since: this one contains all of that
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		db.setMeta(metaExportedSeq, toSeq);
+		for (long[] request : resyncs) db.setMeta(metaResyncAnsweredPrefix + hex(request[0]), request[1]);
+		return sent;
+	}
+
+	/**
+	 * Other peers' {@link #RESYNC_EXTENSION} requests for this DB's changes that were not answered yet.
+	 *
+	 * @return pairs of receiver peer id and the counter it has from this DB
+	 */
+	private static @NotNull List<long[]> findResyncRequests(@NotNull SnitchSqliteDb db, @NotNull File dir, long ownId) throws SQLException {
+		List<long[]> requests = new ArrayList<>();
+		File[] peerDirs = dir.listFiles(File::isDirectory);
+		if (peerDirs == null) return requests;
+		for (File peerDir : peerDirs) {
+			File file = new File(peerDir, hex(ownId) + RESYNC_EXTENSION);
+			if (!file.isFile()) continue;
+			long receiverId;
+			long receivedSeq;
+			try {
+				receiverId = Long.parseUnsignedLong(peerDir.getName(), 16);
+				receivedSeq = Long.parseUnsignedLong(Files.readString(file.toPath()).trim(), 16);
+			} catch (IOException | NumberFormatException e) {
+				System.err.println("Ignoring unreadable resync request " + file + ": " + e);
+				continue;
+			}
+			if (db.getMeta(metaResyncAnsweredPrefix + hex(receiverId), -1) == receivedSeq) continue;
+			requests.add(new long[]{receiverId, receivedSeq});
+		}
+		return requests;
+	}
+
+	/**
+	 * Reads the files in `peerDir` newer than what has been received from that peer, oldest first,
+	 * stopping at the first that can't be read. Files that would skip changes are passed over,
+	 * as a later one may cover them; if none does, the peer is asked for them with a {@link #RESYNC_EXTENSION} request.
+	 *
+	 * @return snitches and deletions read
+	 */
+	private static @NotNull long[] importFromPeerDirectory(@NotNull SnitchSqliteDb db, @NotNull File dir, @NotNull File peerDir, long peerId) throws SQLException {
+		long[] received = {0, 0};
+		File[] files = peerDir.listFiles((d, name) -> name.endsWith(EXTENSION));
+		if (files == null) return received;
+		// names are fixed-width hex, so this is by counter
+		Arrays.sort(files);
+		long receivedSeq = db.getReceivedSeq(peerId);
+		long missingBefore = 0;
+		for (File file : files) {
+			String name = file.getName();
+			long toSeq;
+			try {
+				toSeq = Long.parseUnsignedLong(name.substring(0, name.length() - EXTENSION.length()), 16);
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			if (toSeq <= receivedSeq) continue;
+			try (InputStream in = new FileInputStream(file)) {
+				long[] counts = readDelta(db, in, peerId);
+				received[0] += counts[0];
+				received[1] += counts[1];
+				receivedSeq = toSeq;
+			} catch (MissingChangesException e) {
+				System.err.println("Not merging " + file + ": " + e.getMessage());
+				missingBefore = toSeq;
+			} catch (IOException e) {
+				System.err.println("Failed reading " + file + ", will retry on next sync: " + e);
+				// the files after this were not looked at, so keep any request as it is
+				return received;
+			}
+		}
+		updateResyncRequest(dir, db.getPeerId(), peerId, missingBefore > receivedSeq ? receivedSeq : -1);
+		return received;
+	}
+
+	/**
+	 * Asks `peerId` to export its changes after `receivedSeq` again, or withdraws the request if `receivedSeq` is -1.
+	 */
+	private static void updateResyncRequest(@NotNull File dir, long ownId, long peerId, long receivedSeq) {
+		File ownDir = new File(dir, hex(ownId));
+		File file = new File(ownDir, hex(peerId) + RESYNC_EXTENSION);
+		try {
+			if (receivedSeq < 0) {
+				Files.deleteIfExists(file.toPath());
+				return;
+			}
+			if (!ownDir.isDirectory() && !ownDir.mkdirs()) throw new IOException("Could not create " + ownDir);
+			File tmp = new File(file.getPath() + ".tmp");
+			Files.writeString(tmp.toPath(), hex(receivedSeq));
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			System.out.println("[SnitchMod] Asked peer " + hex(peerId) + " for its changes after " + receivedSeq);
+		} catch (IOException e) {
+			System.err.println("Failed updating resync request " + file);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Exchanges changes with another DB over `socket`, both ways, sequentially so neither side waits on the other.
+	 * Both sides call this, one as initiator (the one that connected).
+	 */
+	public static @NotNull Stats exchange(@NotNull SnitchSqliteDb db, @NotNull Socket socket, boolean initiator) throws IOException, SQLException {
+		long startMs = System.currentTimeMillis();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+
+		long peerId = db.getPeerId();
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(peerId);
+		out.flush();
+		if (in.readInt() != MAGIC) throw new IOException("Not a SnitchMod sync peer");
+		int version = in.readInt();
+		if (version != VERSION) throw new IOException("Unsupported sync version " + version);
+		long otherId = in.readLong();
+		if (otherId == peerId) throw new IOException("Connected to the same DB");
+
+		out.writeLong(db.getReceivedSeq(otherId));
+		out.flush();
+		long otherReceivedSeq = in.readLong();
+		// before merging anything from the other side, so that is not sent right back
+		long toSeq = db.getChangeCounter();
+
+		long[] sent;
+		long[] received;
+		if (initiator) {
+			sent = writeDelta(db, out, peerId, otherReceivedSeq, toSeq);
+			received = readDelta(db, in, otherId);
+		} else {
+			received = readDelta(db, in, otherId);
+			sent = writeDelta(db, out, peerId, otherReceivedSeq, toSeq);
+		}
+		return new Stats(sent[0], sent[1], received[0], received[1], System.currentTimeMillis() - startMs);
+	}
+
+	/**
+	 * Leaves `sink` open, but flushed.
+	 *
+	 * @return snitches and deletions written
+	 */
+	private static @NotNull long[] writeDelta(@NotNull SnitchSqliteDb db, @NotNull OutputStream sink, long peerId, long fromSeq, long toSeq) throws IOException, SQLException {
+		List<Tombstone> tombstones = db.selectTombstonesChangedBetween(fromSeq, toSeq);
+		DataOutputStream out = SnitchTransfer.gzipOutput(new FilterOutputStream(sink) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+		});
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(peerId);
+		out.writeLong(fromSeq);
+		out.writeLong(toSeq);
+
+		SnitchTransfer.BinaryWriter records = new SnitchTransfer.BinaryWriter(out);
+		long[] snitches = {0};
+		IOException[] error = {null};
+		boolean ok = db.selectRowsChangedBetween(fromSeq, toSeq, CHUNK_SIZE, chunk -> {
+			try {
+				for (Object[] values : chunk) records.write(values);
+			} catch (IOException e) {
+				error[0] = e;
+				return false;
+			}
+			snitches[0] += chunk.size();
+			return true;
+		});
+		if (error[0] != null) throw error[0];
+		if (!ok) throw new IOException("Failed reading changed snitches from DB");
+		records.finish();
+
+		for (Tombstone tombstone : tombstones) {
+			out.writeByte(1);
+			out.writeUTF(tombstone.world());
+			out.writeInt(tombstone.x());
+			out.writeInt(tombstone.y());
+			out.writeInt(tombstone.z());
+			out.writeLong(tombstone.deletedTs());
+		}
+		out.writeByte(0);
+		// finishes the gzip stream
+		out.close();
+		return new long[]{snitches[0], tombstones.size()};
+	}
+
+	/**
+	 * Merges a delta into `db`; only once all of it is merged, its sender's counter is remembered.
+	 *
+	 * @return snitches and deletions read
+	 */
+	private static @NotNull long[] readDelta(@NotNull SnitchSqliteDb db, @NotNull InputStream source, long expectedPeerId) throws IOException, SQLException {
+		DataInputStream in = SnitchTransfer.gzipInput(source);
+		if (in.readInt() != MAGIC) throw new IOException("Not a SnitchMod sync delta");
+		int version = in.readInt();
+		if (version != VERSION) throw new IOException("Unsupported sync version " + version);
+		long peerId = in.readLong();
+		if (peerId != expectedPeerId) throw new IOException("Delta is from peer " + hex(peerId) + ", expected " + hex(expectedPeerId));
+		long fromSeq = in.readLong();
+		long toSeq = in.readLong();
+		long receivedSeq = db.getReceivedSeq(peerId);
+		if (fromSeq > receivedSeq) {
+			throw new MissingChangesException("Missing changes of peer " + hex(peerId) + " between " + receivedSeq + " and " + fromSeq);
+		}
+
+		SnitchTransfer.BinaryReader records = new SnitchTransfer.BinaryReader(in);
+		long snitches = 0;
+		List<Object[]> batch = new ArrayList<>(CHUNK_SIZE);
+		try {
+			while (true) {
+				Object[] values = records.next();
+				if (values != null) batch.add(SnitchTransfer.rowOf(values));
+				if (batch.size() >= CHUNK_SIZE || (values == null && !batch.isEmpty())) {
+					if (!db.importRows(batch, MergePolicy.NEWEST)) throw new IOException("Failed merging snitches into DB");
+					snitches += batch.size();
+					batch.clear();
+				}
+				if (values == null) break;
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Malformed sync delta: " + e.getMessage(), e);
+		}
+
+		List<Tombstone> tombstones = new ArrayList<>();
+		while (in.readByte() != 0) {
+			tombstones.add(new Tombstone(in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readLong()));
+		}
+		// also when empty: deletions received earlier may apply to snitches just merged
+		if (!db.applyTombstones(tombstones)) throw new IOException("Failed merging deletions into DB");
+		db.setReceivedSeq(peerId, toSeq);
+		return new long[]{snitches, tombstones.size()};
+	}
+
+	private static @NotNull String hex(long value) {
+		return String.format("%016x", value);
+	}
+}
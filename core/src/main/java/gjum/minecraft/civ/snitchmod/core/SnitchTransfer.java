@@ -0,0 +1,593 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import gjum.minecraft.civ.snitchmod.core.SnitchSqliteDb.MergePolicy;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports a snitch DB to a file and imports it into another one, for sharing snitches within a group.
+ * Both directions stream: memory use does not grow with the number of snitches.
+ * <p>
+ * Every format has the DB's columns, by the same names: see {@link #COLUMNS}.
+ */
+public class SnitchTransfer {
+	public enum Format {
+		/**
+		 * One JSON object per line.
+		 */
+		JSONL,
+		/**
+		 * A header line with the column names, then one snitch per line; fields with line breaks are quoted.
+		 */
+		CSV,
+		/**
+		 * Gzipped fixed-order fields, repeated strings (worlds, groups, players) replaced by references.
+		 */
+		BINARY;
+
+		/**
+		 * By extension: `.jsonl`, `.csv`, anything else is binary.
+		 */
+		public static @NotNull Format of(@NotNull File file) {
+			String name = file.getName().toLowerCase();
+			if (name.endsWith(".jsonl")) return JSONL;
+			if (name.endsWith(".csv")) return CSV;
+			return BINARY;
+		}
+	}
+
+	public record Result(long rows, long failedRows, long tookMs) {
+		public long rowsPerSecond() {
+			return tookMs == 0 ? rows : rows * 1000 / tookMs;
+		}
+	}
+
+	public static final String[] COLUMNS = {"world", "x", "y", "z", "group_name", "type", "name", "dormant_ts", "cull_ts", "first_seen_ts", "last_seen_ts", "created_ts", "created_by_uuid", "renamed_ts", "renamed_by_uuid", "lost_jalist_access_ts", "broken_ts", "gone_ts", "tags", "notes"};
+	private static final HashMap<String, Integer> columnIndex = new HashMap<>();
+	private static final boolean[] isStringColumn = new boolean[COLUMNS.length];
+
+	static {
+		for (int i = 0; i < COLUMNS.length; i++) {
+			columnIndex.put(COLUMNS[i], i);
+			isStringColumn[i] = switch (COLUMNS[i]) {
+				case "world", "group_name", "type", "name", "created_by_uuid", "renamed_by_uuid", "tags", "notes" -> true;
+				default -> false;
+			};
+		}
+	}
+
+	/**
+	 * Snitches per import transaction, and per chunk read from the DB on export.
+	 */
+	private static final int BATCH_SIZE = 5000;
+	private static final int PROGRESS_INTERVAL_ROWS = 100_000;
+
+	public static @NotNull Result exportTo(@NotNull SnitchSqliteDb db, @NotNull File file, @NotNull Format format) throws IOException {
+		long startMs = System.currentTimeMillis();
+		long[] rows = {0};
+		IOException[] error = {null};
+		try (RecordWriter writer = openWriter(file, format)) {
+			boolean ok = db.selectAllRows(BATCH_SIZE, chunk -> {
+				try {
+					for (Object[] values : chunk) writer.write(values);
+				} catch (IOException e) {
+					error[0] = e;
+					return false;
+				}
+				rows[0] += chunk.size();
+				if (rows[0] % PROGRESS_INTERVAL_ROWS < chunk.size()) printProgress("Exported", rows[0], startMs);
+				return true;
+			});
+			if (error[0] != null) throw error[0];
+			if (!ok) throw new IOException("Failed reading snitches from DB, export is incomplete");
+		}
+		return new Result(rows[0], 0, System.currentTimeMillis() - startMs);
+	}
+
+	/**
+	 * Writes in batches of {@link #BATCH_SIZE}; a batch that fails is counted in {@link Result#failedRows} and skipped.
+	 */
+	public static @NotNull Result importFrom(@NotNull SnitchSqliteDb db, @NotNull File file, @NotNull Format format, @NotNull MergePolicy policy) throws IOException {
+		long startMs = System.currentTimeMillis();
+		long rows = 0;
+		long failed = 0;
+		try (RecordReader reader = openReader(file, format)) {
+			List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+			while (true) {
+				Object[] values = reader.next();
+				if (values != null) batch.add(rowOf(values));
+				if (batch.size() >= BATCH_SIZE || (values == null && !batch.isEmpty())) {
+					if (!db.importRows(batch, policy)) failed += batch.size();
+					rows += batch.size();
+					if (rows % PROGRESS_INTERVAL_ROWS < batch.size()) printProgress("Imported", rows, startMs);
+					batch.clear();
+				}
+				if (values == null) break;
+			}
+		} catch (IllegalArgumentException | IllegalStateException e) {
+			// malformed field values, or JSON of the wrong shape
+			throw new IOException("Malformed " + format + " after " + rows + " rows: " + e.getMessage(), e);
+		}
+		return new Result(rows, failed, System.currentTimeMillis() - startMs);
+	}
+
+	private static void printProgress(String verb, long rows, long startMs) {
+		long tookMs = Math.max(1, System.currentTimeMillis() - startMs);
+		System.out.println("[SnitchMod] " + verb + " " + rows + " snitches, " + rows * 1000 / tookMs + " rows/s");
+	}
+
+	/**
+	 * In {@link #COLUMNS} order: String, Integer, or Long; null where the DB would store NULL.
+	 */
+	static @NotNull Object[] valuesOf(@NotNull Snitch snitch) {
+		return new Object[]{
+			snitch.pos.getWorld(),
+			snitch.pos.getX(),
+			snitch.pos.getY(),
+			snitch.pos.getZ(),
+			snitch.getGroup(),
+			snitch.getType() != null ? snitch.getType().dbRepresentation : null,
+			snitch.getName(),
+			snitch.getDormantTs(),
+			snitch.getCullTs(),
+			snitch.getFirstSeenTs(),
+			snitch.getLastSeenTs(),
+			snitch.getCreatedTs(),
+			snitch.getCreatedByUuid() != null ? snitch.getCreatedByUuid().toString() : null,
+			snitch.getRenamedTs(),
+			snitch.getRenamedByUuid() != null ? snitch.getRenamedByUuid().toString() : null,
+			snitch.getLostJalistAccessTs(),
+			snitch.getBrokenTs(),
+			snitch.getGoneTs(),
+			String.join("\n", snitch.getTags()),
+			snitch.getNotes(),
+		};
+	}
+
+	static @NotNull Snitch snitchOf(@NotNull String server, @NotNull Object[] values) {
+		if (values[0] == null || values[1] == null || values[2] == null || values[3] == null) {
+			throw new IllegalArgumentException("Snitch without world or position");
+		}
+		return new Snitch(server, (String) values[0],
+			toInt(values[1]), toInt(values[2]), toInt(values[3]),
+			(String) values[4], (String) values[5], (String) values[6],
+			toLong(values[7]), toLong(values[8]), toLong(values[9]), toLong(values[10]), toLong(values[11]),
+			(String) values[12], toLong(values[13]), (String) values[14],
+			toLong(values[15]), toLong(values[16]), toLong(values[17]),
+			(String) values[18], (String) values[19]);
+	}
+
+	/**
+	 * Checks and normalizes `values` read from a file in place, like {@link #snitchOf} would,
+	 * but without building a {@link Snitch}: rows are only passed through to the DB,
+	 * so nothing of them is interned or kept.
+	 *
+	 * @throws IllegalArgumentException if the row has no position, or a malformed UUID
+	 */
+	static @NotNull Object[] rowOf(@NotNull Object[] values) {
+		if (values[0] == null || values[1] == null || values[2] == null || values[3] == null) {
+			throw new IllegalArgumentException("Snitch without world or position");
+		}
+		for (int i = 1; i < COLUMNS.length; i++) {
+			if (isStringColumn[i]) continue;
+			values[i] = i <= 3 ? (Object) toInt(values[i]) : (Object) toLong(values[i]);
+		}
+		Snitch.Type type = Snitch.Type.fromDb((String) values[5]);
+		values[5] = type != null ? type.dbRepresentation : null;
+		if (values[12] != null) values[12] = UUID.fromString((String) values[12]).toString();
+		if (values[14] != null) values[14] = UUID.fromString((String) values[14]).toString();
+		if (values[18] == null) values[18] = "";
+		return values;
+	}
+
+	private static int toInt(Object value) {
+		return ((Number) value).intValue();
+	}
+
+	private static long toLong(@Nullable Object value) {
+		return value == null ? 0 : ((Number) value).longValue();
+	}
+
+	/**
+	 * Parses a field read as text (JSON number, CSV) into the column's type.
+	 */
+	private static @Nullable Object parseField(int column, @Nullable String text) {
+		if (text == null) return null;
+		if (isStringColumn[column]) return text;
+		if (text.isEmpty()) return null;
+		return Long.parseLong(text);
+	}
+
+	interface RecordWriter extends Closeable {
+		void write(@NotNull Object[] values) throws IOException;
+	}
+
+	interface RecordReader extends Closeable {
+		/**
+		 * @return null at the end of the file
+		 */
+		@Nullable Object[] next() throws IOException;
+	}
+
+	static @NotNull RecordWriter openWriter(@NotNull File file, @NotNull Format format) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		return switch (format) {
+			case JSONL -> new JsonlWriter(out);
+			case CSV -> new CsvWriter(out);
+			case BINARY -> BinaryWriter.open(out);
+		};
+	}
+
+	static @NotNull RecordReader openReader(@NotNull File file, @NotNull Format format) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+		return switch (format) {
+			case JSONL -> new JsonlReader(in);
+			case CSV -> new CsvReader(in);
+			case BINARY -> BinaryReader.open(in);
+		};
+	}
+
+	private static class JsonlWriter implements RecordWriter {
+		private final Writer out;
+		private final JsonWriter json;
+
+		JsonlWriter(OutputStream out) {
+			this.out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+			json = new JsonWriter(this.out);
+			// allows more than one top-level value; JsonWriter writes through without buffering, so the newlines land in between
+			json.setStrictness(Strictness.LENIENT);
+		}
+
+		@Override
+		public void write(@NotNull Object[] values) throws IOException {
+			json.beginObject();
+			for (int i = 0; i < COLUMNS.length; i++) {
+				if (values[i] == null) continue;
+				json.name(COLUMNS[i]);
+				if (values[i] instanceof Number number) json.value(number);
+				else json.value((String) values[i]);
+			}
+			json.endObject();
+			out.write('\n');
+		}
+
+		@Override
+		public void close() throws IOException {
+			json.close();
+		}
+	}
+
+	private static class JsonlReader implements RecordReader {
+		private final Reader in;
+		private final JsonReader json;
+
+		JsonlReader(InputStream in) {
+			this.in = new InputStreamReader(in, StandardCharsets.UTF_8);
+			json = new JsonReader(this.in);
+			// accepts a stream of top-level values
+			json.setStrictness(Strictness.LENIENT);
+		}
+
+		@Override
+		public @Nullable Object[] next() throws IOException {
+			if (json.peek() == JsonToken.END_DOCUMENT) return null;
+			Object[] values = new Object[COLUMNS.length];
+			json.beginObject();
+			while (json.hasNext()) {
+				Integer column = columnIndex.get(json.nextName());
+				if (column == null || json.peek() == JsonToken.NULL) {
+					json.skipValue();
+					continue;
+				}
+				values[column] = parseField(column, json.nextString());
+			}
+			json.endObject();
+			return values;
+		}
+
+		@Override
+		public void close() throws IOException {
+			json.close();
+		}
+	}
+
+	private static class CsvWriter implements RecordWriter {
+		private final Writer out;
+
+		CsvWriter(OutputStream out) throws IOException {
+			this.out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+			this.out.write(String.join(",", COLUMNS));
+			this.out.write('\n');
+		}
+
+		@Override
+		public void write(@NotNull Object[] values) throws IOException {
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) out.write(',');
+				Object value = values[i];
+				if (value == null) continue; // empty and unquoted, unlike an empty string
+				String text = value.toString();
+				if (value instanceof String) {
+					out.write('"');
+					out.write(text.replace("\"", "\"\""));
+					out.write('"');
+				} else {
+					out.write(text);
+				}
+			}
+			out.write('\n');
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	/**
+	 * RFC 4180, plus: an unquoted empty field is null, a quoted one an empty string.
+	 * Columns are matched by the header, so they may be in any order, and unknown ones are ignored.
+	 */
+	private static class CsvReader implements RecordReader {
+		private final Reader in;
+		private final int[] columnOfField;
+		private final StringBuilder field = new StringBuilder();
+		private boolean atEnd = false;
+
+		CsvReader(InputStream in) throws IOException {
+			this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+			List<String> header = readLine();
+			if (header == null) {
+				columnOfField = new int[0];
+				return;
+			}
+			columnOfField = new int[header.size()];
+			for (int i = 0; i < header.size(); i++) {
+				Integer column = header.get(i) == null ? null : columnIndex.get(header.get(i).trim());
+				columnOfField[i] = column == null ? -1 : column;
+			}
+		}
+
+		@Override
+		public @Nullable Object[] next() throws IOException {
+			List<String> fields;
+			do {
+				fields = readLine();
+				if (fields == null) return null;
+			} while (fields.size() == 1 && fields.get(0) == null); // blank line
+			Object[] values = new Object[COLUMNS.length];
+			for (int i = 0; i < fields.size() && i < columnOfField.length; i++) {
+				int column = columnOfField[i];
+				if (column >= 0) values[column] = parseField(column, fields.get(i));
+			}
+			return values;
+		}
+
+		/**
+		 * @return null at the end of the input
+		 */
+		private @Nullable List<String> readLine() throws IOException {
+			if (atEnd) return null;
+			List<String> fields = new ArrayList<>(COLUMNS.length);
+			field.setLength(0);
+			boolean quoted = false;
+			boolean inQuotes = false;
+			int c = in.read();
+			if (c == -1) {
+				atEnd = true;
+				return null;
+			}
+			while (true) {
+				if (inQuotes) {
+					if (c == -1) throw new IOException("Unterminated quoted CSV field");
+					if (c == '"') {
+						int next = in.read();
+						if (next == '"') {
+							field.append('"');
+						} else {
+							inQuotes = false;
+							c = next;
+							continue;
+						}
+					} else {
+						field.append((char) c);
+					}
+				} else if (c == '"') {
+					inQuotes = true;
+					quoted = true;
+				} else if (c == ',' || c == '\n' || c == -1) {
+					fields.add(quoted || !field.isEmpty() ? field.toString() : null);
+					field.setLength(0);
+					quoted = false;
+					if (c == -1) atEnd = true;
+					if (c != ',') return fields;
+				} else if (c != '\r') {
+					field.append((char) c);
+				}
+				c = in.read();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	private static final int BINARY_MAGIC = 0x534d4558; // "SMEX"
+	private static final int BINARY_VERSION = 1;
+	/**
+	 * Strings of these columns repeat a lot, so they are written once and referenced by number after that.
+	 */
+	private static final boolean[] isDictionaryColumn = new boolean[COLUMNS.length];
+	/**
+	 * Beyond this many distinct strings, new ones are written inline, so a reader's memory stays bounded.
+	 */
+	private static final int MAX_DICTIONARY_SIZE = 1 << 16;
+	private static final int STRING_NULL = -1;
+	private static final int STRING_INLINE = -2;
+
+	static {
+		for (String column : new String[]{"world", "group_name", "type", "created_by_uuid", "renamed_by_uuid"}) {
+			isDictionaryColumn[columnIndex.get(column)] = true;
+		}
+	}
+
+	/**
+	 * After the header, each record is a 1 byte followed by its fields in {@link #COLUMNS} order; a 0 byte ends the file.
+	 * Strings are an int: {@link #STRING_NULL}, {@link #STRING_INLINE} followed by the string,
+	 * the index of an earlier string, or the next index followed by a new string.
+	 */
+	static @NotNull DataOutputStream gzipOutput(@NotNull OutputStream out) throws IOException {
+		GZIPOutputStream gzip = new GZIPOutputStream(out, 1 << 16) {
+			{
+				// somewhat larger files than the default level, in half the time
+				def.setLevel(Deflater.BEST_SPEED);
+			}
+		};
+		return new DataOutputStream(new BufferedOutputStream(gzip, 1 << 16));
+	}
+
+	static @NotNull DataInputStream gzipInput(@NotNull InputStream in) throws IOException {
+		return new DataInputStream(new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16));
+	}
+
+	static class BinaryWriter implements RecordWriter {
+		private final DataOutputStream out;
+		private final HashMap<String, Integer> dictionary = new HashMap<>();
+
+		/**
+		 * Only the records, without header, e.g. as part of a {@link SnitchSync} delta.
+		 */
+		BinaryWriter(@NotNull DataOutputStream out) {
+			this.out = out;
+		}
+
+		static @NotNull BinaryWriter open(@NotNull OutputStream out) throws IOException {
+			DataOutputStream data = gzipOutput(out);
+			data.writeInt(BINARY_MAGIC);
+			data.writeInt(BINARY_VERSION);
+			return new BinaryWriter(data);
+		}
+
+		@Override
+		public void write(@NotNull Object[] values) throws IOException {
+			out.writeByte(1);
+			for (int i = 0; i < COLUMNS.length; i++) {
+				Object value = values[i];
+				if (!isStringColumn[i]) {
+					out.writeLong(value == null ? 0 : ((Number) value).longValue());
+				} else if (value == null) {
+					out.writeInt(STRING_NULL);
+				} else if (!isDictionaryColumn[i]) {
+					out.writeInt(STRING_INLINE);
+					writeString((String) value);
+				} else {
+					Integer id = dictionary.get(value);
+					if (id != null) {
+						out.writeInt(id);
+					} else if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+						out.writeInt(dictionary.size());
+						dictionary.put((String) value, dictionary.size());
+						writeString((String) value);
+					} else {
+						out.writeInt(STRING_INLINE);
+						writeString((String) value);
+					}
+				}
+			}
+		}
+
+		private void writeString(String string) throws IOException {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		/**
+		 * Ends the records, leaving the stream open.
+		 */
+		void finish() throws IOException {
+			out.writeByte(0);
+		}
+
+		@Override
+		public void close() throws IOException {
+			finish();
+			out.close();
+		}
+	}
+
+	static class BinaryReader implements RecordReader {
+		private final DataInputStream in;
+		private final List<String> dictionary = new ArrayList<>();
+
+		/**
+		 * Only the records, without header, see {@link BinaryWriter#BinaryWriter(DataOutputStream)}.
+		 */
+		BinaryReader(@NotNull DataInputStream in) {
+			this.in = in;
+		}
+
+		static @NotNull BinaryReader open(@NotNull InputStream in) throws IOException {
+			DataInputStream data = gzipInput(in);
+			if (data.readInt() != BINARY_MAGIC) throw new IOException("Not a SnitchMod export");
+			int version = data.readInt();
+			if (version != BINARY_VERSION) throw new IOException("Unsupported export version " + version);
+			return new BinaryReader(data);
+		}
+
+		@Override
+		public @Nullable Object[] next() throws IOException {
+			if (in.readByte() == 0) return null;
+			Object[] values = new Object[COLUMNS.length];
+			for (int i = 0; i < COLUMNS.length; i++) {
+				if (!isStringColumn[i]) {
+					values[i] = in.readLong();
+					continue;
+				}
+				int id = in.readInt();
+				if (id == STRING_NULL) {
+					values[i] = null;
+				} else if (id == STRING_INLINE) {
+					values[i] = readString();
+				} else if (id < dictionary.size()) {
+					values[i] = dictionary.get(id);
+				} else if (id == dictionary.size() && id < MAX_DICTIONARY_SIZE) {
+					String string = readString();
+					dictionary.add(string);
+					values[i] = string;
+				} else {
+					throw new IOException("Bad string reference " + id);
+				}
+			}
+			return values;
+		}
+
+		private String readString() throws IOException {
+			int length = in.readInt();
+			if (length < 0 || length > 1 << 24) throw new IOException("Bad string length " + length);
+			return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
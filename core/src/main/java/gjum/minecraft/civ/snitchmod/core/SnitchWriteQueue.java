@@ -0,0 +1,188 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import gjum.minecraft.civ.snitchmod.core.SnitchStorage.Tombstone;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import gjum.minecraft.civ.snitchmod.core.model.WorldPos;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Snitches that changed or were deleted since they were last written to the DB, at most one entry per position.
+ * <p>
+ * A snitch that gets updated many times before the next flush (e.g. alert spam) is written only once,
+ * with whatever state it has at flush time.
+ * <p>
+ * Only the latest of updating and deleting a position is kept, so a queued update can never
+ * bring back a snitch deleted after it, nor a queued deletion remove one created after it.
+ * Deletions are drained before updates: anything drained as an update was queued after them.
+ */
+public class SnitchWriteQueue {
+	private final LinkedHashMap<WorldPos, Snitch> dirty = new LinkedHashMap<>();
+	/**
+	 * Deletion time by position.
+	 */
+	private final LinkedHashMap<WorldPos, Long> deleted = new LinkedHashMap<>();
+	/**
+	 * The live snitches and snapshots of the last {@link #drain}, until {@link #finishWrite}.
+	 */
+	private final List<Snitch> inFlight = new ArrayList<>();
+	private final List<Snitch> inFlightSnapshots = new ArrayList<>();
+	/**
+	 * The last {@link #drainDeletions}, until {@link #finishDeletions}.
+	 */
+	private final LinkedHashMap<WorldPos, Long> inFlightDeletions = new LinkedHashMap<>();
+
+	private long markedCount = 0;
+	private long writtenCount = 0;
+
+	synchronized
+	public void markDirty(@NotNull Snitch snitch) {
+		markedCount++;
+		// the snitch at a position can be replaced (e.g. on creation), so always keep the latest one
+		dirty.put(snitch.pos, snitch);
+		deleted.remove(snitch.pos);
+	}
+
+	synchronized
+	public void markDeleted(@NotNull WorldPos pos) {
+		markedCount++;
+		dirty.remove(pos);
+		deleted.put(pos, System.currentTimeMillis());
+	}
+
+	/**
+	 * Removes all queued deletions, oldest first; see the class doc for the order relative to {@link #drain}.
+	 * Call {@link #finishDeletions} once they are written.
+	 */
+	synchronized
+	public @NotNull List<Tombstone> drainDeletions() {
+		List<Tombstone> drained = new ArrayList<>(deleted.size());
+		for (var entry : deleted.entrySet()) {
+			WorldPos pos = entry.getKey();
+			drained.add(new Tombstone(pos.getWorld(), pos.getX(), pos.getY(), pos.getZ(), entry.getValue()));
+		}
+		inFlightDeletions.clear();
+		inFlightDeletions.putAll(deleted);
+		deleted.clear();
+		writtenCount += drained.size();
+		return drained;
+	}
+
+	/**
+	 * If writing the last drained deletions failed, queues them again,
+	 * unless their position was updated or deleted since; that newer entry stays.
+	 */
+	synchronized
+	public void finishDeletions(boolean ok) {
+		if (!ok) {
+			for (var entry : inFlightDeletions.entrySet()) {
+				WorldPos pos = entry.getKey();
+				if (!dirty.containsKey(pos) && !deleted.containsKey(pos)) deleted.put(pos, entry.getValue());
+			}
+			writtenCount -= inFlightDeletions.size();
+		}
+		inFlightDeletions.clear();
+	}
+
+	/**
+	 * Removes up to `max` dirty snitches, oldest first,
+	 * and returns consistent snapshots of their current state, see {@link Snitch#snapshotForWrite}.
+	 * Call {@link #finishWrite} once they are written, before draining again.
+	 */
+	public @NotNull List<Snitch> drain(int max) {
+		List<Snitch> drained = new ArrayList<>(Math.min(max, getDepth()));
+		synchronized (this) {
+			Iterator<Snitch> it = dirty.values().iterator();
+			while (it.hasNext() && drained.size() < max) {
+				drained.add(it.next());
+				it.remove();
+			}
+			writtenCount += drained.size();
+			inFlight.clear();
+			inFlight.addAll(drained);
+		}
+		// snapshot outside our lock; each snitch guards its own state
+		drained.replaceAll(Snitch::snapshotForWrite);
+		synchronized (this) {
+			inFlightSnapshots.clear();
+			inFlightSnapshots.addAll(drained);
+		}
+		return drained;
+	}
+
+	/**
+	 * If writing the last drained snitches failed, restores the changed-field bits that {@link #drain} cleared,
+	 * and queues them again, unless their position was updated or deleted since; that newer entry stays.
+	 */
+	synchronized
+	public void finishWrite(boolean ok) {
+		if (!ok) {
+			for (int i = 0; i < inFlight.size(); i++) {
+				Snitch snitch = inFlight.get(i);
+				snitch.restoreDirtyFields(inFlightSnapshots.get(i).getDirtyFields());
+				if (!dirty.containsKey(snitch.pos) && !deleted.containsKey(snitch.pos)) dirty.put(snitch.pos, snitch);
+			}
+			writtenCount -= inFlight.size();
+		}
+		inFlight.clear();
+		inFlightSnapshots.clear();
+	}
+
+	/**
+	 * Whether the snitch at `pos` is waiting to be written or deleted.
+	 */
+	synchronized
+	public boolean contains(@NotNull WorldPos pos) {
+		return dirty.containsKey(pos) || deleted.containsKey(pos);
+	}
+
+	/**
+	 * How many snitches are waiting to be written, not counting deletions.
+	 */
+	synchronized
+	public int getDepth() {
+		return dirty.size();
+	}
+
+	synchronized
+	public int getDeletionDepth() {
+		return deleted.size();
+	}
+
+	/**
+	 * How many times a snitch was marked dirty or deleted in total.
+	 */
+	synchronized
+	public long getMarkedCount() {
+		return markedCount;
+	}
+
+	/**
+	 * How many snitch rows and deletions were handed to the writer in total.
+	 */
+	synchronized
+	public long getWrittenCount() {
+		return writtenCount;
+	}
+
+	/**
+	 * Updates per row written or still pending; 1 means nothing was coalesced.
+	 */
+	synchronized
+	public double getCoalescingRatio() {
+		long rows = writtenCount + dirty.size() + deleted.size();
+		if (rows == 0) return 1;
+		return (double) markedCount / rows;
+	}
+
+	synchronized
+	public @NotNull String formatStats() {
+		return String.format(
+			"%d updates, %d rows written, %d pending (%.1fx coalesced)",
+			markedCount, writtenCount, dirty.size() + deleted.size(), getCoalescingRatio());
+	}
+}
@@ -0,0 +1,1005 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import gjum.minecraft.civ.snitchmod.core.model.*;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.*;
+
+public class SnitchesStore {
+	public final @NotNull String server;
+
+	/**
+	 * Guards slotsByWorld, columns, and index.
+	 * Individual snitches synchronize their own updates, see {@link Snitch#snapshot}.
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	/**
+	 * world -> packed block pos (see {@link WorldPos#asLong}) -> slot in {@link #columns}
+	 */
+	private final HashMap<String, Long2IntOpenHashMap> slotsByWorld = new HashMap<>();
+	private final SnitchColumns columns = new SnitchColumns();
+	private final SnitchSpatialIndex index = new SnitchSpatialIndex(columns);
+	private volatile int snitchCount = 0;
+	/**
+	 * Incremented whenever a snitch is added, replaced, or removed.
+	 */
+	private volatile int version = 0;
+	private final SnitchWriteQueue writeQueue = new SnitchWriteQueue();
+
+	/**
+	 * Null if snitches are kept in memory only.
+	 */
+	private final @Nullable SnitchDbWriter writer;
+	private volatile boolean closed = false;
+
+	/**
+	 * Rows loaded from the DB are merged per chunk, so the write lock is never held for long.
+	 */
+	private static final int LOAD_CHUNK_SIZE = 2000;
+	/**
+	 * Updates applied to positions whose DB row is not loaded yet, in order,
+	 * so they can be re-applied on top of the DB row once it arrives.
+	 * Null once everything is loaded; never null in paged mode.
+	 * Guarded by the write lock.
+	 */
+	private @Nullable HashMap<WorldPos, List<Consumer<Snitch>>> updatesDuringLoad = new HashMap<>();
+	/**
+	 * Positions whose DB row must be ignored when it is loaded, because the snitch was created anew or deleted.
+	 * Guarded by the write lock.
+	 */
+	private final HashSet<WorldPos> replacedDuringLoad = new HashSet<>();
+	/**
+	 * Non-null in paged mode, where only the regions around the player are kept in memory.
+	 */
+	private final @Nullable SnitchRegionPager pager;
+	/**
+	 * Set once every DB row has been merged, so the store can be saved as a {@link SnitchSnapshot}.
+	 */
+	private volatile boolean loadedFully = false;
+	/**
+	 * Only the store of the server being played saves snapshots; not e.g. benchmarks.
+	 */
+	private final boolean writesSnapshot;
+
+	/**
+	 * Returns immediately; the DB is opened and loaded on a background thread.
+	 * Until that is done, the store only contains the snitches loaded so far,
+	 * nearest to `loadCenter` first, plus anything learned from chat in the meantime.
+	 *
+	 * @param loadCenter where the player is; null loads in table order
+	 */
+	public static @NotNull SnitchesStore open(@NotNull String server, @Nullable WorldPos loadCenter) {
+		SnitchModConfig config = SnitchModConfig.getInstance();
+		SnitchRegionPager pager = config.storePaged ? new SnitchRegionPager() : null;
+		boolean writesSnapshot = pager == null && config.storeSnapshot && config.storeBackend == SnitchStorage.Backend.SQLITE;
+		SnitchesStore store = new SnitchesStore(server, pager, writesSnapshot);
+		store.startLoading(loadCenter);
+		return store;
+	}
+
+	/**
+	 * A store in paged mode over `db`, e.g. for benchmarks; nothing is loaded until {@link #touchRegionsAround}.
+	 */
+	public static @NotNull SnitchesStore openPaged(@NotNull String server, @NotNull SnitchStorage db) {
+		SnitchesStore store = new SnitchesStore(server, new SnitchRegionPager(), false);
+		Objects.requireNonNull(store.writer).setDb(db);
+		return store;
+	}
+
+	private SnitchesStore(@NotNull String server, @Nullable SnitchRegionPager pager, boolean writesSnapshot) {
+		this.server = server;
+		this.pager = pager;
+		this.writesSnapshot = writesSnapshot;
+		writer = SnitchDbWriter.start(server, writeQueue);
+	}
+
+	private void startLoading(@Nullable WorldPos loadCenter) {
+		SnitchDbWriter writer = Objects.requireNonNull(this.writer);
+		writer.execute(() -> {
+			SnitchStorage db = openDb(server);
+			if (db == null) {
+				finishLoading();
+				return;
+			}
+			writer.setDb(db);
+			if (db instanceof SnitchSqliteDb sqlite) syncDirectory(sqlite);
+			if (pager == null) load(db, loadCenter);
+		});
+		if (pager != null && loadCenter != null) {
+			touchRegionsAround(loadCenter.getWorld(), loadCenter.getX(), loadCenter.getZ());
+		}
+	}
+
+	/**
+	 * Loads everything from `db` before returning, e.g. for benchmarks and the replayer.
+	 *
+	 * @param db where snitches are loaded from and written to;
+	 *           null keeps them in memory only
+	 */
+	public SnitchesStore(@NotNull String server, @Nullable SnitchStorage db) {
+		this.server = server;
+		pager = null;
+		writesSnapshot = false;
+		if (db == null) {
+			writer = null;
+			finishLoading();
+			return;
+		}
+		load(db, null);
+		writer = SnitchDbWriter.start(server, writeQueue);
+		writer.setDb(db);
+	}
+
+	private static @Nullable SnitchStorage openDb(@NotNull String server) {
+		try {
+			return SnitchStorage.open(server, SnitchModConfig.getInstance().storeBackend);
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private void load(@NotNull SnitchStorage db, @Nullable WorldPos loadCenter) {
+		long startMs = System.currentTimeMillis();
+		String source = "DB";
+		boolean complete = false;
+		try {
+			if (writesSnapshot && db instanceof SnitchSqliteDb sqlite && loadSnapshot(sqlite)) {
+				source = "snapshot";
+				complete = true;
+			} else if (loadCenter != null) {
+				complete = db.selectSnitchesNearestFirst(
+					loadCenter.getWorld(), loadCenter.getX(), loadCenter.getZ(), LOAD_CHUNK_SIZE, this::mergeLoaded);
+			} else {
+				complete = db.selectSnitchesNearestFirst(null, 0, 0, LOAD_CHUNK_SIZE, this::mergeLoaded);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		finishLoading();
+		if (closed) return;
+		loadedFully = complete;
+		System.out.println("[SnitchMod] Loaded " + snitchCount + " snitches for " + server
+			+ " from " + source + " in " + (System.currentTimeMillis() - startMs) + "ms");
+	}
+
+	/**
+	 * @return false if there is no snapshot matching the DB's current state, see {@link SnitchSqliteDb#getChangeCounter}
+	 */
+	private boolean loadSnapshot(@NotNull SnitchSqliteDb db) {
+		try {
+			List<Snitch> snitches = SnitchSnapshot.read(SnitchSnapshot.getSnapshotFile(server), server, db.getChangeCounter());
+			if (snitches == null) return false;
+			for (int from = 0; from < snitches.size(); from += LOAD_CHUNK_SIZE) {
+				if (!mergeLoaded(snitches.subList(from, Math.min(from + LOAD_CHUNK_SIZE, snitches.size())))) break;
+			}
+			return true;
+		} catch (Exception e) {
+			System.err.println("Failed reading snapshot for " + server + ", loading from DB instead");
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Runs on the DB thread, after all pending updates were flushed.
+	 * Skipped if the store does not hold every snitch, or the DB is missing some changes.
+	 */
+	private void writeSnapshot() {
+		if (writer == null || !loadedFully) return;
+		if (!(writer.getDb() instanceof SnitchSqliteDb db) || !writer.flush()) return;
+		long startMs = System.currentTimeMillis();
+		List<Snitch> snitches = new ArrayList<>(snitchCount);
+		for (Snitch snitch : getAllSnitches()) snitches.add(snitch.snapshot());
+		File file = SnitchSnapshot.getSnapshotFile(server);
+		try {
+			SnitchSnapshot.write(file, snitches, db.getChangeCounter());
+			System.out.println("[SnitchMod] Saved " + snitches.size() + " snitches to " + file
+				+ " in " + (System.currentTimeMillis() - startMs) + "ms");
+		} catch (Exception e) {
+			System.err.println("Failed saving snapshot for " + server);
+			e.printStackTrace();
+			// a stale snapshot is ignored anyway, but don't leave one that might match
+			file.delete();
+		}
+	}
+
+	/**
+	 * Adds snitches read from the DB. Where the player already learned something new
+	 * about a snitch while loading, that is applied on top of the DB state.
+	 *
+	 * @return false if the store was closed and loading should stop
+	 */
+	private boolean mergeLoaded(@NotNull Collection<Snitch> loaded) {
+		if (closed) return false;
+		List<Snitch> merged = new ArrayList<>();
+		lock.writeLock().lock();
+		try {
+			for (Snitch snitch : loaded) {
+				if (replacedDuringLoad.contains(snitch.pos)) continue;
+				List<Consumer<Snitch>> updates = updatesDuringLoad != null ? updatesDuringLoad.remove(snitch.pos) : null;
+				if (updates != null) {
+					for (Consumer<Snitch> update : updates) update.accept(snitch);
+					merged.add(snitch);
+				}
+				putSnitchLocked(snitch);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		for (Snitch snitch : merged) upsertSnitchToDB(snitch);
+		return true;
+	}
+
+	private void finishLoading() {
+		List<Snitch> pending;
+		lock.writeLock().lock();
+		try {
+			pending = takePendingLocked(pos -> true);
+			updatesDuringLoad = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		for (Snitch snitch : pending) upsertSnitchToDB(snitch);
+	}
+
+	/**
+	 * Forgets the pending updates and replacements of positions matching `inScope`, now that their DB rows are loaded.
+	 *
+	 * @return the snitches at those positions, which still need writing: they have no DB row, or changed since it was merged
+	 */
+	private @NotNull List<Snitch> takePendingLocked(@NotNull Predicate<WorldPos> inScope) {
+		List<Snitch> pending = new ArrayList<>();
+		Set<WorldPos> positions = new HashSet<>(replacedDuringLoad);
+		if (updatesDuringLoad != null) positions.addAll(updatesDuringLoad.keySet());
+		for (WorldPos pos : positions) {
+			if (!inScope.test(pos)) continue;
+			if (updatesDuringLoad != null) updatesDuringLoad.remove(pos);
+			replacedDuringLoad.remove(pos);
+			int slot = findSlot(pos.getWorld(), pos.asLong());
+			if (slot >= 0) pending.add(columns.getSnitch(slot));
+		}
+		return pending;
+	}
+
+	/**
+	 * Whether the DB state of `pos` has been loaded, so changes to it can be written as they are.
+	 * Call with the lock held.
+	 */
+	private boolean isLoadedLocked(@NotNull WorldPos pos) {
+		// also the case if the DB could not be opened at all
+		if (updatesDuringLoad == null) return true;
+		return pager != null && pager.isResident(pos);
+	}
+
+	/**
+	 * False while the DB is still being loaded in the background.
+	 * In paged mode, false while regions around the player are being loaded.
+	 */
+	public boolean isLoaded() {
+		if (pager != null) return pager.getLoadingCount() == 0;
+		lock.readLock().lock();
+		try {
+			return updatesDuringLoad == null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * In paged mode, loads the regions around the player that are not in memory yet,
+	 * and evicts the least recently used ones beyond `store.maxResidentSnitches`.
+	 * Cheap enough to call every tick; does nothing if the store is not paged.
+	 */
+	public void touchRegionsAround(@NotNull String world, int x, int z) {
+		if (pager == null || writer == null) return;
+		for (SnitchRegionPager.Region region : pager.touch(world, x, z)) {
+			writer.execute(() -> loadRegion(region));
+		}
+	}
+
+	private void requestRegionLoad(@NotNull WorldPos pos) {
+		if (pager == null || writer == null) return;
+		SnitchRegionPager.Region region = pager.requestLoad(pos);
+		if (region != null) writer.execute(() -> loadRegion(region));
+	}
+
+	/**
+	 * Runs on the DB thread.
+	 */
+	private void loadRegion(@NotNull SnitchRegionPager.Region region) {
+		if (pager == null || writer == null || closed) return;
+		SnitchStorage db = writer.getDb();
+		if (db == null) return;
+		mergeLoaded(db.selectSnitchesInRegion(region.world(), region.minX(), region.minZ(), region.maxX(), region.maxZ()));
+		List<Snitch> pending;
+		lock.writeLock().lock();
+		try {
+			pager.markResident(region);
+			pending = takePendingLocked(region::contains);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		for (Snitch snitch : pending) upsertSnitchToDB(snitch);
+		evictOverBudget();
+	}
+
+	/**
+	 * Runs on the DB thread. Regions with unwritten changes are kept.
+	 */
+	private void evictOverBudget() {
+		if (pager == null || writer == null) return;
+		int budget = SnitchModConfig.getInstance().storeMaxResidentSnitches;
+		if (snitchCount <= budget) return;
+		List<SnitchRegionPager.Region> candidates = pager.getEvictionCandidates();
+		if (candidates.isEmpty()) return;
+		// so the evicted snitches' latest state is in the DB when their region is loaded again
+		writer.flush();
+		int evictedRegions = 0;
+		int evictedSnitches = 0;
+		lock.writeLock().lock();
+		try {
+			for (SnitchRegionPager.Region region : candidates) {
+				if (snitchCount <= budget) break;
+				IntArrayList slots = index.findInBox(columns.findWorldId(region.world()),
+					region.minX(), Integer.MIN_VALUE, region.minZ(), region.maxX(), Integer.MAX_VALUE, region.maxZ());
+				boolean dirty = false;
+				for (int i = 0; i < slots.size() && !dirty; i++) {
+					dirty = writeQueue.contains(columns.getSnitch(slots.getInt(i)).pos);
+				}
+				if (dirty) continue;
+				for (int i = 0; i < slots.size(); i++) {
+					removeSlotLocked(columns.getSnitch(slots.getInt(i)).pos);
+				}
+				pager.evict(region);
+				evictedRegions++;
+				evictedSnitches += slots.size();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		if (evictedRegions > 0) {
+			System.out.println("[SnitchMod] Evicted " + evictedSnitches + " snitches in " + evictedRegions
+				+ " regions for " + server + ", " + snitchCount + " still in memory");
+		}
+	}
+
+	/**
+	 * Merges what others have shared in `sync.dir` before anything is loaded, see {@link SnitchSync#syncDirectory}.
+	 */
+	private void syncDirectory(@NotNull SnitchSqliteDb db) {
+		String syncDir = SnitchModConfig.getInstance().syncDir;
+		if (syncDir.isEmpty()) return;
+		try {
+			SnitchSync.Stats stats = SnitchSync.syncDirectory(db, new File(syncDir, server));
+			System.out.println("[SnitchMod] Synced " + server + " with " + syncDir + ": " + stats);
+		} catch (Exception e) {
+			System.err.println("Failed syncing " + server + " with " + syncDir);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Shares this session's changes in `sync.dir`; runs on the DB thread.
+	 * Others' changes are only merged on the next start, so the snapshot written after this stays current.
+	 */
+	private void exportToSyncDirectory() {
+		String syncDir = SnitchModConfig.getInstance().syncDir;
+		if (writer == null || syncDir.isEmpty()) return;
+		if (!(writer.getDb() instanceof SnitchSqliteDb db) || !writer.flush()) return;
+		try {
+			SnitchSync.exportToDirectory(db, new File(syncDir, server));
+		} catch (Exception e) {
+			System.err.println("Failed exporting " + server + " to " + syncDir);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes all pending updates and closes the DB, waiting at most `db.closeTimeoutMs`.
+	 */
+	public void close() {
+		closed = true;
+		if (writer == null) return;
+		writer.execute(this::exportToSyncDirectory);
+		if (writesSnapshot) writer.execute(this::writeSnapshot);
+		writer.close(SnitchModConfig.getInstance().dbCloseTimeoutMs);
+	}
+
+	public @NotNull SnitchWriteQueue getWriteQueue() {
+		return writeQueue;
+	}
+
+	public @Nullable Snitch getSnitch(@NotNull WorldPos pos) {
+		return getSnitch(pos.getWorld(), pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	/**
+	 * In paged mode, a position outside the regions in memory returns null and queues its region for loading,
+	 * so callers can retry on a later tick; the DB is never queried on the calling thread.
+	 */
+	public @Nullable Snitch getSnitch(@NotNull String world, int x, int y, int z) {
+		lock.readLock().lock();
+		try {
+			int slot = findSlot(world, WorldPos.asLong(x, y, z));
+			if (slot >= 0) return columns.getSnitch(slot);
+		} finally {
+			lock.readLock().unlock();
+		}
+		if (pager == null) return null;
+		WorldPos pos = new WorldPos(server, world, x, y, z);
+		if (!pager.isResident(pos)) requestRegionLoad(pos);
+		return null;
+	}
+
+	public Collection<Snitch> getAllSnitches() {
+		lock.readLock().lock();
+		try {
+			List<Snitch> all = new ArrayList<>(snitchCount);
+			for (int slot = 0, n = columns.getHighWater(); slot < n; slot++) {
+				if (!columns.isFree(slot)) all.add(columns.getSnitch(slot));
+			}
+			return all;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int getSnitchCount() {
+		return snitchCount;
+	}
+
+	/**
+	 * Changes whenever a snitch is added, replaced, or removed,
+	 * but not when an existing snitch is updated.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Hold this while reading {@link #getColumns} or slots returned by {@link #findNearbySlots}.
+	 */
+	public @NotNull Lock readLock() {
+		return lock.readLock();
+	}
+
+	public @NotNull SnitchColumns getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Slots of snitches whose center is closer than `distance` to the given point, nearest first.
+	 * At most `limit` slots matching `filter` are returned.
+	 * Slots stay valid until {@link #getVersion} changes.
+	 */
+	public int[] findNearbySlots(
+		@NotNull String world,
+		double x, double y, double z,
+		double distance,
+		int limit,
+		@NotNull SnitchColumns.Filter filter
+	) {
+		lock.readLock().lock();
+		try {
+			return index.findNearby(
+				columns.findWorldId(world), x, y, z, distance, limit, filter, System.currentTimeMillis());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Snitches whose center is closer than `distance` to the given point, nearest first.
+	 * At most `limit` snitches matching `filter` are returned.
+	 */
+	public List<Snitch> getNearbySnitches(
+		@NotNull String world,
+		double x, double y, double z,
+		double distance,
+		int limit,
+		@NotNull SnitchColumns.Filter filter
+	) {
+		lock.readLock().lock();
+		try {
+			int[] slots = index.findNearby(
+				columns.findWorldId(world), x, y, z, distance, limit, filter, System.currentTimeMillis());
+			List<Snitch> result = new ArrayList<>(slots.length);
+			for (int slot : slots) result.add(columns.getSnitch(slot));
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Snitches whose block is inside the given box, bounds inclusive.
+	 */
+	public List<Snitch> getSnitchesInBox(
+		@NotNull String world,
+		int minX, int minY, int minZ,
+		int maxX, int maxY, int maxZ
+	) {
+		lock.readLock().lock();
+		try {
+			IntArrayList slots = index.findInBox(
+				columns.findWorldId(world), minX, minY, minZ, maxX, maxY, maxZ);
+			List<Snitch> result = new ArrayList<>(slots.size());
+			for (int i = 0; i < slots.size(); i++) result.add(columns.getSnitch(slots.getInt(i)));
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Snitches in `world` with `tag`, from the columns' tag index instead of checking every snitch.
+	 * In paged mode, only those in loaded regions.
+	 */
+	public List<Snitch> getSnitchesWithTag(@NotNull String world, @NotNull String tag) {
+		lock.readLock().lock();
+		try {
+			List<Snitch> result = new ArrayList<>();
+			BitSet slots = columns.getSlotsWithTag(tag);
+			int worldId = columns.findWorldId(world);
+			if (slots == null || worldId < 0) return result;
+			for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+				if (columns.getWorldIdAt(slot) == worldId) result.add(columns.getSnitch(slot));
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The `limit` snitches with `tag` nearest to x,z in `world`. Runs on the DB thread after writing everything queued,
+	 * and passes them to `consumer` there; callers must hand them to their own thread.
+	 * With an SQLite DB, also finds those outside the loaded regions in paged mode, via its tag table.
+	 */
+	public void findSnitchesWithTag(
+		@NotNull String world, @NotNull String tag,
+		int x, int z, int limit,
+		@NotNull Consumer<List<Snitch>> consumer
+	) {
+		Consumer<List<Snitch>> nearest = snitches -> {
+			snitches.sort(Comparator.comparingLong(snitch -> {
+				long dx = snitch.pos.getX() - x;
+				long dz = snitch.pos.getZ() - z;
+				return dx * dx + dz * dz;
+			}));
+			consumer.accept(snitches.size() > limit ? new ArrayList<>(snitches.subList(0, limit)) : snitches);
+		};
+		if (writer == null) {
+			nearest.accept(getSnitchesWithTag(world, tag));
+			return;
+		}
+		writer.execute(() -> {
+			if (writer.getDb() instanceof SnitchSqliteDb db) {
+				writer.flush();
+				nearest.accept(db.selectSnitchesWithTag(world, tag));
+			} else {
+				nearest.accept(getSnitchesWithTag(world, tag));
+			}
+		});
+	}
+
+	/**
+	 * How many snitches have each tag, in all worlds, passed to `consumer` on the DB thread like {@link #findSnitchesWithTag}.
+	 */
+	public void countTags(@NotNull Consumer<Map<String, Integer>> consumer) {
+		if (writer == null) {
+			consumer.accept(countTagsInMemory());
+			return;
+		}
+		writer.execute(() -> {
+			if (writer.getDb() instanceof SnitchSqliteDb db) {
+				writer.flush();
+				consumer.accept(db.selectTagCounts());
+			} else {
+				consumer.accept(countTagsInMemory());
+			}
+		});
+	}
+
+	private @NotNull Map<String, Integer> countTagsInMemory() {
+		Map<String, Integer> counts = new TreeMap<>();
+		lock.readLock().lock();
+		try {
+			for (String tag : columns.getTagNames()) {
+				BitSet slots = columns.getSlotsWithTag(tag);
+				if (slots != null) counts.put(tag, slots.cardinality());
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return counts;
+	}
+
+	/**
+	 * Snitches whose name, group, or notes match `text`, those in `world` first, nearest to x,z first;
+	 * see {@link SnitchSqliteDb#searchSnitches}. Runs on the DB thread after writing everything queued,
+	 * and passes the page of results to `consumer` there; callers must hand them to their own thread.
+	 * Without an SQLite DB, searches the snitches in memory instead, for each word of `text` anywhere.
+	 *
+	 * @param offset how many results to skip, for paging
+	 */
+	public void searchSnitches(
+		@NotNull String text,
+		@NotNull String world, int x, int z,
+		int offset, int limit,
+		@NotNull Consumer<List<Snitch>> consumer
+	) {
+		if (writer == null) {
+			consumer.accept(searchSnitchesInMemory(text, world, x, z, offset, limit));
+			return;
+		}
+		writer.execute(() -> {
+			if (writer.getDb() instanceof SnitchSqliteDb db) {
+				writer.flush();
+				consumer.accept(db.searchSnitches(text, world, x, z, offset, limit));
+			} else {
+				consumer.accept(searchSnitchesInMemory(text, world, x, z, offset, limit));
+			}
+		});
+	}
+
+	private @NotNull List<Snitch> searchSnitchesInMemory(
+		@NotNull String text,
+		@NotNull String world, int x, int z,
+		int offset, int limit
+	) {
+		String[] words = text.strip().toLowerCase(Locale.ROOT).split("\\s+");
+		List<Snitch> matches = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			for (int slot = 0, n = columns.getHighWater(); slot < n; slot++) {
+				if (columns.isFree(slot)) continue;
+				Snitch snitch = columns.getSnitch(slot);
+				String haystack = String.join("\n",
+					Objects.requireNonNullElse(snitch.getName(), ""),
+					Objects.requireNonNullElse(snitch.getGroup(), ""),
+					Objects.requireNonNullElse(snitch.getNotes(), "")
+				).toLowerCase(Locale.ROOT);
+				boolean all = true;
+				for (String word : words) {
+					if (!haystack.contains(word)) {
+						all = false;
+						break;
+					}
+				}
+				if (all) matches.add(snitch);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		matches.sort(Comparator
+			.comparing((Snitch snitch) -> !world.equals(snitch.pos.getWorld()))
+			.thenComparingLong(snitch -> {
+				long dx = snitch.pos.getX() - x;
+				long dz = snitch.pos.getZ() - z;
+				return dx * dx + dz * dz;
+			}));
+		if (offset >= matches.size()) return new ArrayList<>();
+		return new ArrayList<>(matches.subList(offset, Math.min(matches.size(), offset + limit)));
+	}
+
+	/**
+	 * Adds `tag` to all snitches inside the given box, bounds inclusive. In paged mode, only those in loaded regions.
+	 *
+	 * @return how many snitches did not have the tag yet
+	 */
+	public int tagSnitchesInBox(
+		@NotNull String world,
+		int minX, int minY, int minZ,
+		int maxX, int maxY, int maxZ,
+		@NotNull String tag
+	) {
+		return updateSlots(() -> index.findInBox(columns.findWorldId(world), minX, minY, minZ, maxX, maxY, maxZ),
+			snitch -> snitch.addTag(tag));
+	}
+
+	/**
+	 * Removes `tag` from all snitches inside the given box, bounds inclusive. In paged mode, only those in loaded regions.
+	 *
+	 * @return how many snitches had the tag
+	 */
+	public int untagSnitchesInBox(
+		@NotNull String world,
+		int minX, int minY, int minZ,
+		int maxX, int maxY, int maxZ,
+		@NotNull String tag
+	) {
+		return updateSlots(() -> index.findInBox(columns.findWorldId(world), minX, minY, minZ, maxX, maxY, maxZ),
+			snitch -> snitch.removeTag(tag));
+	}
+
+	/**
+	 * Adds `tag` to all snitches reinforced to `group`, in any world. In paged mode, only those in loaded regions.
+	 *
+	 * @return how many snitches did not have the tag yet
+	 */
+	public int tagSnitchesInGroup(@NotNull String group, @NotNull String tag) {
+		return updateSlots(() -> findSlotsInGroupLocked(group), snitch -> snitch.addTag(tag));
+	}
+
+	/**
+	 * Removes `tag` from all snitches reinforced to `group`, in any world. In paged mode, only those in loaded regions.
+	 *
+	 * @return how many snitches had the tag
+	 */
+	public int untagSnitchesInGroup(@NotNull String group, @NotNull String tag) {
+		return updateSlots(() -> findSlotsInGroupLocked(group), snitch -> snitch.removeTag(tag));
+	}
+
+	private @NotNull IntArrayList findSlotsInGroupLocked(@NotNull String group) {
+		IntArrayList slots = new IntArrayList();
+		for (int slot = 0, n = columns.getHighWater(); slot < n; slot++) {
+			if (!columns.isFree(slot) && group.equals(columns.getSnitch(slot).getGroup())) slots.add(slot);
+		}
+		return slots;
+	}
+
+	public void updateSnitchesFromJalist(List<JalistEntry> jalist) {
+		for (JalistEntry entry : jalist) {
+			updateSnitch(entry.pos, snitch -> snitch.updateFromJalist(entry));
+		}
+	}
+
+	public void updateSnitchFromRename(SnitchRename rename) {
+		updateSnitch(rename.pos, snitch -> snitch.updateFromRename(rename));
+	}
+
+	public void updateSnitchFromAlert(SnitchAlert alert) {
+		updateSnitch(alert.pos, snitch -> snitch.updateFromAlert(alert));
+		if (writer != null) writer.appendAlert(alert);
+	}
+
+	public void updateSnitchFromCreation(Snitch snitch) {
+		// don't reuse any existing snitch, it no longer exists, only the new snitch does
+		boolean loaded;
+		lock.writeLock().lock();
+		try {
+			loaded = isLoadedLocked(snitch.pos);
+			if (!loaded) {
+				updatesDuringLoad.remove(snitch.pos);
+				replacedDuringLoad.add(snitch.pos);
+			}
+			putSnitchLocked(snitch);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		if (loaded) upsertSnitchToDB(snitch);
+		else requestRegionLoad(snitch.pos);
+		// TODO remember last created snitch for placement helper
+	}
+
+	public void updateSnitchBroken(SnitchBroken snitchBroken) {
+		updateSnitch(snitchBroken.pos, snitch -> snitch.updateFromBroken(snitchBroken));
+	}
+
+	/**
+	 * There is no snitch at the given WorldPos
+	 *
+	 * @return The snitch that was at the WorldPos,
+	 * or null if no snitch was ever known there.
+	 */
+	public @Nullable Snitch updateSnitchGone(@NotNull WorldPos pos) {
+		return updateExistingSnitch(pos, Snitch::updateGone);
+	}
+
+	public @Nullable Snitch updateSnitchNoLongerGone(@NotNull WorldPos pos) {
+		Snitch snitch = getSnitch(pos);
+		if (snitch == null) return null;
+		if (!snitch.isGone()) return null;
+		return updateExistingSnitch(pos, Snitch::updateNoLongerGone);
+	}
+
+	/**
+	 * The DB row is deleted with the next flush, after any update to the snitch queued before this.
+	 *
+	 * @return The snitch that was at the WorldPos,
+	 * or null if no snitch was known there.
+	 */
+	public @Nullable Snitch deleteSnitch(@NotNull WorldPos pos) {
+		Snitch snitch;
+		lock.writeLock().lock();
+		try {
+			snitch = deleteSnitchLocked(pos);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return snitch;
+	}
+
+	/**
+	 * Deletes all gone snitches inside the given box, bounds inclusive; their rows are deleted in one transaction.
+	 * In paged mode, only those in loaded regions.
+	 *
+	 * @return the deleted snitches
+	 */
+	public @NotNull List<Snitch> deleteGoneSnitchesInBox(
+		@NotNull String world,
+		int minX, int minY, int minZ,
+		int maxX, int maxY, int maxZ
+	) {
+		List<Snitch> deleted = new ArrayList<>();
+		lock.writeLock().lock();
+		try {
+			IntArrayList slots = index.findInBox(
+				columns.findWorldId(world), minX, minY, minZ, maxX, maxY, maxZ);
+			for (int i = 0; i < slots.size(); i++) {
+				Snitch snitch = columns.getSnitch(slots.getInt(i));
+				if (snitch.isGone()) deleted.add(snitch);
+			}
+			for (Snitch snitch : deleted) deleteSnitchLocked(snitch.pos);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return deleted;
+	}
+
+	private @Nullable Snitch deleteSnitchLocked(@NotNull WorldPos pos) {
+		if (!isLoadedLocked(pos)) {
+			updatesDuringLoad.remove(pos);
+			replacedDuringLoad.add(pos);
+		}
+		Snitch snitch = removeSlotLocked(pos);
+		// in paged mode the snitch may only exist in the DB
+		if (snitch != null || pager != null) writeQueue.markDeleted(pos);
+		return snitch;
+	}
+
+	private @Nullable Snitch removeSlotLocked(@NotNull WorldPos pos) {
+		Long2IntOpenHashMap worldSlots = slotsByWorld.get(pos.getWorld());
+		if (worldSlots == null) return null;
+		int slot = worldSlots.remove(pos.asLong());
+		if (slot < 0) return null;
+		Snitch snitch = columns.getSnitch(slot);
+		index.remove(slot);
+		columns.remove(slot);
+		snitchCount--;
+		version++;
+		return snitch;
+	}
+
+	/**
+	 * @return -1 if there is no snitch at that position
+	 */
+	private int findSlot(@NotNull String world, long packedPos) {
+		Long2IntOpenHashMap worldSlots = slotsByWorld.get(world);
+		if (worldSlots == null) return -1;
+		return worldSlots.get(packedPos);
+	}
+
+	private @NotNull Long2IntOpenHashMap getWorldSlots(@NotNull String world) {
+		return slotsByWorld.computeIfAbsent(world, w -> {
+			Long2IntOpenHashMap worldSlots = new Long2IntOpenHashMap(1000);
+			worldSlots.defaultReturnValue(-1);
+			return worldSlots;
+		});
+	}
+
+	/**
+	 * Applies `update` to the snitch at `pos`, creating it if it isn't known yet.
+	 * Holds the write lock throughout, so a DB row loaded concurrently either
+	 * comes before the update or gets the update re-applied to it.
+	 */
+	private void updateSnitch(@NotNull WorldPos pos, @NotNull Consumer<Snitch> update) {
+		Snitch snitch;
+		boolean loaded;
+		lock.writeLock().lock();
+		try {
+			loaded = isLoadedLocked(pos);
+			Long2IntOpenHashMap worldSlots = getWorldSlots(pos.getWorld());
+			long key = pos.asLong();
+			int slot = worldSlots.get(key);
+			if (slot >= 0) {
+				snitch = columns.getSnitch(slot);
+			} else {
+				snitch = new Snitch(pos);
+				slot = columns.add(snitch);
+				worldSlots.put(key, slot);
+				index.add(slot);
+				snitchCount++;
+				version++;
+			}
+			update.accept(snitch);
+			columns.refresh(slot);
+			if (!loaded) recordUpdateDuringLoad(pos, update);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		if (loaded) upsertSnitchToDB(snitch);
+		else requestRegionLoad(pos);
+	}
+
+	/**
+	 * Like {@link #updateSnitch}, but does nothing if there is no snitch at `pos`.
+	 */
+	private @Nullable Snitch updateExistingSnitch(@NotNull WorldPos pos, @NotNull Consumer<Snitch> update) {
+		Snitch snitch;
+		boolean loaded;
+		lock.writeLock().lock();
+		try {
+			loaded = isLoadedLocked(pos);
+			int slot = findSlot(pos.getWorld(), pos.asLong());
+			if (slot < 0) return null;
+			snitch = columns.getSnitch(slot);
+			update.accept(snitch);
+			columns.refresh(slot);
+			if (!loaded) recordUpdateDuringLoad(pos, update);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		if (loaded) upsertSnitchToDB(snitch);
+		return snitch;
+	}
+
+	/**
+	 * Applies `update` to the snitches at the slots `findSlots` returns, all under one write lock,
+	 * so a bulk change is never seen half done; the changed snitches are written together with the next flush.
+	 *
+	 * @param update returns whether it changed the snitch
+	 * @return how many snitches changed
+	 */
+	private int updateSlots(@NotNull Supplier<IntArrayList> findSlots, @NotNull Predicate<Snitch> update) {
+		int changed = 0;
+		List<Snitch> loaded = new ArrayList<>();
+		lock.writeLock().lock();
+		try {
+			IntArrayList slots = findSlots.get();
+			for (int i = 0; i < slots.size(); i++) {
+				int slot = slots.getInt(i);
+				Snitch snitch = columns.getSnitch(slot);
+				if (!update.test(snitch)) continue;
+				columns.refresh(slot);
+				changed++;
+				if (isLoadedLocked(snitch.pos)) loaded.add(snitch);
+				else recordUpdateDuringLoad(snitch.pos, update::test);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		for (Snitch snitch : loaded) upsertSnitchToDB(snitch);
+		return changed;
+	}
+
+	private void recordUpdateDuringLoad(@NotNull WorldPos pos, @NotNull Consumer<Snitch> update) {
+		// the snitch was created anew since loading started, its DB row gets skipped anyway
+		if (replacedDuringLoad.contains(pos)) return;
+		updatesDuringLoad.computeIfAbsent(pos, p -> new ArrayList<>(1)).add(update);
+	}
+
+	private void putSnitchLocked(@NotNull Snitch snitch) {
+		Long2IntOpenHashMap worldSlots = getWorldSlots(snitch.pos.getWorld());
+		long key = snitch.pos.asLong();
+		int slot = worldSlots.get(key);
+		if (slot >= 0) {
+			columns.replace(slot, snitch);
+		} else {
+			slot = columns.add(snitch);
+			worldSlots.put(key, slot);
+			index.add(slot);
+			snitchCount++;
+		}
+		version++;
+	}
+
+	/**
+	 * The DB thread writes a snapshot of the snitch's latest state with the next flush,
+	 * so it never sees a half-applied update.
+	 */
+	private void upsertSnitchToDB(Snitch snitch) {
+		if (snitch != null) writeQueue.markDirty(snitch);
+	}
+}
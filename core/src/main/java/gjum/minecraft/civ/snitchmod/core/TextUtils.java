@@ -0,0 +1,19 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public class TextUtils {
+	public static @NotNull String nonEmptyOrDefault(@Nullable String s, @NotNull String default_) {
+		if (s == null) return default_;
+		if (s.isEmpty()) return default_;
+		return s;
+	}
+
+	/**
+	 * Removes `§x` formatting codes, as chat and lore lines are matched against plain text.
+	 */
+	public static @NotNull String stripFormatting(@NotNull String s) {
+		return s.replaceAll("§.", "");
+	}
+}
@@ -0,0 +1,39 @@
+package gjum.minecraft.civ.snitchmod.core.model;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Deduplicates values that repeat across many snitches,
+ * so e.g. 10k snitches on one group share a single group name String.
+ * <p>
+ * Only holds weak references, so a value disappears once no snitch uses it anymore,
+ * e.g. after a rename, after evicting a region, or after switching servers.
+ * Not meant for values that are nearly unique per snitch, like names.
+ */
+public class Interner<T> {
+	public static final Interner<String> SERVERS = new Interner<>();
+	public static final Interner<String> WORLDS = new Interner<>();
+	public static final Interner<String> GROUPS = new Interner<>();
+
+	private final WeakHashMap<T, WeakReference<T>> values = new WeakHashMap<>();
+
+	@Contract("null -> null; !null -> !null")
+	synchronized
+	public @Nullable T intern(@Nullable T value) {
+		if (value == null) return null;
+		WeakReference<T> ref = values.get(value);
+		T existing = ref != null ? ref.get() : null;
+		if (existing != null) return existing;
+		values.put(value, new WeakReference<>(value));
+		return value;
+	}
+
+	synchronized
+	public int size() {
+		return values.size();
+	}
+}
@@ -1,9 +1,5 @@
-package gjum.minecraft.civ.snitchmod.common.model;
+package gjum.minecraft.civ.snitchmod.core.model;
 
-import net.minecraft.core.component.DataComponents;
-import net.minecraft.network.chat.Component;
-import net.minecraft.world.item.ItemStack;
-import net.minecraft.world.item.Items;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -11,10 +7,7 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import static net.minecraft.nbt.Tag.TAG_LIST;
-import static net.minecraft.nbt.Tag.TAG_STRING;
-
-import gjum.minecraft.civ.snitchmod.common.model.Snitch.Type;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch.Type;
 
 public class JalistEntry {
 	/**
@@ -61,30 +54,26 @@ public class JalistEntry {
 	private static final Pattern groupPattern = Pattern.compile("^Group: ([^ ]+)");
 	private static final Pattern lifetimePattern = Pattern.compile("^Will (cull|go dormant) in (?:([0-9]+) ?h(?:our)?s? ?)?(?:([0-9]+) ?m(?:in)?(?:ute)?s? ?)?(?:([0-9]+) ?s(?:ec)?(?:ond)?s?)?\s*");
 
+	/**
+	 * @param type block of the `/jalist` item; null if it is neither a note block nor a jukebox
+	 * @param name custom name of the item
+	 * @param lores lore lines of the item, as plain text
+	 */
 	@Nullable
-	public static JalistEntry fromStack(ItemStack stack, @NotNull String server) {
-		Type type;
-		if (stack.getItem() == Items.NOTE_BLOCK) {
-			type = Type.NOTEBLOCK;
-		} else if (stack.getItem() == Items.JUKEBOX) {
-			type = Type.JUKEBOX;
-		} else {
-			return null;
-		}
-
-		if (stack.get(DataComponents.CUSTOM_NAME) == null) return null;
-		if (stack.get(DataComponents.LORE) == null) return null;
-
-		String name = stack.get(DataComponents.CUSTOM_NAME).getString();
-
-		List<Component> lores = stack.get(DataComponents.LORE).lines();
+	public static JalistEntry fromLore(
+		@Nullable Type type,
+		@NotNull String name,
+		@NotNull List<String> lores,
+		@NotNull String server
+	) {
+		if (type == null) return null;
 		if (lores.size() < 3) return null;
 
-		Matcher locationMatch = locationPattern.matcher(lores.get(0).getString());
+		Matcher locationMatch = locationPattern.matcher(lores.get(0));
 		if (!locationMatch.matches()) return null;
-		Matcher groupMatch = groupPattern.matcher(lores.get(1).getString());
+		Matcher groupMatch = groupPattern.matcher(lores.get(1));
 		if (!groupMatch.matches()) return null;
-		Matcher lifetimeMatch = lifetimePattern.matcher(lores.get(2).getString());
+		Matcher lifetimeMatch = lifetimePattern.matcher(lores.get(2));
 		if (!lifetimeMatch.matches()) return null;
 
 		String world = locationMatch.group(1);
@@ -0,0 +1,544 @@
+package gjum.minecraft.civ.snitchmod.core.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+public class Snitch {
+	/**
+	 * Blocks the detection cube extends past the snitch block on each side.
+	 */
+	public final static int RANGE = 11;
+
+	private final static String JUKEBOX_DB_REPRESENTATION = "jukebox";
+	private final static String NOTEBLOCK_DB_REPRESENTATION = "note_block";
+	public enum Type {
+		JUKEBOX (1000L * 60L * 60L * 24L * 42L, JUKEBOX_DB_REPRESENTATION),
+		NOTEBLOCK (1000L * 60L * 60L * 24L * 28L, NOTEBLOCK_DB_REPRESENTATION);
+
+		public final long timer;
+		public final String dbRepresentation;
+		Type(long timer, String dbRepresentation) {
+			this.timer = timer;
+			this.dbRepresentation = dbRepresentation;
+		}
+
+		@Override
+		public String toString() {
+			return this.dbRepresentation;
+		}
+
+		/**
+		 * Also accepts the names used by older versions and other mods; null if unknown.
+		 */
+		public static @Nullable Type fromDb(@Nullable String raw) {
+			if (raw == null) return null;
+			return switch (raw.trim().toLowerCase()) {
+				case JUKEBOX_DB_REPRESENTATION, "juke_box", "juke box", "logsnitch" -> JUKEBOX;
+				case NOTEBLOCK_DB_REPRESENTATION, "noteblock", "note block", "snitch" -> NOTEBLOCK;
+				default -> null;
+			};
+		}
+	}
+
+	/**
+	 * Bits for {@link #getDirtyFields}, one per persisted field or pair of fields that change together.
+	 */
+	public final static int DIRTY_GROUP = 1;
+	public final static int DIRTY_TYPE = 1 << 1;
+	public final static int DIRTY_NAME = 1 << 2;
+	public final static int DIRTY_DORMANT = 1 << 3;
+	public final static int DIRTY_CULL = 1 << 4;
+	public final static int DIRTY_FIRST_SEEN = 1 << 5;
+	public final static int DIRTY_LAST_SEEN = 1 << 6;
+	public final static int DIRTY_CREATED = 1 << 7;
+	public final static int DIRTY_RENAMED = 1 << 8;
+	public final static int DIRTY_LOST_JALIST_ACCESS = 1 << 9;
+	public final static int DIRTY_BROKEN = 1 << 10;
+	public final static int DIRTY_GONE = 1 << 11;
+	public final static int DIRTY_TAGS = 1 << 12;
+	public final static int DIRTY_NOTES = 1 << 13;
+	/**
+	 * Not persisted yet at all.
+	 */
+	public final static int DIRTY_ALL = (1 << 14) - 1;
+
+	public boolean maybeRefreshed;
+	public final @NotNull WorldPos pos;
+	private @Nullable String group;
+	private @Nullable Type type;
+	private @Nullable String name;
+	private long dormantTs;
+	private long cullTs;
+	private long firstSeenTs;
+	private long lastSeenTs;
+	private long createdTs;
+	/**
+	 * UUIDs are stored as their two halves instead of as objects; both 0 (the nil UUID, never a player's) means null.
+	 */
+	private long createdByUuidMost;
+	private long createdByUuidLeast;
+	private long renamedTs;
+	private long renamedByUuidMost;
+	private long renamedByUuidLeast;
+	private long lostJalistAccessTs;
+	private long brokenTs;
+	private long goneTs;
+	/**
+	 * Never modified, only replaced, so callers can iterate it while a tag is added on another thread.
+	 * Shared empty set until the first tag is added; most snitches have no tags.
+	 */
+	private @NotNull Set<String> tags = Collections.emptySet();
+	private @Nullable String notes;
+	private int dirtyFields = DIRTY_ALL;
+
+	public Snitch(@NotNull WorldPos pos) {
+		this.pos = pos;
+	}
+
+	private Snitch(@NotNull Snitch other) {
+		this.maybeRefreshed = other.maybeRefreshed;
+		this.pos = other.pos;
+		this.group = other.group;
+		this.type = other.type;
+		this.name = other.name;
+		this.dormantTs = other.dormantTs;
+		this.cullTs = other.cullTs;
+		this.firstSeenTs = other.firstSeenTs;
+		this.lastSeenTs = other.lastSeenTs;
+		this.createdTs = other.createdTs;
+		this.createdByUuidMost = other.createdByUuidMost;
+		this.createdByUuidLeast = other.createdByUuidLeast;
+		this.renamedTs = other.renamedTs;
+		this.renamedByUuidMost = other.renamedByUuidMost;
+		this.renamedByUuidLeast = other.renamedByUuidLeast;
+		this.lostJalistAccessTs = other.lostJalistAccessTs;
+		this.brokenTs = other.brokenTs;
+		this.goneTs = other.goneTs;
+		this.tags = other.tags;
+		this.notes = other.notes;
+		this.dirtyFields = other.dirtyFields;
+	}
+
+	/**
+	 * Consistent point-in-time copy, safe to read from another thread (e.g. the DB writer)
+	 * while this snitch keeps getting updated.
+	 */
+	synchronized
+	public @NotNull Snitch snapshot() {
+		return new Snitch(this);
+	}
+
+	/**
+	 * Like {@link #snapshot}, and starts tracking changes anew from here,
+	 * as the copy is about to be written to the DB.
+	 */
+	synchronized
+	public @NotNull Snitch snapshotForWrite() {
+		Snitch copy = new Snitch(this);
+		dirtyFields = 0;
+		return copy;
+	}
+
+	/**
+	 * Marks `fields` as changed again after writing a {@link #snapshotForWrite} of them failed,
+	 * so the retry writes them too.
+	 */
+	synchronized
+	public void restoreDirtyFields(int fields) {
+		dirtyFields |= fields;
+	}
+
+	/**
+	 * Which fields changed since the snitch was loaded from or last written to the DB,
+	 * as DIRTY_* bits. {@link #DIRTY_ALL} if it was never written.
+	 */
+	public int getDirtyFields() {
+		return dirtyFields;
+	}
+
+	public Snitch(
+		@NotNull String server,
+		@NotNull String world,
+		int x, int y, int z,
+		@Nullable String group,
+		@Nullable String rawType,
+		@Nullable String name,
+		long dormantTs,
+		long cullTs,
+		long firstSeenTs,
+		long lastSeenTs,
+		long createdTs,
+		@Nullable String createdByUuid,
+		long renamedTs,
+		@Nullable String renamedByUuid,
+		long lostJalistAccessTs,
+		long brokenTs,
+		long goneTs,
+		@Nullable String tags,
+		@Nullable String notes
+	) {
+		this.pos = new WorldPos(server, world, x, y, z);
+		this.group = Interner.GROUPS.intern(group);
+		this.type = Type.fromDb(rawType);
+		this.name = name;
+		this.dormantTs = dormantTs;
+		this.cullTs = cullTs;
+		this.firstSeenTs = firstSeenTs;
+		this.lastSeenTs = lastSeenTs;
+		this.createdTs = createdTs;
+		if (createdByUuid != null) setCreatedByUuid(UUID.fromString(createdByUuid));
+		this.renamedTs = renamedTs;
+		if (renamedByUuid != null) setRenamedByUuid(UUID.fromString(renamedByUuid));
+		this.lostJalistAccessTs = lostJalistAccessTs;
+		this.brokenTs = brokenTs;
+		this.goneTs = goneTs;
+		// TODO move deserialization logic to database
+		if (tags != null && !tags.isEmpty()) {
+			this.tags = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(tags.split("\n"))));
+		}
+		this.notes = notes;
+		this.dirtyFields = 0;
+	}
+
+	synchronized
+	public void updateFromCreation(String group, @Nullable Type type, UUID createdByUuid) {
+		setGroup(group);
+		setType(type);
+		createdTs = System.currentTimeMillis();
+		setCreatedByUuid(createdByUuid);
+		dirtyFields |= DIRTY_CREATED;
+		firstSeenTs = createdTs;
+		lastSeenTs = createdTs;
+		dirtyFields |= DIRTY_FIRST_SEEN | DIRTY_LAST_SEEN;
+		if (type != null) {
+			setDormantTs(createdTs + type.timer);
+		}
+	}
+
+	synchronized
+	public void updateFromJalist(JalistEntry jalist) {
+		setGroup(jalist.group);
+		setType(jalist.type);
+		setName(jalist.name);
+		setDormantTs(jalist.dormantTs);
+		setCullTs(jalist.cullTs);
+		updateSeen(jalist.ts);
+		if (lostJalistAccessTs != 0) {
+			lostJalistAccessTs = 0;
+			dirtyFields |= DIRTY_LOST_JALIST_ACCESS;
+		}
+		this.maybeRefreshed = false;
+	}
+
+	synchronized
+	public void updateFromRename(SnitchRename rename) {
+		setGroup(rename.group);
+		setName(rename.snitchName);
+		this.renamedTs = rename.ts;
+		setRenamedByUuid(rename.clientUuid);
+		dirtyFields |= DIRTY_RENAMED;
+		updateSeen(rename.ts);
+	}
+
+	synchronized
+	public void updateFromAlert(SnitchAlert alert) {
+		setGroup(alert.group);
+		setName(alert.snitchName);
+		// if dormant/cull disagrees, we clearly don't know their true values
+		if (dormantTs != 0 && dormantTs < alert.ts) setDormantTs(0);
+		if (cullTs != 0 && cullTs < alert.ts) setCullTs(0);
+		updateSeen(alert.ts);
+	}
+
+	synchronized
+	public void updateFromBroken(SnitchBroken snitchBroken) {
+		setGroup(snitchBroken.group);
+		setDormantTs(0);
+		setCullTs(0);
+		updateSeen(snitchBroken.ts); // must have been alive to be broken like this
+		brokenTs = snitchBroken.ts;
+		dirtyFields |= DIRTY_BROKEN;
+		setGoneTs(snitchBroken.ts);
+	}
+
+	synchronized
+	public void updateGone() {
+		setGoneTs(System.currentTimeMillis());
+	}
+
+	synchronized
+	public void updateNoLongerGone() {
+		setGoneTs(0);
+	}
+
+	private void updateSeen(long ts) {
+		if (firstSeenTs == 0 || firstSeenTs > ts) {
+			firstSeenTs = ts;
+			dirtyFields |= DIRTY_FIRST_SEEN;
+		}
+		if (lastSeenTs < ts) {
+			lastSeenTs = ts;
+			dirtyFields |= DIRTY_LAST_SEEN;
+		}
+	}
+
+	// setters only mark a field dirty if its value actually changes; alerts repeat the same group and name a lot
+
+	private void setGroup(@Nullable String group) {
+		group = Interner.GROUPS.intern(group);
+		if (Objects.equals(this.group, group)) return;
+		this.group = group;
+		dirtyFields |= DIRTY_GROUP;
+	}
+
+	private void setType(@Nullable Type type) {
+		if (this.type == type) return;
+		this.type = type;
+		dirtyFields |= DIRTY_TYPE;
+	}
+
+	private void setName(@Nullable String name) {
+		if (Objects.equals(this.name, name)) return;
+		this.name = name;
+		dirtyFields |= DIRTY_NAME;
+	}
+
+	private void setDormantTs(long dormantTs) {
+		if (this.dormantTs == dormantTs) return;
+		this.dormantTs = dormantTs;
+		dirtyFields |= DIRTY_DORMANT;
+	}
+
+	private void setCullTs(long cullTs) {
+		if (this.cullTs == cullTs) return;
+		this.cullTs = cullTs;
+		dirtyFields |= DIRTY_CULL;
+	}
+
+	private void setGoneTs(long goneTs) {
+		if (this.goneTs == goneTs) return;
+		this.goneTs = goneTs;
+		dirtyFields |= DIRTY_GONE;
+	}
+
+	public WorldPos getPos() {
+		return pos;
+	}
+
+	/**
+	 * Whether the point lies within the snitch's detection cube.
+	 */
+	public boolean isInRange(double x, double y, double z) {
+		return x >= pos.getX() - RANGE && x < pos.getX() + 1 + RANGE
+			&& y >= pos.getY() - RANGE && y < pos.getY() + 1 + RANGE
+			&& z >= pos.getZ() - RANGE && z < pos.getZ() + 1 + RANGE;
+	}
+
+	@Nullable
+	public String getGroup() {
+		return group;
+	}
+
+	@Nullable
+	public Type getType() {
+		return type;
+	}
+
+	@Nullable
+	public String getName() {
+		return name;
+	}
+
+	public boolean isAlive() {
+		if (brokenTs != 0 || goneTs != 0) return false;
+		if (dormantTs == 0 && cullTs == 0) return true;
+		long now = System.currentTimeMillis();
+		return (dormantTs == 0 || now < dormantTs) && (cullTs == 0 || now < cullTs);
+	}
+
+	/**
+	 * "soft cull" date.
+	 * Milliseconds since the UNIX epoch.
+	 * 0 means unknown (e.g. from alert).
+	 */
+	public long getDormantTs() {
+		return dormantTs;
+	}
+
+	public boolean hasDormantTs() {
+		return dormantTs != 0;
+	}
+
+	/**
+	 * "hard cull" date.
+	 * Milliseconds since the UNIX epoch.
+	 * 0 means unknown (e.g. from alert).
+	 */
+	public long getCullTs() {
+		return cullTs;
+	}
+
+	public boolean hasCullTs() {
+		return cullTs != 0;
+	}
+
+	/**
+	 * When the snitch was first seen.
+	 * Milliseconds since the UNIX epoch.
+	 * 0 means unknown (e.g. never seen).
+	 */
+	public long getFirstSeenTs() {
+		return firstSeenTs;
+	}
+
+	/**
+	 * When the snitch was last seen.
+	 * Milliseconds since the UNIX epoch.
+	 * 0 means unknown (e.g. never seen).
+	 */
+	public long getLastSeenTs() {
+		return lastSeenTs;
+	}
+
+	/**
+	 * When the snitch was created.
+	 * Milliseconds since the UNIX epoch.
+	 * 0 means unknown when it was created.
+	 */
+	public long getCreatedTs() {
+		return createdTs;
+	}
+
+	public boolean hasCreatedTs() {
+		return createdTs != 0;
+	}
+
+	/**
+	 * Who created the snitch.
+	 * null means unknown who created it.
+	 */
+	public @Nullable UUID getCreatedByUuid() {
+		return uuidOrNull(createdByUuidMost, createdByUuidLeast);
+	}
+
+	private void setCreatedByUuid(@Nullable UUID uuid) {
+		createdByUuidMost = uuid == null ? 0 : uuid.getMostSignificantBits();
+		createdByUuidLeast = uuid == null ? 0 : uuid.getLeastSignificantBits();
+	}
+
+	/**
+	 * When the snitch was last renamed by the client player.
+	 * Milliseconds since the UNIX epoch.
+	 * 0 means it was not renamed by the client player.
+	 */
+	public long getRenamedTs() {
+		return renamedTs;
+	}
+
+	public boolean hasRenamedTs() {
+		return renamedTs != 0;
+	}
+
+	/**
+	 * UUID of the client player when she last renamed the snitch.
+	 * null means it was not renamed by the client player.
+	 */
+	public @Nullable UUID getRenamedByUuid() {
+		return uuidOrNull(renamedByUuidMost, renamedByUuidLeast);
+	}
+
+	private void setRenamedByUuid(@Nullable UUID uuid) {
+		renamedByUuidMost = uuid == null ? 0 : uuid.getMostSignificantBits();
+		renamedByUuidLeast = uuid == null ? 0 : uuid.getLeastSignificantBits();
+	}
+
+	private static @Nullable UUID uuidOrNull(long most, long least) {
+		return most == 0 && least == 0 ? null : new UUID(most, least);
+	}
+
+	/**
+	 * When the snitch was first missing from `/jalist`.
+	 * Milliseconds since the UNIX epoch.
+	 * 0 means unknown or still have access.
+	 * This is only set if the jalist has no snitches for the snitch's `group` at all,
+	 * indicating missing permissions on that group instead of a broken snitch.
+	 * Otherwise, `goneTs` is set instead.
+	 */
+	// TODO can this be different for different snitches in a given group?
+	public long getLostJalistAccessTs() {
+		return lostJalistAccessTs;
+	}
+
+	public boolean haveLostJalistAccess() {
+		return lostJalistAccessTs != 0;
+	}
+
+	/**
+	 * Precise time when the snitch was broken.
+	 * Milliseconds since the UNIX epoch.
+	 * 0 means still alive, or unknown when exactly it was broken.
+	 * If a snitch is gone but it's not known precisely when, `goneTs` is set instead.
+	 * Always less than or equal to `goneTs`.
+	 */
+	public long getBrokenTs() {
+		return brokenTs;
+	}
+
+	public boolean wasBroken() {
+		return brokenTs != 0;
+	}
+
+	/**
+	 * When the snitch was first missing from `/jalist`.
+	 * Milliseconds since the UNIX epoch.
+	 * 0 means alive or missing `/jalist` permissions.
+	 * This is not set if the jalist has no snitches for the snitch's `group` at all,
+	 * indicating missing permissions on that group instead of a broken snitch.
+	 * In that case, `lostJalistAccessTs` is set instead.
+	 * Always greater than or equal to `brokenTs`.
+	 */
+	public long getGoneTs() {
+		return goneTs;
+	}
+
+	public boolean isGone() {
+		return goneTs != 0;
+	}
+
+	/**
+	 * Read-only, and unaffected by later changes; use {@link #addTag} and {@link #removeTag} to change.
+	 */
+	public @NotNull Set<String> getTags() {
+		return tags;
+	}
+
+	synchronized
+	public boolean addTag(@NotNull String tag) {
+		if (tags.contains(tag)) return false;
+		Set<String> newTags = new HashSet<>(tags);
+		newTags.add(tag);
+		tags = Collections.unmodifiableSet(newTags);
+		dirtyFields |= DIRTY_TAGS;
+		return true;
+	}
+
+	synchronized
+	public boolean removeTag(@NotNull String tag) {
+		if (!tags.contains(tag)) return false;
+		if (tags.size() == 1) {
+			tags = Collections.emptySet();
+		} else {
+			Set<String> newTags = new HashSet<>(tags);
+			newTags.remove(tag);
+			tags = Collections.unmodifiableSet(newTags);
+		}
+		dirtyFields |= DIRTY_TAGS;
+		return true;
+	}
+
+	public @Nullable String getNotes() {
+		return notes;
+	}
+}
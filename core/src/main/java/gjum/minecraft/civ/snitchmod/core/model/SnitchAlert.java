@@ -1,14 +1,14 @@
-package gjum.minecraft.civ.snitchmod.common.model;
+package gjum.minecraft.civ.snitchmod.core.model;
 
-import net.minecraft.network.chat.Component;
-import net.minecraft.network.chat.HoverEvent;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import static gjum.minecraft.civ.snitchmod.common.Utils.nonEmptyOrDefault;
+import static gjum.minecraft.civ.snitchmod.core.TextUtils.nonEmptyOrDefault;
+import static gjum.minecraft.civ.snitchmod.core.TextUtils.stripFormatting;
 
 public class SnitchAlert {
 	/**
@@ -42,13 +42,19 @@ public class SnitchAlert {
 	// §6Location: §b(world) [123 45 -321]\n§6Name: §bSNITCHNAME\n§6Group: §bGROUPNAME
 	static Pattern hoverPattern = Pattern.compile("Location: (?:\\(?([^\\n)]+)\\)? )?\\[([-0-9]+),? ([-0-9]+),? ([-0-9]+)\\] *\\n(?:Name: ([^\\n]+)\\n)?Group: ([^ ]+).*", Pattern.MULTILINE);
 
+	/**
+	 * @param text chat message text
+	 * @param hoverText text of the message's hover tooltip; only evaluated if the message is an alert.
+	 *                  May supply null if there is no tooltip.
+	 */
 	@Nullable
-	public static SnitchAlert fromChat(
-		@NotNull Component message,
+	public static SnitchAlert fromText(
+		@NotNull String text,
+		@NotNull Supplier<String> hoverText,
 		@NotNull String server,
 		@NotNull String world
 	) {
-		String text = message.getString().replaceAll("§.", "");
+		text = stripFormatting(text);
 
 		Matcher textMatch = alertPattern.matcher(text);
 		if (!textMatch.matches()) return null;
@@ -62,12 +68,9 @@ public class SnitchAlert {
 		int z = Integer.parseInt(textMatch.group(7));
 
 		String group = null;
-		final HoverEvent hoverEvent = message.getSiblings().get(0).getStyle().getHoverEvent();
-		if (hoverEvent != null && hoverEvent.action() == HoverEvent.Action.SHOW_TEXT) {
-			@SuppressWarnings("ConstantConditions")
-			String hoverText = ((HoverEvent.ShowText)hoverEvent).value().getString().replaceAll("§.", "");
-
-			Matcher hoverMatch = hoverPattern.matcher(hoverText);
+		String hover = hoverText.get();
+		if (hover != null) {
+			Matcher hoverMatch = hoverPattern.matcher(stripFormatting(hover));
 			if (hoverMatch.matches()) {
 				world = nonEmptyOrDefault(hoverMatch.group(1), world);
 				group = hoverMatch.group(6);
@@ -1,12 +1,12 @@
-package gjum.minecraft.civ.snitchmod.common.model;
+package gjum.minecraft.civ.snitchmod.core.model;
 
-import net.minecraft.core.BlockPos;
-import net.minecraft.network.chat.Component;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static gjum.minecraft.civ.snitchmod.core.TextUtils.stripFormatting;
+
 public class SnitchBroken {
 	public final long ts;
 	public final @NotNull WorldPos pos;
@@ -21,13 +21,17 @@ public class SnitchBroken {
 	// Snitch was reinforced on GROUP owned by OWNER
 	private static final Pattern brokenPattern = Pattern.compile("^(\\S+) was reinforced on (\\S+) owned by ([A-Za-z0-9_]{3,17}).*");
 
-	public static SnitchBroken fromChat(
-		@NotNull Component message,
-		@NotNull BlockPos lastBrokenBlockPos,
+	/**
+	 * @param text chat message text
+	 * @param x x of the block last broken by the player
+	 */
+	public static SnitchBroken fromText(
+		@NotNull String text,
+		int x, int y, int z,
 		@NotNull String server,
 		@NotNull String world
 	) {
-		String text = message.getString().replaceAll("§.", "");
+		text = stripFormatting(text);
 
 		Matcher textMatch = brokenPattern.matcher(text);
 		if (!textMatch.matches()) return null;
@@ -35,10 +39,6 @@ public class SnitchBroken {
 		String group = textMatch.group(2);
 
 		// XXX coords from chat should override block pos heuristic
-		int x = lastBrokenBlockPos.getX();
-		int y = lastBrokenBlockPos.getY();
-		int z = lastBrokenBlockPos.getZ();
-
 		return new SnitchBroken(new WorldPos(server, world, x, y, z), group);
 	}
 }
@@ -1,21 +1,21 @@
-package gjum.minecraft.civ.snitchmod.common.model;
+package gjum.minecraft.civ.snitchmod.core.model;
 
-import net.minecraft.network.chat.Component;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import static gjum.minecraft.civ.snitchmod.common.Utils.nonEmptyOrDefault;
-import gjum.minecraft.civ.snitchmod.common.model.Snitch.Type;
+import static gjum.minecraft.civ.snitchmod.core.TextUtils.nonEmptyOrDefault;
+import static gjum.minecraft.civ.snitchmod.core.TextUtils.stripFormatting;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch.Type;
 
 public class SnitchCreatedChatParser {
 	// Created Snitch on group GROUPNAME at [123 45 -321]
 	static Pattern createdPattern = Pattern.compile("^Created (\\S+) on group (\\S+) at \\[(?:\\(?([^\\n)]+)\\)? )?([-0-9.]+) ([-0-9.]+) ([-0-9.]+)\\].*");
 
-	public static Snitch fromChat(Component message, String server, String world, @NotNull UUID clientUuid) {
-		String text = message.getString().replaceAll("§.", "");
+	public static Snitch fromText(String text, String server, String world, @NotNull UUID clientUuid) {
+		text = stripFormatting(text);
 
 		Matcher textMatch = createdPattern.matcher(text);
 		if (!textMatch.matches()) return null;
@@ -1,15 +1,15 @@
-package gjum.minecraft.civ.snitchmod.common.model;
+package gjum.minecraft.civ.snitchmod.core.model;
 
-import net.minecraft.network.chat.Component;
-import net.minecraft.network.chat.HoverEvent;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.UUID;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import static gjum.minecraft.civ.snitchmod.common.Utils.nonEmptyOrDefault;
+import static gjum.minecraft.civ.snitchmod.core.TextUtils.nonEmptyOrDefault;
+import static gjum.minecraft.civ.snitchmod.core.TextUtils.stripFormatting;
 
 public class SnitchRename {
 	public final long ts;
@@ -42,13 +42,19 @@ public class SnitchRename {
 	// §6Location: §b(world) [123 45 -321]\n§6Name: §bSNITCHNAME\n§6Group: §bGROUPNAME
 	static Pattern hoverPattern = Pattern.compile("Location: (?:\\(?([^\\n)]+)\\)? )?\\[([-0-9]+),? ([-0-9]+),? ([-0-9]+)\\] *\\nName: ([^\\n]*) *\\nGroup: ([^ ]+).*", Pattern.MULTILINE);
 
-	public static @Nullable SnitchRename fromChat(
-		@NotNull Component message,
+	/**
+	 * @param text chat message text
+	 * @param hoverText text of the message's hover tooltip; only evaluated if the message is a rename.
+	 *                  May supply null if there is no tooltip, in which case the message is ignored.
+	 */
+	public static @Nullable SnitchRename fromText(
+		@NotNull String text,
+		@NotNull Supplier<String> hoverText,
 		@NotNull String server,
 		@NotNull String world,
 		@NotNull UUID clientUuid
 	) {
-		String text = message.getString().replaceAll("§.", "");
+		text = stripFormatting(text);
 
 		Matcher textMatch = renamePattern.matcher(text);
 		if (!textMatch.matches()) return null;
@@ -56,13 +62,10 @@ public class SnitchRename {
 		String snitchName = textMatch.group(1);
 		String snitchOldName = textMatch.group(2);
 
-		final HoverEvent hoverEvent = message.getSiblings().get(0).getStyle().getHoverEvent();
-		if (hoverEvent == null || hoverEvent.action() != HoverEvent.Action.SHOW_TEXT) return null;
+		String hover = hoverText.get();
+		if (hover == null) return null;
 
-		@SuppressWarnings("ConstantConditions")
-		String hoverText = ((HoverEvent.ShowText)hoverEvent).value().getString().replaceAll("§.", "");
-
-		Matcher hoverMatch = hoverPattern.matcher(hoverText);
+		Matcher hoverMatch = hoverPattern.matcher(stripFormatting(hover));
 		if (!hoverMatch.matches()) return null;
 
 		world = nonEmptyOrDefault(hoverMatch.group(1), world);
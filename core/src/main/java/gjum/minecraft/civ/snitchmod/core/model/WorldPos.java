@@ -0,0 +1,106 @@
+package gjum.minecraft.civ.snitchmod.core.model;
+
+import org.jetbrains.annotations.NotNull;
+
+public class WorldPos {
+	// same bit layout as Minecraft's BlockPos.asLong
+	private static final int PACKED_XZ_BITS = 26;
+	private static final int PACKED_Y_BITS = 12;
+	private static final long PACKED_XZ_MASK = (1L << PACKED_XZ_BITS) - 1;
+	private static final long PACKED_Y_MASK = (1L << PACKED_Y_BITS) - 1;
+	private static final int PACKED_Z_OFFSET = PACKED_Y_BITS;
+	private static final int PACKED_X_OFFSET = PACKED_Y_BITS + PACKED_XZ_BITS;
+
+	@NotNull
+	public final String server;
+	@NotNull
+	public final String world;
+	private final int x;
+	private final int y;
+	private final int z;
+
+	public WorldPos(
+		@NotNull String server,
+		@NotNull String world,
+		int x,
+		int y,
+		int z
+	) {
+		this.server = Interner.SERVERS.intern(server);
+		this.world = Interner.WORLDS.intern(world);
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	/**
+	 * Packs x/y/z into one long, the same way as Minecraft's BlockPos.asLong.
+	 */
+	public static long asLong(int x, int y, int z) {
+		return ((long) x & PACKED_XZ_MASK) << PACKED_X_OFFSET
+			| ((long) y & PACKED_Y_MASK)
+			| ((long) z & PACKED_XZ_MASK) << PACKED_Z_OFFSET;
+	}
+
+	public long asLong() {
+		return asLong(x, y, z);
+	}
+
+	@NotNull
+	public String getServer() {
+		return server;
+	}
+
+	@NotNull
+	public String getWorld() {
+		return world;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public int getZ() {
+		return z;
+	}
+
+	/**
+	 * Squared distance between the two block positions.
+	 */
+	public double distSqr(int x, int y, int z) {
+		double dx = this.x - x;
+		double dy = this.y - y;
+		double dz = this.z - z;
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	public double distSqr(@NotNull WorldPos other) {
+		return distSqr(other.x, other.y, other.z);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof WorldPos worldPos)) return false;
+		return x == worldPos.x && y == worldPos.y && z == worldPos.z
+			&& server.equals(worldPos.server) && world.equals(worldPos.world);
+	}
+
+	@Override
+	public int hashCode() {
+		// not Objects.hash: that boxes and allocates a varargs array on every call
+		int result = (y + z * 31) * 31 + x;
+		result = 31 * result + server.hashCode();
+		result = 31 * result + world.hashCode();
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s %s [%d %d %d]", server, world, x, y, z);
+	}
+}
@@ -0,0 +1,181 @@
+package gjum.minecraft.civ.snitchmod.core.replay;
+
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * File format for recorded chat and container packets, already reduced to the text the parsers see.
+ * <p>
+ * Gzipped stream of: header (magic, version, start time, server, client uuid),
+ * then entries until EOF. Each entry starts with its kind, the nanoseconds since the
+ * recording started, and the world it was received in.
+ */
+public class PacketRecording {
+	private static final int MAGIC = 0x534d5243; // "SMRC"
+	private static final short VERSION = 1;
+
+	private static final byte KIND_CHAT = 1;
+	private static final byte KIND_WINDOW_ITEMS = 2;
+
+	public sealed interface Entry permits ChatEntry, WindowItemsEntry {
+		long nanos();
+
+		@Nullable String world();
+	}
+
+	/**
+	 * @param hoverText text of the message's hover tooltip, if any
+	 */
+	public record ChatEntry(long nanos, @Nullable String world, @NotNull String text, @Nullable String hoverText) implements Entry {
+	}
+
+	/**
+	 * @param stackCount number of stacks in the packet, including those that aren't snitches
+	 * @param items      only the stacks that could be `/jalist` entries
+	 */
+	public record WindowItemsEntry(long nanos, @Nullable String world, int stackCount, @NotNull List<JalistItem> items) implements Entry {
+	}
+
+	/**
+	 * A note block or jukebox stack with custom name and lore, see {@link gjum.minecraft.civ.snitchmod.core.model.JalistEntry#fromLore}.
+	 */
+	public record JalistItem(@NotNull Snitch.Type type, @NotNull String name, @NotNull List<String> lore) {
+	}
+
+	public static class Writer implements Closeable {
+		private final DataOutputStream out;
+		private final long startNanos = System.nanoTime();
+
+		public Writer(@NotNull File file, @NotNull String server, @Nullable String clientUuid) throws IOException {
+			File dir = file.getAbsoluteFile().getParentFile();
+			if (dir != null) dir.mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeLong(System.currentTimeMillis());
+			writeString(out, server);
+			writeString(out, clientUuid != null ? clientUuid : "");
+		}
+
+		synchronized
+		public void writeChat(@Nullable String world, @NotNull String text, @Nullable String hoverText) throws IOException {
+			writeEntryHeader(KIND_CHAT, world);
+			writeString(out, text);
+			out.writeBoolean(hoverText != null);
+			if (hoverText != null) writeString(out, hoverText);
+		}
+
+		synchronized
+		public void writeWindowItems(@Nullable String world, int stackCount, @NotNull List<JalistItem> items) throws IOException {
+			writeEntryHeader(KIND_WINDOW_ITEMS, world);
+			out.writeInt(stackCount);
+			out.writeInt(items.size());
+			for (JalistItem item : items) {
+				out.writeByte(item.type() == Snitch.Type.JUKEBOX ? 1 : 2);
+				writeString(out, item.name());
+				out.writeInt(item.lore().size());
+				for (String line : item.lore()) writeString(out, line);
+			}
+		}
+
+		private void writeEntryHeader(byte kind, @Nullable String world) throws IOException {
+			out.writeByte(kind);
+			out.writeLong(System.nanoTime() - startNanos);
+			writeString(out, world != null ? world : "");
+		}
+
+		synchronized
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		synchronized
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	public final long startTs;
+	public final @NotNull String server;
+	public final @Nullable String clientUuid;
+	public final @NotNull List<Entry> entries;
+
+	private PacketRecording(long startTs, @NotNull String server, @Nullable String clientUuid, @NotNull List<Entry> entries) {
+		this.startTs = startTs;
+		this.server = server;
+		this.clientUuid = clientUuid;
+		this.entries = entries;
+	}
+
+	/**
+	 * Reads the whole recording into memory, so replaying it doesn't measure file IO.
+	 * A truncated last entry, e.g. from a game crash, is dropped.
+	 */
+	public static @NotNull PacketRecording read(@NotNull File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+			if (in.readInt() != MAGIC) throw new IOException("Not a SnitchMod recording: " + file);
+			short version = in.readShort();
+			if (version != VERSION) throw new IOException("Unsupported recording version " + version + ": " + file);
+			long startTs = in.readLong();
+			String server = readString(in);
+			String clientUuid = readString(in);
+			List<Entry> entries = new ArrayList<>();
+			try {
+				while (true) {
+					int kind = in.read();
+					if (kind < 0) break;
+					long nanos = in.readLong();
+					String world = readString(in);
+					if (world.isEmpty()) world = null;
+					if (kind == KIND_CHAT) {
+						String text = readString(in);
+						String hoverText = in.readBoolean() ? readString(in) : null;
+						entries.add(new ChatEntry(nanos, world, text, hoverText));
+					} else if (kind == KIND_WINDOW_ITEMS) {
+						int stackCount = in.readInt();
+						int itemCount = in.readInt();
+						List<JalistItem> items = new ArrayList<>(itemCount);
+						for (int i = 0; i < itemCount; i++) {
+							Snitch.Type type = in.readByte() == 1 ? Snitch.Type.JUKEBOX : Snitch.Type.NOTEBLOCK;
+							String name = readString(in);
+							int loreCount = in.readInt();
+							List<String> lore = new ArrayList<>(loreCount);
+							for (int j = 0; j < loreCount; j++) lore.add(readString(in));
+							items.add(new JalistItem(type, name, lore));
+						}
+						entries.add(new WindowItemsEntry(nanos, world, stackCount, items));
+					} else {
+						throw new IOException("Unknown entry kind " + kind + " after " + entries.size() + " entries: " + file);
+					}
+				}
+			} catch (EOFException e) {
+				System.err.println("Recording ends in a truncated entry after " + entries.size() + " entries: " + file);
+			}
+			return new PacketRecording(startTs, server, clientUuid.isEmpty() ? null : clientUuid, entries);
+		}
+	}
+
+	/**
+	 * Length-prefixed UTF-8; unlike {@link DataOutputStream#writeUTF} this has no 64KB limit.
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,77 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import gjum.minecraft.civ.snitchmod.core.SnitchStorage.Tombstone;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import gjum.minecraft.civ.snitchmod.core.model.WorldPos;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static gjum.minecraft.civ.snitchmod.core.SnitchSqliteDbTest.SERVER;
+import static gjum.minecraft.civ.snitchmod.core.SnitchSqliteDbTest.snitch;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnitchJournalStorageTest {
+	@TempDir
+	File dir;
+
+	static WorldPos pos(int x) {
+		return new WorldPos(SERVER, "world", x, 64, 0);
+	}
+
+	@Test
+	void replaysUpToTornRecord() throws Exception {
+		File file = new File(dir, "snitches.journal");
+		SnitchJournalStorage journal = new SnitchJournalStorage(SERVER, file);
+		assertTrue(journal.writeSnitches(List.of(
+			snitch("world", 1, 64, 0, "one", 100, "", null),
+			snitch("world", 2, 64, 0, "two", 100, "", null))));
+		assertTrue(journal.deleteSnitches(List.of(new Tombstone("world", 2, 64, 0, 200))));
+		long beforeLastBatch = file.length();
+		assertTrue(journal.writeSnitches(List.of(snitch("world", 3, 64, 0, "three", 100, "", null))));
+		journal.close();
+
+		// a crash while appending the last batch
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(file.length() - 3);
+		}
+
+		journal = new SnitchJournalStorage(SERVER, file);
+		assertEquals(beforeLastBatch, file.length());
+		assertEquals(1, journal.size());
+		Snitch one = journal.selectSnitch(pos(1));
+		assertNotNull(one);
+		assertEquals("one", one.getName());
+		assertNull(journal.selectSnitch(pos(2)));
+		assertNull(journal.selectSnitch(pos(3)));
+
+		// appends after the cut are replayed as well
+		assertTrue(journal.writeSnitches(List.of(snitch("world", 4, 64, 0, "four", 100, "", null))));
+		journal.close();
+		journal = new SnitchJournalStorage(SERVER, file);
+		assertEquals(2, journal.size());
+		assertNotNull(journal.selectSnitch(pos(1)));
+		assertNotNull(journal.selectSnitch(pos(4)));
+		journal.close();
+	}
+
+	@Test
+	void replaysLatestPutOfSnitch() throws Exception {
+		File file = new File(dir, "snitches.journal");
+		SnitchJournalStorage journal = new SnitchJournalStorage(SERVER, file);
+		assertTrue(journal.writeSnitches(List.of(snitch("world", 1, 64, 0, "old", 100, "", null))));
+		assertTrue(journal.writeSnitches(List.of(snitch("world", 1, 64, 0, "new", 200, "tag", "note"))));
+		journal.close();
+
+		journal = new SnitchJournalStorage(SERVER, file);
+		Snitch snitch = journal.selectSnitch(pos(1));
+		assertNotNull(snitch);
+		assertEquals("new", snitch.getName());
+		assertEquals(200, snitch.getLastSeenTs());
+		assertEquals("note", snitch.getNotes());
+		journal.close();
+	}
+}
@@ -0,0 +1,215 @@
+package gjum.minecraft.civ.snitchmod.core;
+
+import gjum.minecraft.civ.snitchmod.core.SnitchSqliteDb.MergePolicy;
+import gjum.minecraft.civ.snitchmod.core.SnitchStorage.Tombstone;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import gjum.minecraft.civ.snitchmod.core.model.WorldPos;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnitchSqliteDbTest {
+	static final String SERVER = "test.example.com";
+
+	@TempDir
+	File dir;
+
+	/**
+	 * Never written, like a snitch that was just observed.
+	 */
+	static Snitch snitch(String world, int x, int y, int z, String name, long lastSeenTs, String tags, String notes) {
+		Snitch snitch = new Snitch(SERVER, world, x, y, z, "group", "jukebox", name,
+			0, 0, lastSeenTs, lastSeenTs, 0, null, 0, null, 0, 0, 0, tags, notes);
+		snitch.restoreDirtyFields(Snitch.DIRTY_ALL);
+		return snitch;
+	}
+
+	/**
+	 * As {@link SnitchTransfer#importFrom} would pass them to the DB.
+	 */
+	static List<Object[]> rowsOf(Snitch... snitches) {
+		List<Object[]> rows = new ArrayList<>();
+		for (Snitch snitch : snitches) rows.add(SnitchTransfer.rowOf(SnitchTransfer.valuesOf(snitch)));
+		return rows;
+	}
+
+	SnitchSqliteDb open() throws Exception {
+		return new SnitchSqliteDb(SERVER, new File(dir, "snitches.sqlite"), SnitchSqliteDb.Profile.DEFAULT);
+	}
+
+	@Test
+	void migratesBaselineV2Db() throws Exception {
+		// the schema SnitchMod created before it had migrations
+		try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + new File(dir, "snitches.sqlite").getPath());
+			 Statement stmt = conn.createStatement()) {
+			stmt.execute("CREATE TABLE IF NOT EXISTS snitches_v2 ( world TEXT, x INT, y INT, z INT" +
+				", group_name TEXT, type TEXT, name TEXT, dormant_ts BIGINT, cull_ts BIGINT" +
+				", first_seen_ts BIGINT, last_seen_ts BIGINT, created_ts BIGINT, created_by_uuid TEXT" +
+				", renamed_ts BIGINT, renamed_by_uuid TEXT, lost_jalist_access_ts BIGINT, broken_ts BIGINT" +
+				", gone_ts BIGINT, tags TEXT, notes TEXT, PRIMARY KEY (world,x,y,z));");
+			stmt.execute("INSERT INTO snitches_v2 VALUES ('world', 1, 64, -2, 'mygroup', 'jukebox', 'gate', 10, 20, 30, 40" +
+				", 50, '00000000-0000-0000-0000-000000000001', 0, NULL, 0, 0, 0, 'base\nvault', 'by the gate')");
+			stmt.execute("INSERT INTO snitches_v2 VALUES ('world_nether', 5, 6, 7, NULL, NULL, NULL, 0, 0, 0, 0" +
+				", 0, NULL, 0, NULL, 0, 0, 0, NULL, NULL)");
+		}
+
+		SnitchSqliteDb db = open();
+		assertEquals(2, db.selectAllSnitches().size());
+		Snitch gate = db.selectSnitch(new WorldPos(SERVER, "world", 1, 64, -2));
+		assertNotNull(gate);
+		assertEquals("mygroup", gate.getGroup());
+		assertEquals(Snitch.Type.JUKEBOX, gate.getType());
+		assertEquals("gate", gate.getName());
+		assertEquals(40, gate.getLastSeenTs());
+		assertEquals("00000000-0000-0000-0000-000000000001", String.valueOf(gate.getCreatedByUuid()));
+		assertEquals(Set.of("base", "vault"), gate.getTags());
+		assertEquals("by the gate", gate.getNotes());
+		assertNotNull(db.selectSnitch(new WorldPos(SERVER, "world_nether", 5, 6, 7)));
+		// the indexes added after the migrations were filled from the old rows
+		assertEquals(1, db.selectSnitchesWithTag("world", "vault").size());
+		assertEquals(1, db.searchSnitches("gate", "world", 0, 0, 0, 10).size());
+		assertEquals(1, db.selectSnitchesNear("world", 0, 64, 0, 5).size());
+		db.close();
+
+		try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + new File(dir, "snitches.sqlite").getPath());
+			 Statement stmt = conn.createStatement()) {
+			try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE name = 'snitches_v2'")) {
+				assertFalse(rs.next());
+			}
+			try (ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+				assertTrue(rs.next());
+				assertEquals(5, rs.getInt(1));
+			}
+		}
+
+		// opening the migrated DB again changes nothing
+		db = open();
+		assertEquals(2, db.selectAllSnitches().size());
+		db.close();
+	}
+
+	@Test
+	void partialWriteOnlyChangesDirtyColumns() throws Exception {
+		SnitchSqliteDb db = open();
+		WorldPos pos = new WorldPos(SERVER, "world", 10, 20, 30);
+		assertTrue(db.writeSnitches(List.of(snitch("world", 10, 20, 30, "old name", 100, "", null))));
+		Snitch loaded = db.selectSnitch(pos);
+		assertNotNull(loaded);
+		assertEquals(0, loaded.getDirtyFields());
+
+		// someone else renames it in the DB after it was loaded
+		db.importRows(rowsOf(snitch("world", 10, 20, 30, "new name", 100, "", null)), MergePolicy.OVERWRITE);
+
+		loaded.addTag("farm");
+		Snitch write = loaded.snapshotForWrite();
+		assertEquals(Snitch.DIRTY_TAGS, write.getDirtyFields());
+		assertEquals(0, loaded.getDirtyFields());
+		assertTrue(db.writeSnitches(List.of(write)));
+		db.close();
+
+		db = open();
+		Snitch reloaded = db.selectSnitch(pos);
+		assertNotNull(reloaded);
+		assertEquals("new name", reloaded.getName());
+		assertEquals(Set.of("farm"), reloaded.getTags());
+		assertEquals(1, db.selectSnitchesWithTag("world", "farm").size());
+		db.close();
+	}
+
+	@Test
+	void partialWriteOfMissingRowWritesAllColumns() throws Exception {
+		SnitchSqliteDb db = open();
+		WorldPos pos = new WorldPos(SERVER, "world", 10, 20, 30);
+		assertTrue(db.writeSnitches(List.of(snitch("world", 10, 20, 30, "gate", 100, "", "note"))));
+		Snitch loaded = db.selectSnitch(pos);
+		assertNotNull(loaded);
+		assertTrue(db.deleteSnitches(List.of(new Tombstone("world", 10, 20, 30, 200))));
+		assertNull(db.selectSnitch(pos));
+
+		loaded.updateGone();
+		assertTrue(db.writeSnitches(List.of(loaded.snapshotForWrite())));
+		db.close();
+
+		db = open();
+		Snitch reloaded = db.selectSnitch(pos);
+		assertNotNull(reloaded);
+		assertEquals("gate", reloaded.getName());
+		assertEquals("note", reloaded.getNotes());
+		assertEquals(100, reloaded.getLastSeenTs());
+		assertTrue(reloaded.isGone());
+		db.close();
+	}
+
+	/**
+	 * Writes the local snitch, then imports the remote one at the same position with `policy`.
+	 */
+	Snitch importOver(Snitch local, Snitch remote, MergePolicy policy) throws Exception {
+		SnitchSqliteDb db = open();
+		assertTrue(db.writeSnitches(List.of(local)));
+		assertTrue(db.importRows(rowsOf(remote), policy));
+		Snitch merged = db.selectSnitch(local.pos);
+		db.close();
+		assertNotNull(merged);
+		return merged;
+	}
+
+	@Test
+	void importNewestTakesFieldsFromWhoSawItLast() throws Exception {
+		Snitch merged = importOver(
+			snitch("world", 1, 2, 3, "local", 100, "", "local note"),
+			snitch("world", 1, 2, 3, "remote", 200, "remote tag", "remote note"),
+			MergePolicy.NEWEST);
+		assertEquals("remote", merged.getName());
+		assertEquals(200, merged.getLastSeenTs());
+		assertEquals(100, merged.getFirstSeenTs());
+		// local notes are kept unless empty
+		assertEquals("local note", merged.getNotes());
+		assertEquals(Set.of("remote tag"), merged.getTags());
+	}
+
+	@Test
+	void importNewestKeepsLocalFieldsSeenLater() throws Exception {
+		Snitch merged = importOver(
+			snitch("world", 1, 2, 3, "local", 200, "", null),
+			snitch("world", 1, 2, 3, "remote", 100, "", null),
+			MergePolicy.NEWEST);
+		assertEquals("local", merged.getName());
+		assertEquals(200, merged.getLastSeenTs());
+		assertEquals(100, merged.getFirstSeenTs());
+	}
+
+	@Test
+	void importKeepLocalOnlyAddsNewSnitches() throws Exception {
+		Snitch merged = importOver(
+			snitch("world", 1, 2, 3, "local", 100, "", null),
+			snitch("world", 1, 2, 3, "remote", 200, "remote tag", "remote note"),
+			MergePolicy.KEEP_LOCAL);
+		assertEquals("local", merged.getName());
+		assertEquals(100, merged.getLastSeenTs());
+		assertEquals(Set.of(), merged.getTags());
+
+		SnitchSqliteDb db = open();
+		assertTrue(db.importRows(rowsOf(snitch("world", 4, 5, 6, "remote", 200, "", null)), MergePolicy.KEEP_LOCAL));
+		assertEquals(2, db.selectAllSnitches().size());
+		db.close();
+	}
+
+	@Test
+	void importOverwriteReplacesLocalSnitches() throws Exception {
+		Snitch merged = importOver(
+			snitch("world", 1, 2, 3, "local", 200, "local tag", "local note"),
+			snitch("world", 1, 2, 3, "remote", 100, "", "remote note"),
+			MergePolicy.OVERWRITE);
+		assertEquals("remote", merged.getName());
+		assertEquals(100, merged.getLastSeenTs());
+		assertEquals("remote note", merged.getNotes());
+		assertEquals(Set.of(), merged.getTags());
+	}
+}
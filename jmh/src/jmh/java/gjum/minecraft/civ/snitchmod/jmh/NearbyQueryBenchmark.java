@@ -0,0 +1,74 @@
+package gjum.minecraft.civ.snitchmod.jmh;
+
+import gjum.minecraft.civ.snitchmod.core.NearbySnitchesCache;
+import gjum.minecraft.civ.snitchmod.core.SnitchColumns;
+import gjum.minecraft.civ.snitchmod.core.SnitchSqliteDb;
+import gjum.minecraft.civ.snitchmod.core.SnitchesStore;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-frame nearby snitch queries of the renderer, answered by the store directly and through the cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NearbyQueryBenchmark {
+	@Param({"1000", "10000", "100000", "500000"})
+	public int snitchCount;
+
+	private SnitchesStore store;
+	private List<SnitchDataset.QueryPoint> queryPoints;
+	private List<SnitchDataset.QueryPoint> walk;
+	private final NearbySnitchesCache cache = new NearbySnitchesCache();
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		SnitchDataset dataset = SnitchDataset.generate(snitchCount, 42);
+		store = new SnitchesStore(SnitchDataset.SERVER, (SnitchSqliteDb) null);
+		for (Snitch snitch : dataset.snitches) {
+			store.updateSnitchFromCreation(snitch);
+		}
+		queryPoints = dataset.queryPoints(1024);
+		walk = dataset.walk(60 * 60);
+	}
+
+	private SnitchDataset.QueryPoint nextPoint(List<SnitchDataset.QueryPoint> points) {
+		if (next >= points.size()) next = 0;
+		return points.get(next++);
+	}
+
+	/**
+	 * Range overlay: all unbroken snitches within render distance.
+	 */
+	@Benchmark
+	public List<Snitch> overlayQuery() {
+		SnitchDataset.QueryPoint p = nextPoint(queryPoints);
+		return store.getNearbySnitches(p.world(), p.x(), p.y(), p.z(), 260, 100, SnitchColumns.Filter.NOT_BROKEN);
+	}
+
+	/**
+	 * Placement helper: the few closest alive snitches.
+	 */
+	@Benchmark
+	public List<Snitch> placementHelperQuery() {
+		SnitchDataset.QueryPoint p = nextPoint(queryPoints);
+		return store.getNearbySnitches(p.world(), p.x(), p.y(), p.z(), 50, 10, SnitchColumns.Filter.ALIVE);
+	}
+
+	/**
+	 * Range overlay while the player walks, one query per frame, as the renderer does it.
+	 */
+	@Benchmark
+	public List<Snitch> cachedOverlayWalking() {
+		SnitchDataset.QueryPoint p = nextPoint(walk);
+		return cache.getNearby(store, p.world(), p.x(), p.y(), p.z(), 260, 100, SnitchColumns.Filter.NOT_BROKEN);
+	}
+}
@@ -0,0 +1,67 @@
+package gjum.minecraft.civ.snitchmod.jmh;
+
+import gjum.minecraft.civ.snitchmod.core.model.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each chat message runs through all chat parsers, so the cost of rejecting
+ * unrelated chat matters as much as parsing the messages we're after.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+	// sample messages as the server sends them, formatting codes included
+	private static final String ALERT_TEXT = "§6Enter  §bSomePlayer  §bfarm-entrance  §b[1234 64 -4321]  §7[12m North West]";
+	private static final String ALERT_HOVER = "§6Location: §b(world) [1234 64 -4321]\n§6Name: §bfarm-entrance\n§6Group: §bmybase";
+	private static final String RENAME_TEXT = "§aChanged snitch name to farm-exit from farm-entrance";
+	private static final String RENAME_HOVER = "§6Location: §b(world) [1234 64 -4321]\n§6Name: §bfarm-exit\n§6Group: §bmybase";
+	private static final String CREATED_TEXT = "§aCreated LogSnitch on group mybase at [1234 64 -4321]";
+	private static final String OTHER_CHAT_TEXT = "§f<SomePlayer> anyone selling diamonds? paying in iron, pm me";
+	private static final String JALIST_NAME = "farm-entrance";
+	private static final List<String> JALIST_LORE = List.of(
+		"Location: world 1234 64 -4321",
+		"Group: mybase",
+		"Will cull in 503h 12m 5s");
+
+	private static final String SERVER = SnitchDataset.SERVER;
+	private static final UUID CLIENT_UUID = UUID.randomUUID();
+
+	@Benchmark
+	public SnitchAlert alert() {
+		return SnitchAlert.fromText(ALERT_TEXT, () -> ALERT_HOVER, SERVER, "world");
+	}
+
+	@Benchmark
+	public SnitchRename rename() {
+		return SnitchRename.fromText(RENAME_TEXT, () -> RENAME_HOVER, SERVER, "world", CLIENT_UUID);
+	}
+
+	@Benchmark
+	public Snitch created() {
+		return SnitchCreatedChatParser.fromText(CREATED_TEXT, SERVER, "world", CLIENT_UUID);
+	}
+
+	@Benchmark
+	public JalistEntry jalistEntry() {
+		return JalistEntry.fromLore(Snitch.Type.JUKEBOX, JALIST_NAME, JALIST_LORE, SERVER);
+	}
+
+	/**
+	 * Unrelated chat, rejected by every parser, in the order SnitchMod.handleChat tries them.
+	 */
+	@Benchmark
+	public Object otherChat() {
+		Object result = SnitchAlert.fromText(OTHER_CHAT_TEXT, () -> null, SERVER, "world");
+		if (result == null) result = SnitchRename.fromText(OTHER_CHAT_TEXT, () -> null, SERVER, "world", CLIENT_UUID);
+		if (result == null) result = SnitchCreatedChatParser.fromText(OTHER_CHAT_TEXT, SERVER, "world", CLIENT_UUID);
+		return result;
+	}
+}
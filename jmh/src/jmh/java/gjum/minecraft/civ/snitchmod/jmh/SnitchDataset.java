@@ -0,0 +1,119 @@
+package gjum.minecraft.civ.snitchmod.jmh;
+
+import gjum.minecraft.civ.snitchmod.core.model.JalistEntry;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import gjum.minecraft.civ.snitchmod.core.model.WorldPos;
+
+import java.util.*;
+
+/**
+ * Deterministic synthetic snitches, clustered the way real bases are:
+ * most snitches sit in a few dense bases, with a long tail of small outposts,
+ * spread over the overworld, nether and end.
+ */
+public class SnitchDataset {
+	public static final String SERVER = "bench.example.com";
+	public static final String[] WORLDS = {"world", "world_nether", "world_the_end"};
+	/**
+	 * share of bases in each of {@link #WORLDS}
+	 */
+	private static final double[] WORLD_WEIGHTS = {0.8, 0.15, 0.05};
+	/**
+	 * bases are spread within +-extent blocks around 0,0
+	 */
+	private static final int[] WORLD_EXTENTS = {20000, 2500, 2000};
+
+	public final List<Snitch> snitches;
+
+	private final long seed;
+
+	private SnitchDataset(List<Snitch> snitches, long seed) {
+		this.snitches = snitches;
+		this.seed = seed;
+	}
+
+	public static SnitchDataset generate(int count, long seed) {
+		Random random = new Random(seed);
+		long now = System.currentTimeMillis();
+		HashSet<WorldPos> taken = new HashSet<>(count * 2);
+		List<Snitch> snitches = new ArrayList<>(count);
+		int baseNr = 0;
+		while (snitches.size() < count) {
+			baseNr++;
+			String world = pickWorld(random);
+			int extent = WORLD_EXTENTS[Arrays.asList(WORLDS).indexOf(world)];
+			int centerX = random.nextInt(2 * extent) - extent;
+			int centerZ = random.nextInt(2 * extent) - extent;
+			int centerY = 40 + random.nextInt(60);
+			// exponential base sizes: many outposts, few large bases
+			int baseSize = Math.min(400, 1 + (int) (-Math.log(1 - random.nextDouble()) * 40));
+			double spread = 12 + baseSize / 4.0;
+			String group = "base" + baseNr;
+			for (int i = 0; i < baseSize && snitches.size() < count; i++) {
+				int x = centerX + (int) (random.nextGaussian() * spread);
+				int z = centerZ + (int) (random.nextGaussian() * spread);
+				int y = Math.max(-64, Math.min(319, centerY + (int) (random.nextGaussian() * 12)));
+				WorldPos pos = new WorldPos(SERVER, world, x, y, z);
+				if (!taken.add(pos)) continue;
+				Snitch snitch = new Snitch(pos);
+				Snitch.Type type = random.nextInt(4) == 0 ? Snitch.Type.NOTEBLOCK : Snitch.Type.JUKEBOX;
+				long lifetime = (long) (random.nextDouble() * type.timer);
+				long ts = now - random.nextInt(30 * 24 * 3600) * 1000L;
+				snitch.updateFromJalist(new JalistEntry(
+					ts, pos, group, type, group + "-" + i,
+					random.nextBoolean() ? ts + lifetime : 0,
+					random.nextBoolean() ? 0 : ts + lifetime));
+				snitches.add(snitch);
+			}
+		}
+		return new SnitchDataset(snitches, seed);
+	}
+
+	private static String pickWorld(Random random) {
+		double r = random.nextDouble();
+		for (int i = 0; i < WORLDS.length; i++) {
+			r -= WORLD_WEIGHTS[i];
+			if (r < 0) return WORLDS[i];
+		}
+		return WORLDS[0];
+	}
+
+	/**
+	 * Player positions near random snitches, as a player would be while inside a base.
+	 */
+	public List<QueryPoint> queryPoints(int count) {
+		Random random = new Random(seed + 1);
+		List<QueryPoint> points = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			WorldPos pos = snitches.get(random.nextInt(snitches.size())).pos;
+			points.add(new QueryPoint(
+				pos.getWorld(),
+				pos.getX() + random.nextGaussian() * 40,
+				pos.getY() + random.nextGaussian() * 5,
+				pos.getZ() + random.nextGaussian() * 40));
+		}
+		return points;
+	}
+
+	/**
+	 * A player walking in a straight line at sprint speed, one point per frame at 60fps.
+	 */
+	public List<QueryPoint> walk(int frames) {
+		Random random = new Random(seed + 2);
+		WorldPos start = snitches.get(random.nextInt(snitches.size())).pos;
+		double angle = random.nextDouble() * 2 * Math.PI;
+		double step = 5.6 / 60;
+		List<QueryPoint> points = new ArrayList<>(frames);
+		for (int i = 0; i < frames; i++) {
+			points.add(new QueryPoint(
+				start.getWorld(),
+				start.getX() + Math.cos(angle) * step * i,
+				start.getY() + 1.62,
+				start.getZ() + Math.sin(angle) * step * i));
+		}
+		return points;
+	}
+
+	public record QueryPoint(String world, double x, double y, double z) {
+	}
+}
@@ -0,0 +1,161 @@
+package gjum.minecraft.civ.snitchmod.jmh;
+
+import gjum.minecraft.civ.snitchmod.core.SnitchSnapshot;
+import gjum.minecraft.civ.snitchmod.core.SnitchSqliteDb;
+import gjum.minecraft.civ.snitchmod.core.model.Snitch;
+import gjum.minecraft.civ.snitchmod.core.model.SnitchAlert;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading and writing snitches with a real SQLite file in the temp dir.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SqliteBenchmark {
+	/**
+	 * Snitches per upsert, same as the writer thread's default batch size.
+	 */
+	private static final int BATCH_SIZE = 1000;
+	/**
+	 * A backlog from a long `/jalist` scan, written in one transaction.
+	 */
+	private static final int BULK_SIZE = 10_000;
+	/**
+	 * A typical flush while playing: a few alerts since the last one.
+	 */
+	private static final int SMALL_BATCH_SIZE = 20;
+
+	@Param({"1000", "10000", "100000", "500000"})
+	public int snitchCount;
+
+	@Param({"DEFAULT", "TUNED"})
+	public SnitchSqliteDb.Profile profile;
+
+	private File dbFile;
+	private SnitchSqliteDb db;
+	private File snapshotFile;
+	private long snapshotChangeCounter;
+	private List<Snitch> snitches;
+	/**
+	 * Copies of {@link #snitches} where an alert only moved last_seen_ts, as during an alert flood.
+	 */
+	private List<Snitch> seenOnly;
+	private int nextBatch = 0;
+	private int nextSmallBatch = 0;
+	private int nextRegion = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		dbFile = Files.createTempFile("snitchmod-bench", ".sqlite").toFile();
+		db = new SnitchSqliteDb(SnitchDataset.SERVER, dbFile, profile);
+		snitches = SnitchDataset.generate(snitchCount, 42).snitches;
+		for (int i = 0; i < snitches.size(); i += BATCH_SIZE) {
+			db.upsertSnitches(snitches.subList(i, Math.min(snitches.size(), i + BATCH_SIZE)));
+		}
+		seenOnly = new ArrayList<>(snitches.size());
+		for (Snitch snitch : snitches) {
+			Snitch copy = snitch.snapshot();
+			copy.snapshotForWrite(); // as if just written
+			copy.updateFromAlert(new SnitchAlert(
+				copy.getLastSeenTs() + 1000, copy.pos, "Enter", "bench", copy.getName(), copy.getGroup()));
+			seenOnly.add(copy);
+		}
+		snapshotFile = new File(dbFile.getPath() + ".snapshot");
+		snapshotChangeCounter = db.getChangeCounter();
+		SnitchSnapshot.write(snapshotFile, snitches, snapshotChangeCounter);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		db.close();
+		for (String suffix : new String[]{"", "-wal", "-shm"}) {
+			File file = new File(dbFile.getPath() + suffix);
+			if (file.exists() && !file.delete()) System.err.println("Could not delete " + file);
+		}
+		if (!snapshotFile.delete()) System.err.println("Could not delete " + snapshotFile);
+	}
+
+	@Benchmark
+	public Collection<Snitch> selectAll() {
+		return db.selectAllSnitches();
+	}
+
+	/**
+	 * Same snitches as {@link #selectAll}, from the binary snapshot instead, with the file in the page cache.
+	 * Cold starts are measured by the `startupTime` task in core.
+	 */
+	@Benchmark
+	public List<Snitch> readSnapshot() throws Exception {
+		return SnitchSnapshot.read(snapshotFile, SnitchDataset.SERVER, snapshotChangeCounter);
+	}
+
+	/**
+	 * The snitches around one existing snitch, without loading the rest.
+	 */
+	@Benchmark
+	public List<Snitch> selectRegion() {
+		Snitch center = snitches.get(nextRegion);
+		nextRegion = (nextRegion + 7919) % snitches.size();
+		int x = center.pos.getX();
+		int z = center.pos.getZ();
+		return db.selectSnitchesInBox(center.pos.getWorld(), x - 128, -64, z - 128, x + 128, 320, z + 128);
+	}
+
+	/**
+	 * One flush of the writer thread: a batch of already existing snitches.
+	 */
+	@Benchmark
+	public void upsertBatch() {
+		int from = nextBatch * BATCH_SIZE;
+		if (from >= snitches.size()) {
+			nextBatch = 0;
+			from = 0;
+		}
+		nextBatch++;
+		db.upsertSnitches(snitches.subList(from, Math.min(snitches.size(), from + BATCH_SIZE)));
+	}
+
+	/**
+	 * Same batch as {@link #upsertBatch}, but only writing the changed last_seen_ts column.
+	 */
+	@Benchmark
+	public void writeSeenOnlyBatch() {
+		int from = nextBatch * BATCH_SIZE;
+		if (from >= seenOnly.size()) {
+			nextBatch = 0;
+			from = 0;
+		}
+		nextBatch++;
+		db.writeSnitches(seenOnly.subList(from, Math.min(seenOnly.size(), from + BATCH_SIZE)));
+	}
+
+	@Benchmark
+	public void upsertSmallBatch() {
+		int from = nextSmallBatch * SMALL_BATCH_SIZE;
+		if (from >= snitches.size()) {
+			nextSmallBatch = 0;
+			from = 0;
+		}
+		nextSmallBatch++;
+		db.upsertSnitches(snitches.subList(from, Math.min(snitches.size(), from + SMALL_BATCH_SIZE)));
+	}
+
+	/**
+	 * Ten thousand snitches (or all of them, if fewer) in one transaction.
+	 */
+	@Benchmark
+	public void upsertBulk() {
+		db.upsertSnitches(snitches.subList(0, Math.min(snitches.size(), BULK_SIZE)));
+	}
+}
@@ -0,0 +1,93 @@
+package gjum.minecraft.civ.snitchmod.jmh;
+
+import gjum.minecraft.civ.snitchmod.core.SnitchSqliteDb;
+import gjum.minecraft.civ.snitchmod.core.SnitchesStore;
+import gjum.minecraft.civ.snitchmod.core.model.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Updates the store receives from chat and `/jalist`, without a DB attached.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreMutationBenchmark {
+	/**
+	 * Items on one `/jalist` page.
+	 */
+	private static final int JALIST_PAGE_SIZE = 45;
+
+	@Param({"1000", "10000", "100000", "500000"})
+	public int snitchCount;
+
+	private SnitchesStore store;
+	private final List<SnitchAlert> alerts = new ArrayList<>();
+	private final List<List<JalistEntry>> jalistPages = new ArrayList<>();
+	private final List<Snitch> created = new ArrayList<>();
+	private int nextAlert = 0;
+	private int nextPage = 0;
+	private int nextCreated = 0;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		SnitchDataset dataset = SnitchDataset.generate(snitchCount, 42);
+		store = new SnitchesStore(SnitchDataset.SERVER, (SnitchSqliteDb) null);
+		for (Snitch snitch : dataset.snitches) {
+			store.updateSnitchFromCreation(snitch);
+		}
+
+		Random random = new Random(43);
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < 4096; i++) {
+			Snitch snitch = dataset.snitches.get(random.nextInt(snitchCount));
+			alerts.add(new SnitchAlert(now, snitch.pos, "Enter", "Player" + random.nextInt(100), snitch.getName(), snitch.getGroup()));
+		}
+		for (int page = 0; page < 64; page++) {
+			List<JalistEntry> entries = new ArrayList<>(JALIST_PAGE_SIZE);
+			int first = random.nextInt(snitchCount);
+			for (int i = 0; i < JALIST_PAGE_SIZE; i++) {
+				Snitch snitch = dataset.snitches.get((first + i) % snitchCount);
+				entries.add(new JalistEntry(
+					now, snitch.pos, snitch.getGroup(), Snitch.Type.JUKEBOX, snitch.getName(), 0, now + 3600_000));
+			}
+			jalistPages.add(entries);
+		}
+		// positions outside the dataset's extents, so these are always new snitches
+		for (int i = 0; i < 4096; i++) {
+			Snitch snitch = new Snitch(new WorldPos(SnitchDataset.SERVER, "world", 100_000 + i, 64, 100_000));
+			snitch.updateFromCreation("created", Snitch.Type.JUKEBOX, null);
+			created.add(snitch);
+		}
+	}
+
+	@Benchmark
+	public void alert() {
+		if (nextAlert >= alerts.size()) nextAlert = 0;
+		store.updateSnitchFromAlert(alerts.get(nextAlert++));
+	}
+
+	@Benchmark
+	public void jalistPage() {
+		if (nextPage >= jalistPages.size()) nextPage = 0;
+		store.updateSnitchesFromJalist(jalistPages.get(nextPage++));
+	}
+
+	/**
+	 * Adds a new snitch and removes it again, so the store size stays the same between iterations.
+	 */
+	@Benchmark
+	public Snitch createAndDelete() {
+		if (nextCreated >= created.size()) nextCreated = 0;
+		Snitch snitch = created.get(nextCreated++);
+		store.updateSnitchFromCreation(snitch);
+		return store.deleteSnitch(snitch.pos);
+	}
+}